@@ -5,6 +5,8 @@ import bot_bank.service.AccountService;
 import bot_bank.service.CardAccountService;
 import bot_bank.service.CardService;
 import bot_bank.service.CurrencyRateService;
+import bot_bank.service.PayoutService;
+import bot_bank.service.StatementService;
 import bot_bank.service.TransactionService;
 import bot_bank.service.UserService;
 import bot_bank.service.ValidationService;
@@ -14,7 +16,7 @@ import java.io.Serializable;
 
 /**
  * BotContext class holds the context required for processing interactions between the bot and the user.
- * It encapsulates the bot instance, the user, the input text, and various services needed for operations.
+ * It encapsulates the bot instance, the user, the input text, the chat session, and various services needed for operations.
  * This class facilitates access to these components in a centralized manner, enhancing code organization
  * and maintainability.
  */
@@ -31,22 +33,28 @@ public class BotContext {
     private final AccountService accountService;
     private final CurrencyRateService currencyRateService;
     private final ValidationService validationService;
+    private final PayoutService payoutService;
+    private final StatementService statementService;
     private final Integer messageId;
+    private final ChatSession session;
 
-    public static BotContext of(ChatBot bot, User user, String text, Integer messageId, UserService userService,
+    public static BotContext of(ChatBot bot, User user, String text, Integer messageId, ChatSession session, UserService userService,
                                 CardService cardService, CardAccountService cardAccountService, TransactionService transactionService,
-                                AccountService accountService, CurrencyRateService rateService, ValidationService validationService) {
-        return new BotContext(bot, user, text, messageId, userService, cardService, cardAccountService, transactionService, accountService, rateService,
-                validationService);
+                                AccountService accountService, CurrencyRateService rateService, ValidationService validationService,
+                                PayoutService payoutService, StatementService statementService) {
+        return new BotContext(bot, user, text, messageId, session, userService, cardService, cardAccountService, transactionService,
+                accountService, rateService, validationService, payoutService, statementService);
     }
 
-    private BotContext(ChatBot bot, User user, String input, Integer messageId, UserService userService,
+    private BotContext(ChatBot bot, User user, String input, Integer messageId, ChatSession session, UserService userService,
                        CardService cardService, CardAccountService cardAccountService, TransactionService transactionService,
-                       AccountService accountService, CurrencyRateService rateService, ValidationService validationService) {
+                       AccountService accountService, CurrencyRateService rateService, ValidationService validationService,
+                       PayoutService payoutService, StatementService statementService) {
         this.bot = bot;
         this.user = user;
         this.input = input;
         this.messageId = messageId;
+        this.session = session;
         this.userService = userService;
         this.cardService = cardService;
         this.cardAccountService = cardAccountService;
@@ -54,6 +62,8 @@ public class BotContext {
         this.accountService = accountService;
         this.currencyRateService = rateService;
         this.validationService = validationService;
+        this.payoutService = payoutService;
+        this.statementService = statementService;
     }
 
 }
\ No newline at end of file
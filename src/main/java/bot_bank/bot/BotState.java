@@ -1,9 +1,9 @@
 package bot_bank.bot;
 
 
-import bot_bank.model.Account;
 import bot_bank.model.Card;
 import bot_bank.model.User;
+import bot_bank.service.PayoutService;
 import bot_bank.service.ValidationService;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage;
@@ -11,10 +11,8 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMa
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -34,7 +32,6 @@ public enum BotState {
 
 
     START {
-        private BotState next;
 
 
         @Override
@@ -51,22 +48,22 @@ public enum BotState {
         public void handleInput(BotContext context) {
             LOGGER.warn("Invalid input received in Start state: {}", context.getInput());
                 sendMessage(context, "Use buttons.");
-                next = START;
+                context.getSession().setNext(START);
         }
 
 
         @Override
-        public BotState nextState() {
-            return next;
+        public BotState nextState(BotContext context) {
+            return context.getSession().getNext();
         }
 
-
+        @Override
+        public boolean changesUserData() {
+            return false;
+        }
     },
 
     ENTER_PHONE {
-        private boolean isWrongPhone;
-        private int counterOfInputProblem = 0;
-        private boolean isInputProblem;
 
         @Override
         public void enter(BotContext context) {
@@ -79,43 +76,34 @@ public enum BotState {
         public void handleInput(BotContext context) {
             String phoneNumber = context.getInput();
             ValidationService validationService = context.getValidationService();
+            ChatSession session = context.getSession();
 
             if (!validationService.isValidPhoneNumber(phoneNumber)) {
                 LOGGER.warn("Invalid phone number format: {}", phoneNumber);
                 sendMessage(context, "Wrong phone number format!");
-                isWrongPhone = true;
-                counterOfInputProblem++;
-                if (counterOfInputProblem > 3) {
-                    isInputProblem = true;
+                if (session.registerInputProblem(this) > 3) {
                     sendMessage(context, "Input problem, return to start.");
+                    session.setNext(START);
+                } else {
+                    session.setNext(ENTER_PHONE);
                 }
                 return;
             }
-            isWrongPhone = false;
-            counterOfInputProblem = 0;
             context.getUser().setNumber(phoneNumber);
             sendMessage(context, "Phone number saved.");
-
+            session.setNext(ENTER_EMAIL);
         }
 
 
         @Override
-        public BotState nextState() {
-            if (isInputProblem) {
-                return START;
-            } else if (isWrongPhone) {
-                return ENTER_PHONE;
-            } else {
-                return ENTER_EMAIL;
-            }
+        public BotState nextState(BotContext context) {
+            return context.getSession().getNext();
         }
 
     },
 
 
     ENTER_EMAIL {
-        private BotState next;
-        private int counterOfInputProblem = 0;
 
         @Override
         public void enter(BotContext context) {
@@ -126,21 +114,22 @@ public enum BotState {
         @Override
         public void handleInput(BotContext context) {
             ValidationService validationService = context.getValidationService();
+            ChatSession session = context.getSession();
             String email = context.getInput();
 
             if (validationService.isValidEmail(email)) {
                 LOGGER.info("Email {} is valid", email);
                 context.getUser().setEmail(context.getInput());
-                next = APPROVED;
+                session.setNext(APPROVED);
             } else {
                 LOGGER.warn("Invalid email format: {}", email);
                 sendMessage(context, "Wrong e-mail address!");
-                counterOfInputProblem++;
-                if (counterOfInputProblem > 3) {
+                if (session.registerInputProblem(this) > 3) {
                     sendMessage(context, "Input problem, return to start.");
-                    next = START;
+                    session.setNext(START);
                 } else {
                     sendMessage(context, "Enter your e-mail please again");
+                    session.setNext(ENTER_EMAIL);
                 }
 
             }
@@ -148,8 +137,8 @@ public enum BotState {
 
 
         @Override
-        public BotState nextState() {
-            return next;
+        public BotState nextState(BotContext context) {
+            return context.getSession().getNext();
         }
     },
 
@@ -161,7 +150,7 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return ENTER_FIRST_NAME;
         }
     },
@@ -182,7 +171,7 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return ENTER_LAST_NAME;
         }
     },
@@ -206,7 +195,7 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return ENTER_PASSWORD;
         }
     },
@@ -214,7 +203,6 @@ public enum BotState {
 
 
         MENU {
-            private BotState next;
 
             @Override
             public void enter(BotContext context) {
@@ -227,20 +215,21 @@ public enum BotState {
             public void handleInput(BotContext context) {
                 LOGGER.warn("Invalid input received in Menu state: {}", context.getInput());
                 sendMessage(context, "Use buttons.");
-                next = MENU;
+                context.getSession().setNext(MENU);
             }
 
             @Override
-            public BotState nextState() {
-                return next;
+            public BotState nextState(BotContext context) {
+                return context.getSession().getNext();
             }
 
-
+            @Override
+            public boolean changesUserData() {
+                return false;
+            }
         },
 
         ADD_CARD {
-            private int counterOfInputProblem = 0;
-            private BotState next;
 
             @Override
             public void enter(BotContext context) {
@@ -252,23 +241,26 @@ public enum BotState {
             @Override
             public void handleInput(BotContext context) {
                 LOGGER.warn("Invalid input received in AddCard state: {}", context.getInput());
-                counterOfInputProblem++;
-                if (counterOfInputProblem > 3) {
+                ChatSession session = context.getSession();
+                if (session.registerInputProblem(this) > 3) {
                     LOGGER.warn("Input problem exceeded limit in AddCard state");
                   sendMessage(context, "Input problem, return to menu.");
-                    next = MENU;
+                    session.setNext(MENU);
                 } else {
                   sendMessage(context, "Use buttons.");
-                    next = ADD_CARD;
+                    session.setNext(ADD_CARD);
                 }
             }
 
             @Override
-            public BotState nextState() {
-                return next;
+            public BotState nextState(BotContext context) {
+                return context.getSession().getNext();
             }
 
-
+            @Override
+            public boolean changesUserData() {
+                return false;
+            }
         },
 
         BANNED {
@@ -279,7 +271,7 @@ public enum BotState {
             }
 
             @Override
-            public BotState nextState() {
+            public BotState nextState(BotContext context) {
                 return BANNED;
             }
         },
@@ -295,11 +287,8 @@ public enum BotState {
             public void handleInput(BotContext context) {
                 try {
                     long userId = Long.parseLong(context.getInput());
-                    User userToBan = context.getUserService().findByTelegramId(userId);
-                    if (userToBan != null) {
-                        LOGGER.info("Banning user with ID: {}", userId);
-                        userToBan.setBanned(true);
-                        context.getUserService().updateUser(userToBan);
+                    if (context.getUserService().setBanned(userId, true)) {
+                        LOGGER.info("Banned user with ID: {}", userId);
                        sendMessage(context, "User " + userId + " has been banned.");
                     } else {
                         LOGGER.warn("User with ID: {} not found (Ban)", userId);
@@ -312,9 +301,14 @@ public enum BotState {
             }
 
             @Override
-            public BotState nextState() {
+            public BotState nextState(BotContext context) {
                 return MENU;
             }
+
+            @Override
+            public boolean changesUserData() {
+                return false;
+            }
         },
 
         UNBAN_USER {
@@ -328,11 +322,8 @@ public enum BotState {
             public void handleInput(BotContext context) {
                 try {
                     long userId = Long.parseLong(context.getInput());
-                    User userToUnban = context.getUserService().findByTelegramId(userId);
-                    if (userToUnban != null) {
-                        LOGGER.info("Unbanning user with ID: {}", userId);
-                        userToUnban.setBanned(false);
-                        context.getUserService().updateUser(userToUnban);
+                    if (context.getUserService().setBanned(userId, false)) {
+                        LOGGER.info("Unbanned user with ID: {}", userId);
                         sendMessage(context, "User " + userId + " has been unbanned.");
                     } else {
                         LOGGER.warn("User with ID: {} not found (Unban)", userId);
@@ -345,14 +336,17 @@ public enum BotState {
             }
 
             @Override
-            public BotState nextState() {
+            public BotState nextState(BotContext context) {
                 return MENU;
             }
+
+            @Override
+            public boolean changesUserData() {
+                return false;
+            }
         },
 
         CHOSE_CURRENCY {
-            private int counterOfInputProblem = 0;
-            private BotState next;
 
             @Override
             public void enter(BotContext context) {
@@ -364,22 +358,26 @@ public enum BotState {
             @Override
             public void handleInput(BotContext context) {
                 LOGGER.warn("Invalid input received in ChoseCurrency state: {}", context.getInput());
-                counterOfInputProblem++;
-                if (counterOfInputProblem > 3) {
+                ChatSession session = context.getSession();
+                if (session.registerInputProblem(this) > 3) {
                     LOGGER.warn("Input problem exceeded limit in ChoseCurrency state");
                    sendMessage(context, "Input problem, return to menu.");
-                    next = MENU;
+                    session.setNext(MENU);
                 } else {
                    sendMessage(context, "Use buttons.");
-                    next = CHOSE_CURRENCY;
+                    session.setNext(CHOSE_CURRENCY);
                 }
             }
 
             @Override
-            public BotState nextState() {
-                return next;
+            public BotState nextState(BotContext context) {
+                return context.getSession().getNext();
             }
 
+            @Override
+            public boolean changesUserData() {
+                return false;
+            }
         },
 
 
@@ -400,7 +398,7 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return ENTER_CVV_FOR_TRANSACTION;
         }
     },
@@ -420,7 +418,7 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return ENTER_CARD_EXP_DATE_FOR_TRANSACTION;
         }
     },
@@ -440,7 +438,7 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return ENTER_RECIPIENT_CARD_NUMBER_FOR_TRANSACTION;
         }
     },
@@ -460,7 +458,7 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return ENTER_PASSWORD_FOR_TRANSACTION;
         }
     },
@@ -477,24 +475,10 @@ public enum BotState {
         public void handleInput(BotContext context) {
             String amountStr = context.getInput();
             try {
-                BigDecimal senderAmount = context.getTransactionService().parseAmount(amountStr, context);
+                Long senderAmount = context.getTransactionService().parseAmount(amountStr, context);
                 if (senderAmount == null) return;
 
-                if (!context.getTransactionService().validateSenderDetails(context, senderAmount)) return;
-
-                Optional<Card> senderCardOptional = context.getCardService().findByCardNumber(context.getUser().getTransactionDetail().getSenderCardNumber());
-                if (senderCardOptional.isEmpty()) {
-                    sendMessage(context, "Sender card not found.");
-                    return;
-                }
-
-                Account senderAccount = senderCardOptional.get().getAccount();
-                Account recipientAccount = context.getTransactionService().getRecipientAccount(context);
-
-                BigDecimal recipientAmount = context.getTransactionService().convertCurrencyIfNeeded(senderAccount, recipientAccount, senderAmount, context);
-                if (recipientAmount == null) return;
-
-                context.getTransactionService().processTransaction(senderAccount, recipientAccount, senderAmount, recipientAmount, context);
+                if (!context.getTransactionService().transfer(context, senderAmount)) return;
 
                 sendMessage(context, "Transaction is successful.");
             } catch (NumberFormatException e) {
@@ -505,15 +489,13 @@ public enum BotState {
 
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return MENU;
         }
     },
 
 
     ENTER_PASSWORD {
-        private BotState next;
-        private int counterOfInputProblem = 0;
 
         @Override
         public void enter(BotContext context) {
@@ -526,6 +508,7 @@ public enum BotState {
             String password = context.getInput();
             int messageId = context.getMessageId();
             ValidationService validationService = context.getValidationService();
+            ChatSession session = context.getSession();
 
             if (validationService.isValidPassword(password)) {
                 LOGGER.info("Valid password entered");
@@ -533,32 +516,30 @@ public enum BotState {
                 context.getUser().setPassword(encodedPassword);
                 sendMessage(context, "Password saved. Next state is Menu.");
                 deleteMessage(context, messageId);
-                next = MENU;
+                session.setNext(MENU);
             } else {
                 LOGGER.warn("Invalid password format");
                 sendMessage(context, "Invalid password format! Use One big and small letter, one digit and one " +
                         "special symbol (no spaces!!!)");
                 deleteMessage(context, messageId);
-                counterOfInputProblem++;
-                if (counterOfInputProblem > 3) {
+                if (session.registerInputProblem(this) > 3) {
                     LOGGER.warn("Input problem exceeded limit in EnterPassword state");
                     sendMessage(context, "Input problem, return to start.");
-                    next = START;
+                    session.setNext(START);
                 } else {
                     sendMessage(context, "Enter your password again please:");
+                    session.setNext(ENTER_PASSWORD);
                 }
             }
         }
 
         @Override
-        public BotState nextState() {
-            return next;
+        public BotState nextState(BotContext context) {
+            return context.getSession().getNext();
         }
     },
 
     ENTER_PASSWORD_FOR_TRANSACTION {
-        private BotState next;
-        private int counterOfInputProblem = 0;
 
         @Override
         public void enter(BotContext context) {
@@ -569,6 +550,7 @@ public enum BotState {
         @Override
         public void handleInput(BotContext context) {
             ValidationService validationService = context.getValidationService();
+            ChatSession session = context.getSession();
             String password = context.getInput();
             int messageId = context.getMessageId();
 
@@ -579,31 +561,34 @@ public enum BotState {
                 LOGGER.info("Password verified for transaction");
                 sendMessage(context, "Password verified.");
                 deleteMessage(context, messageId);
-                next = ENTER_AMOUNT_FOR_TRANSACTION_AND_MAKE_TRANSACTION;
+                session.setNext(ENTER_AMOUNT_FOR_TRANSACTION_AND_MAKE_TRANSACTION);
             } else {
                 LOGGER.warn("Invalid password format or wrong password entered");
                 sendMessage(context, "Invalid password format or wrong password");
                 deleteMessage(context, messageId);
-                counterOfInputProblem++;
-                if (counterOfInputProblem > 3) {
+                if (session.registerInputProblem(this) > 3) {
                     LOGGER.warn("Input problem exceeded limit in EnterPasswordForTransaction state");
                     sendMessage(context, "Input problem, return to Menu.");
-                    next = MENU;
+                    session.setNext(MENU);
                 } else {
                     sendMessage(context, "Enter your password again please:");
+                    session.setNext(ENTER_PASSWORD_FOR_TRANSACTION);
                 }
             }
         }
 
         @Override
-        public BotState nextState() {
-            return next;
+        public BotState nextState(BotContext context) {
+            return context.getSession().getNext();
+        }
+
+        @Override
+        public boolean changesUserData() {
+            return false;
         }
     },
 
     ENTER_PASSWORD_FOR_UPDATE {
-        private BotState next;
-        private int counterOfInputProblem = 0;
 
         @Override
         public void enter(BotContext context) {
@@ -614,6 +599,7 @@ public enum BotState {
         @Override
         public void handleInput(BotContext context) {
             ValidationService validationService = context.getValidationService();
+            ChatSession session = context.getSession();
             String password = context.getInput();
             int messageId = context.getMessageId();
 
@@ -624,25 +610,30 @@ public enum BotState {
                 LOGGER.info("Password verified for update");
                 sendMessage(context, "Password verified.");
                 deleteMessage(context, messageId);
-                next = ENTER_EMAIL;
+                session.setNext(ENTER_EMAIL);
             } else {
                 LOGGER.warn("Invalid password format or wrong password entered");
                 sendMessage(context, "Invalid password format or wrong password");
-                counterOfInputProblem++;
-                if (counterOfInputProblem > 3) {
+                if (session.registerInputProblem(this) > 3) {
                     LOGGER.warn("Input problem exceeded limit in EnterPasswordForUpdate state");
                     sendMessage(context, "Input problem, return to Menu.");
                     deleteMessage(context, messageId);
-                    next = MENU;
+                    session.setNext(MENU);
                 } else {
                     sendMessage(context, "Enter your password again please:");
+                    session.setNext(ENTER_PASSWORD_FOR_UPDATE);
                 }
             }
         }
 
         @Override
-        public BotState nextState() {
-            return next;
+        public BotState nextState(BotContext context) {
+            return context.getSession().getNext();
+        }
+
+        @Override
+        public boolean changesUserData() {
+            return false;
         }
     },
     BAN_CARD {
@@ -665,6 +656,7 @@ public enum BotState {
                     LOGGER.info("Banning card with number: {}", cardNumber);
                     cardToBan.setBanned(true);
                     context.getCardService().updateCard(cardToBan);
+                    context.getUserService().invalidateCachedUser(cardToBan.getUser().getTelegramId());
                     LOGGER.info("Card after banning: {}", cardToBan);
                     sendMessage(context, "Card " + cardNumber + " has been banned.");
                 }
@@ -675,9 +667,14 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return MENU;
         }
+
+        @Override
+        public boolean changesUserData() {
+            return false;
+        }
     },
 
     UNBAN_CARD {
@@ -700,6 +697,7 @@ public enum BotState {
                     LOGGER.info("Unbanning card with number: {}", cardNumber);
                     cardToUnban.setBanned(false);
                     context.getCardService().updateCard(cardToUnban);
+                    context.getUserService().invalidateCachedUser(cardToUnban.getUser().getTelegramId());
                     LOGGER.info("Card after unbanning: {}", cardToUnban);
                     sendMessage(context, "Card " + cardNumber + " has been unbanned.");
                 }
@@ -710,9 +708,75 @@ public enum BotState {
         }
 
         @Override
-        public BotState nextState() {
+        public BotState nextState(BotContext context) {
             return MENU;
         }
+
+        @Override
+        public boolean changesUserData() {
+            return false;
+        }
+    },
+
+    PAYOUT {
+        @Override
+        public void enter(BotContext context) {
+            LOGGER.info("Entering Payout state");
+            sendMessage(context, "Enter the payout: a line \"from <your card number>\", then a line "
+                    + "\"<recipient card number> <amount>\" for every payment, the amount in the currency of your card.");
+        }
+
+        @Override
+        public void handleInput(BotContext context) {
+            if (!context.getUser().isAdmin()) {
+                LOGGER.warn("User {} is not an admin and cannot make payouts", context.getUser().getTelegramId());
+                sendMessage(context, "Only admins can make payouts.");
+                return;
+            }
+            String keyPrefix = context.getMessageId() != null
+                    ? context.getUser().getTelegramId() + ":" + context.getMessageId() : null;
+            PayoutService.Report report = context.getPayoutService().payout(context.getUser(), context.getInput(), keyPrefix);
+            report.getMessages().forEach(message -> sendMessage(context, message));
+        }
+
+        @Override
+        public BotState nextState(BotContext context) {
+            return MENU;
+        }
+
+        @Override
+        public boolean changesUserData() {
+            return false;
+        }
+    },
+
+    ACCOUNT_STATEMENT {
+        @Override
+        public void enter(BotContext context) {
+            LOGGER.info("Entering AccountStatement state");
+            sendMessage(context, "Enter the account number and the month, e.g. 1234567890 2026-09:");
+        }
+
+        @Override
+        public void handleInput(BotContext context) {
+            if (!context.getUser().isAdmin()) {
+                LOGGER.warn("User {} is not an admin and cannot read statements of other accounts",
+                        context.getUser().getTelegramId());
+                sendMessage(context, "Only admins can read statements of other accounts.");
+                return;
+            }
+            context.getStatementService().sendAccountStatement(context);
+        }
+
+        @Override
+        public BotState nextState(BotContext context) {
+            return MENU;
+        }
+
+        @Override
+        public boolean changesUserData() {
+            return false;
+        }
     };
 
 
@@ -722,11 +786,7 @@ public enum BotState {
         message.setChatId(Long.toString(context.getUser().getTelegramId()));
         message.setText(text);
 
-        try {
-            context.getBot().execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
-        }
+        context.getBot().executeAsync(message);
 
     }
 
@@ -758,7 +818,11 @@ public enum BotState {
 
     public abstract void enter(BotContext context);
 
-    public abstract BotState nextState();
+    /**
+     * Returns the state to move to after this one. States that decide it while handling input
+     * keep the decision in the chat session of the context.
+     */
+    public abstract BotState nextState(BotContext context);
 
     public boolean isInputNeeded() {
         return inputNeeded;
@@ -767,17 +831,22 @@ public enum BotState {
     public void handleInput(BotContext context) {
         // do nothing by default
     }
+
+    /**
+     * Tells whether handling input in this state may change user data other than the state id,
+     * such as the profile or the transaction being prepared. After input in such a state the whole
+     * user is saved; otherwise only the new state id is queued for a write-behind update.
+     */
+    public boolean changesUserData() {
+        return true;
+    }
     private static void sendMessageWithInlineKeyboard(BotContext context, String text, InlineKeyboardMarkup markup) {
         SendMessage message = new SendMessage();
         message.setChatId(Long.toString(context.getUser().getTelegramId()));
         message.setText(text);
         message.setReplyMarkup(markup);
 
-        try {
-            context.getBot().execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
-        }
+        context.getBot().executeAsync(message);
     }
     private static final Logger LOGGER = LogManager.getLogger(BotState.class);
 
@@ -787,9 +856,13 @@ public enum BotState {
         deleteMessage.setChatId(String.valueOf(context.getUser().getTelegramId()));
         deleteMessage.setMessageId(messageId);
         try {
-            context.getBot().execute(deleteMessage);
+            context.getBot().executeAsync(deleteMessage).whenComplete((deleted, e) -> {
+                if (e != null) {
+                    LOGGER.error("Failed to delete message {} in chat ID: {}", messageId, context.getUser().getTelegramId(), e);
+                }
+            });
         } catch (TelegramApiException e) {
-            e.printStackTrace();
+            LOGGER.error("Failed to delete message {} in chat ID: {}", messageId, context.getUser().getTelegramId(), e);
         }
     }
 
@@ -861,7 +934,16 @@ public enum BotState {
         sendMoneyButton.setCallbackData("/send");
 
         rows.add(List.of(updateButton, addCardButton, myCardsButton));
+        InlineKeyboardButton historyButton = new InlineKeyboardButton();
+        historyButton.setText("History");
+        historyButton.setCallbackData("/history");
+
+        InlineKeyboardButton statementButton = new InlineKeyboardButton();
+        statementButton.setText("Statement");
+        statementButton.setCallbackData("/statement");
+
         rows.add(List.of(exchangeRateButton, sendMoneyButton));
+        rows.add(List.of(historyButton, statementButton));
 
         if (isAdmin) {
             InlineKeyboardButton listUsersButton = new InlineKeyboardButton();
@@ -894,7 +976,15 @@ public enum BotState {
 
             rows.add(List.of(listUsersButton, banUserButton, unbanUserButton));
             rows.add(List.of(listAccountsButton, listCardsButton, banCardButton));
-            rows.add(List.of(unbanCardButton));
+            InlineKeyboardButton payoutButton = new InlineKeyboardButton();
+            payoutButton.setText("Payout");
+            payoutButton.setCallbackData("/payout");
+
+            InlineKeyboardButton accountStatementButton = new InlineKeyboardButton();
+            accountStatementButton.setText("Account Statement");
+            accountStatementButton.setCallbackData("/accountstatement");
+
+            rows.add(List.of(unbanCardButton, payoutButton, accountStatementButton));
         }
 
         markup.setKeyboard(rows);
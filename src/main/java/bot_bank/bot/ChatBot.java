@@ -1,12 +1,15 @@
 package bot_bank.bot;
 
-import bot_bank.event.BotEvent;
+import bot_bank.event.BotEventBus;
+import bot_bank.event.CommandEvent;
 import bot_bank.model.User;
 import bot_bank.service.AccountService;
 import bot_bank.service.BotExecutor;
 import bot_bank.service.CardAccountService;
 import bot_bank.service.CardService;
 import bot_bank.service.CurrencyRateService;
+import bot_bank.service.PayoutService;
+import bot_bank.service.StatementService;
 import bot_bank.service.TransactionService;
 import bot_bank.service.UserService;
 import bot_bank.service.ValidationService;
@@ -14,17 +17,19 @@ import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ChatBot is the core class responsible for handling updates from Telegram, processing user input,
@@ -39,15 +44,20 @@ public class ChatBot extends TelegramLongPollingBot implements BotExecutor {
     private static final Logger LOGGER = LogManager.getLogger(ChatBot.class);
 
     private final UserService userService;
-    private final ApplicationEventPublisher eventPublisher;
+    private final BotEventBus eventBus;
     private final CardService cardService;
     private final CardAccountService cardAccountService;
     private final TransactionService transactionService;
     private final AccountService accountService;
     private final CurrencyRateService currencyRateService;
     private final ValidationService validationService;
+    private final PayoutService payoutService;
+    private final StatementService statementService;
+    private final ChatUpdateDispatcher dispatcher;
+    private final ChatSessionRegistry sessions;
+    private final OutboundMessageDispatcher outbound;
 
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
+    private final ThreadLocal<ReplyBuffer> replyBuffer = new ThreadLocal<>();
 
     @Value("${bot.name}")
     private String botName;
@@ -67,14 +77,118 @@ public class ChatBot extends TelegramLongPollingBot implements BotExecutor {
         return botToken;
     }
 
+    /**
+     * Sends the message through the OutboundMessageDispatcher and waits until it has been sent.
+     */
     @Override
     public void execute(SendMessage message) throws TelegramApiException {
+        ReplyBuffer buffer = replyBuffer.get();
+        if (buffer != null) {
+            buffer.flush();
+        }
+        try {
+            outbound.send(message, this::sendNow).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TelegramApiException("Interrupted while sending message", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TelegramApiException) {
+                throw (TelegramApiException) e.getCause();
+            }
+            throw new TelegramApiException("Failed to send message", e.getCause());
+        }
+    }
+
+    /**
+     * Queues the message in the OutboundMessageDispatcher, which keeps the bot within the Telegram
+     * rate limits, without waiting for it to be sent. Send latency and failures are logged on completion.
+     * Inside withReplyBuffer the message is collected first and may be merged with the replies around it.
+     */
+    @Override
+    public CompletableFuture<Void> executeAsync(SendMessage message) {
+        ReplyBuffer buffer = replyBuffer.get();
+        return buffer != null ? buffer.add(message) : send(message);
+    }
+
+    /**
+     * Queues the document in the OutboundMessageDispatcher. The replies collected in the reply buffer so far
+     * are sent first, so the document arrives after the messages that were sent before it.
+     */
+    @Override
+    public CompletableFuture<Void> sendDocumentAsync(SendDocument document) {
+        ReplyBuffer buffer = replyBuffer.get();
+        if (buffer != null) {
+            buffer.flush();
+        }
+        long start = System.nanoTime();
+        return outbound.send(document.getChatId(), () -> sendNow(document)).whenComplete((result, e) -> {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (e != null) {
+                LOGGER.error("Failed to send document to chat ID: {} after {} ms", document.getChatId(), millis, e);
+            } else {
+                LOGGER.debug("Sent document to chat ID: {} in {} ms", document.getChatId(), millis);
+            }
+        });
+    }
+
+    /**
+     * Runs the action with a reply buffer, so that consecutive plain-text replies it sends are merged
+     * into as few messages as possible. The collected replies are sent when the action ends.
+     */
+    public void withReplyBuffer(Runnable action) {
+        if (replyBuffer.get() != null) {
+            action.run();
+            return;
+        }
+        ReplyBuffer buffer = new ReplyBuffer(this::send);
+        replyBuffer.set(buffer);
+        try {
+            action.run();
+        } finally {
+            replyBuffer.remove();
+            buffer.flush();
+        }
+    }
+
+    private CompletableFuture<Void> send(SendMessage message) {
+        long start = System.nanoTime();
+        return outbound.send(message, this::sendNow).whenComplete((result, e) -> {
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (e != null) {
+                LOGGER.error("Failed to send message to chat ID: {} after {} ms", message.getChatId(), millis, e);
+            } else {
+                LOGGER.debug("Sent message to chat ID: {} in {} ms", message.getChatId(), millis);
+            }
+        });
+    }
+
+    private void sendNow(SendMessage message) throws TelegramApiException {
         super.execute(message);
     }
 
+    private void sendNow(SendDocument document) throws TelegramApiException {
+        super.execute(document);
+    }
+
     @Override
     public void onUpdateReceived(Update update) {
-        executorService.submit(() -> handleUpdate(update));
+        Long chatId = getChatId(update);
+        if (chatId == null) {
+            LOGGER.debug("Ignoring update without chat: {}", update.getUpdateId());
+            return;
+        }
+        dispatcher.dispatch(chatId, () -> withReplyBuffer(() -> handleUpdate(update)));
+    }
+
+    private Long getChatId(Update update) {
+        if (update.hasCallbackQuery()) {
+            Message message = update.getCallbackQuery().getMessage();
+            return message != null ? message.getChatId() : null;
+        }
+        if (update.hasMessage()) {
+            return update.getMessage().getChatId();
+        }
+        return null;
     }
 
     private void handleUpdate(Update update) {
@@ -96,9 +210,9 @@ public class ChatBot extends TelegramLongPollingBot implements BotExecutor {
                 return;
             }
 
-            BotContext context = BotContext.of(this, user, callbackData, messageId, userService, cardService,
-                    cardAccountService, transactionService, accountService, currencyRateService, validationService);
-            eventPublisher.publishEvent(new BotEvent(this, context));
+            BotContext context = BotContext.of(this, user, callbackData, messageId, sessions.get(chatId), userService,
+                    cardService, cardAccountService, transactionService, accountService, currencyRateService, validationService, payoutService, statementService);
+            eventBus.publish(new CommandEvent(chatId, callbackData, context));
 
         } else if (update.hasMessage() && update.getMessage().hasText()) {
             final String text = update.getMessage().getText();
@@ -107,39 +221,48 @@ public class ChatBot extends TelegramLongPollingBot implements BotExecutor {
 
             LOGGER.info("Received message: {} from chat ID: {}", text, chatId);
 
+            ChatSession session = sessions.get(chatId);
             User user = userService.findByTelegramId(chatId);
-            BotContext context = BotContext.of(this, user, text, messageId, userService, cardService,
-                    cardAccountService, transactionService, accountService, currencyRateService, validationService);
-
-            BotState state;
 
             if (user == null) {
                 LOGGER.info("New user detected with chat ID: {}", chatId);
-                state = BotState.getInitialState();
-                user = new User(chatId, state.ordinal());
+                BotState initialState = BotState.getInitialState();
+                user = new User(chatId, initialState.ordinal());
                 userService.addUser(user);
-                context = BotContext.of(this, user, text, messageId, userService, cardService, cardAccountService,
-                        transactionService, accountService, currencyRateService, validationService);
-
-                state.enter(context);
-            } else {
-                state = BotState.byId(user.getStateId());
-                state.handleInput(context);
+                initialState.enter(BotContext.of(this, user, text, messageId, session, userService, cardService,
+                        cardAccountService, transactionService, accountService, currencyRateService, validationService, payoutService, statementService));
+                return;
             }
 
+            BotContext context = BotContext.of(this, user, text, messageId, session, userService, cardService,
+                    cardAccountService, transactionService, accountService, currencyRateService, validationService, payoutService, statementService);
+
+            BotState handledState = BotState.byId(user.getStateId());
+            session.setNext(null);
+            handledState.handleInput(context);
+
             if (user.isBanned()) {
                 LOGGER.warn("User with chat ID: {} is banned", chatId);
                 sendMessage(chatId, "You are banned. Please contact support.");
                 return;
             }
 
+            BotState state = handledState;
             do {
-                state = state.nextState();
+                BotState previous = state;
+                state = state.nextState(context);
+                if (state != previous) {
+                    session.resetInputProblems();
+                }
                 state.enter(context);
             } while (!state.isInputNeeded());
 
             user.setStateId(state.ordinal());
-            userService.updateUser(user);
+            if (handledState.changesUserData()) {
+                userService.updateUser(user);
+            } else {
+                userService.updateState(user);
+            }
         }
     }
 
@@ -147,10 +270,6 @@ public class ChatBot extends TelegramLongPollingBot implements BotExecutor {
         SendMessage message = new SendMessage();
         message.setChatId(Long.toString(chatId));
         message.setText(text);
-        try {
-            execute(message);
-        } catch (TelegramApiException e) {
-            LOGGER.error("Failed to send message to chat ID: {}", chatId, e);
-        }
+        executeAsync(message);
     }
 }
@@ -0,0 +1,60 @@
+package bot_bank.bot;
+
+/**
+ * ChatSession holds the conversation state of a single chat that has to survive between updates
+ * but is not stored with the user, such as the state chosen by the last handled input and the
+ * counter of wrong inputs in the current state. Updates of one chat are processed one at a time
+ * by the ChatUpdateDispatcher, so a session is never accessed concurrently and needs no locking.
+ */
+
+public class ChatSession {
+
+    private final long chatId;
+    private BotState next;
+    private BotState inputProblemState;
+    private int inputProblems;
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    public ChatSession(long chatId) {
+        this.chatId = chatId;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public BotState getNext() {
+        return next;
+    }
+
+    public void setNext(BotState next) {
+        this.next = next;
+    }
+
+    /**
+     * Counts a wrong input in the given state. The counter starts over whenever the wrong input
+     * happens in another state than the previous one.
+     *
+     * @return the number of wrong inputs in a row for the state
+     */
+    public int registerInputProblem(BotState state) {
+        if (inputProblemState != state) {
+            inputProblemState = state;
+            inputProblems = 0;
+        }
+        return ++inputProblems;
+    }
+
+    public void resetInputProblems() {
+        inputProblemState = null;
+        inputProblems = 0;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+}
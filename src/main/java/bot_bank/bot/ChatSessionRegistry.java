@@ -0,0 +1,49 @@
+package bot_bank.bot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ChatSessionRegistry keeps the ChatSession of every chat that talked to the bot recently.
+ * Sessions that have not been used for the configured idle timeout are dropped periodically.
+ */
+
+@Component
+public class ChatSessionRegistry {
+
+    private static final Logger LOGGER = LogManager.getLogger(ChatSessionRegistry.class);
+
+    private final Map<Long, ChatSession> sessions = new ConcurrentHashMap<>();
+    private final long idleTimeoutMillis;
+
+    public ChatSessionRegistry(@Value("${bot.session.idle-timeout-minutes:30}") long idleTimeoutMinutes) {
+        this.idleTimeoutMillis = idleTimeoutMinutes * 60_000;
+    }
+
+    public ChatSession get(long chatId) {
+        ChatSession session = sessions.computeIfAbsent(chatId, ChatSession::new);
+        session.touch();
+        return session;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @Scheduled(fixedDelayString = "${bot.session.cleanup-interval-ms:60000}")
+    public void evictIdleSessions() {
+        long threshold = System.currentTimeMillis() - idleTimeoutMillis;
+        int before = sessions.size();
+        sessions.values().removeIf(session -> session.getLastAccess() < threshold);
+        int evicted = before - sessions.size();
+        if (evicted > 0) {
+            LOGGER.info("Evicted {} idle chat sessions", evicted);
+        }
+    }
+}
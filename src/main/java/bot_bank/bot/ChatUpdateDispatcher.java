@@ -0,0 +1,193 @@
+package bot_bank.bot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ChatUpdateDispatcher runs bot work on a fixed pool of worker threads while keeping the work of
+ * a single chat strictly ordered. Every chat with pending work gets its own lane; a lane is drained
+ * by at most one worker at a time, so two updates from the same chat never run concurrently, while
+ * different chats are processed in parallel. The number of pending tasks is bounded: when the limit
+ * is reached, the caller blocks until a worker frees a slot instead of new threads being spawned.
+ * Tasks queued by the workers themselves, such as bot events published while handling an update,
+ * are not counted against the limit, so a full queue cannot leave every worker waiting on itself.
+ */
+
+@Component
+public class ChatUpdateDispatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger(ChatUpdateDispatcher.class);
+
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final Semaphore capacity;
+    private final ThreadLocal<Boolean> onWorker = ThreadLocal.withInitial(() -> false);
+    private final ThreadLocal<Long> currentChat = new ThreadLocal<>();
+
+    public ChatUpdateDispatcher(@Value("${bot.dispatcher.workers:0}") int workers,
+                                @Value("${bot.dispatcher.queue-size:1000}") int queueSize) {
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(() -> {
+                        onWorker.set(true);
+                        runnable.run();
+                    }, "chat-worker-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.capacity = new Semaphore(queueSize);
+        LOGGER.info("Chat dispatcher started with {} workers and queue size {}", threads, queueSize);
+    }
+
+    /**
+     * Queues a task for the given chat. Tasks of one chat run one after another in submission order.
+     * Blocks while the dispatcher already holds the maximum number of pending tasks, unless called
+     * from one of the dispatcher's own workers.
+     */
+    public void dispatch(long chatId, Runnable task) {
+        boolean counted = !onWorker.get();
+        if (counted) {
+            try {
+                capacity.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Interrupted while waiting for dispatcher capacity, dropping task for chat ID: {}", chatId);
+                return;
+            }
+        }
+        Task queued = new Task(task, counted);
+
+        while (true) {
+            Lane lane = lanes.computeIfAbsent(chatId, Lane::new);
+            synchronized (lane) {
+                if (lane.retired) {
+                    continue;
+                }
+                lane.tasks.add(queued);
+                if (!lane.scheduled) {
+                    try {
+                        workers.execute(() -> drain(lane));
+                        lane.scheduled = true;
+                    } catch (RejectedExecutionException e) {
+                        lane.tasks.remove(queued);
+                        queued.release();
+                        LOGGER.warn("Chat dispatcher is shut down, dropping task for chat ID: {}", chatId);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tells whether the calling thread is a worker running a task of the given chat. Work for that chat
+     * may then be done inline, since it runs in the chat's order already.
+     */
+    public boolean isOnLane(long chatId) {
+        Long chat = currentChat.get();
+        return chat != null && chat == chatId;
+    }
+
+    public int getPendingTasks() {
+        return lanes.values().stream().mapToInt(lane -> {
+            synchronized (lane) {
+                return lane.tasks.size();
+            }
+        }).sum();
+    }
+
+    /**
+     * Runs the next task of a lane and hands the lane back to the pool if more work is queued,
+     * so a busy chat cannot starve the other chats sharing the workers.
+     */
+    private void drain(Lane lane) {
+        while (true) {
+            Task task;
+            synchronized (lane) {
+                task = lane.tasks.poll();
+                if (task == null) {
+                    lane.scheduled = false;
+                    lane.retired = true;
+                    lanes.remove(lane.chatId, lane);
+                    return;
+                }
+            }
+
+            currentChat.set(lane.chatId);
+            try {
+                task.runnable.run();
+            } catch (Exception e) {
+                LOGGER.error("Failed to process task for chat ID: {}", lane.chatId, e);
+            } finally {
+                currentChat.remove();
+                task.release();
+            }
+
+            try {
+                workers.execute(() -> drain(lane));
+                return;
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Chat dispatcher is shutting down, finishing chat ID: {} inline", lane.chatId);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        LOGGER.info("Shutting down chat dispatcher");
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("Chat dispatcher did not finish pending updates in time");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    private static final class Lane {
+        private final long chatId;
+        private final Queue<Task> tasks = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean retired;
+
+        private Lane(long chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    private final class Task {
+        private final Runnable runnable;
+        private final boolean counted;
+
+        private Task(Runnable runnable, boolean counted) {
+            this.runnable = runnable;
+            this.counted = counted;
+        }
+
+        private void release() {
+            if (counted) {
+                capacity.release();
+            }
+        }
+    }
+}
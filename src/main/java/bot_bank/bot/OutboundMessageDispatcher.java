@@ -0,0 +1,392 @@
+package bot_bank.bot;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * OutboundMessageDispatcher sends all outgoing messages of the bot while keeping within the Telegram
+ * send limits. A global token bucket caps the number of messages per second for the whole bot, and
+ * every chat has its own smaller bucket, so a burst to one chat is paced without holding up the others.
+ * Messages of one chat are sent one at a time in the order they were queued. When Telegram answers
+ * with 429 the chat is paused for the requested retry_after and the message is sent again; network
+ * and server errors are retried with a growing delay. Both are bounded by the maximum number of attempts.
+ * The queue is bounded, callers wait when it is full, and messages still queued on shutdown are sent
+ * before the dispatcher stops. Other sends, such as documents, are queued with the messages of their chat.
+ */
+
+@Component
+public class OutboundMessageDispatcher {
+
+    private static final Logger LOGGER = LogManager.getLogger(OutboundMessageDispatcher.class);
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Map<String, ChatQueue> chats = new LinkedHashMap<>();
+    private final TokenBucket global;
+    private final double chatRate;
+    private final int chatBurst;
+    private final int queueSize;
+    private final int maxAttempts;
+    private final ExecutorService senders;
+    private final Thread scheduler;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private int queued;
+    private boolean accepting = true;
+
+    public OutboundMessageDispatcher(@Value("${bot.outbound.global-rate:30}") double globalRate,
+                                     @Value("${bot.outbound.chat-rate:1}") double chatRate,
+                                     @Value("${bot.outbound.chat-burst:3}") int chatBurst,
+                                     @Value("${bot.outbound.queue-size:10000}") int queueSize,
+                                     @Value("${bot.outbound.max-attempts:5}") int maxAttempts,
+                                     @Value("${bot.outbound.senders:4}") int senders) {
+        this.global = new TokenBucket(globalRate, Math.max(1, (int) globalRate));
+        this.chatRate = chatRate;
+        this.chatBurst = chatBurst;
+        this.queueSize = queueSize;
+        this.maxAttempts = maxAttempts;
+        AtomicInteger counter = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senders, runnable -> {
+            Thread thread = new Thread(runnable, "outbound-sender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = new Thread(this::schedule, "outbound-scheduler");
+        this.scheduler.setDaemon(true);
+        this.scheduler.start();
+    }
+
+    /**
+     * Queues a message for sending. Blocks while the queue is full.
+     *
+     * @return a future completed when the message has been sent, or completed exceptionally when
+     * it could not be sent within the allowed attempts
+     */
+    public CompletableFuture<Void> send(SendMessage message, Sender sender) {
+        return send(message.getChatId(), () -> sender.send(message));
+    }
+
+    /**
+     * Queues any other call to the Telegram API that sends something to the chat, e.g. a document, so it
+     * keeps its place among the messages of the chat and counts against the same limits. Blocks while the
+     * queue is full.
+     *
+     * @return a future completed when the call has been made, or completed exceptionally when it could
+     * not be made within the allowed attempts
+     */
+    public CompletableFuture<Void> send(String chatId, Call call) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        lock.lock();
+        try {
+            while (accepting && queued >= queueSize) {
+                notFull.await();
+            }
+            if (!accepting) {
+                result.completeExceptionally(new TelegramApiException("Outbound dispatcher is shut down"));
+                return result;
+            }
+            chats.computeIfAbsent(chatId, ChatQueue::new).messages.addLast(new Outbound(call, result));
+            queued++;
+            changed.signalAll();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(new TelegramApiException("Interrupted while waiting for the outbound queue", e));
+        } finally {
+            lock.unlock();
+        }
+        return result;
+    }
+
+    public int getQueuedMessages() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentMessages() {
+        return sent.sum();
+    }
+
+    public long getRetriedMessages() {
+        return retried.sum();
+    }
+
+    public long getFailedMessages() {
+        return failed.sum();
+    }
+
+    /**
+     * Picks the next chat whose message may be sent now, going round the chats so that one busy chat
+     * cannot starve the others, and hands the message to a sender thread.
+     */
+    private void schedule() {
+        lock.lock();
+        try {
+            while (accepting || queued > 0) {
+                long now = System.nanoTime();
+                long wait = Long.MAX_VALUE;
+                ChatQueue ready = null;
+
+                Iterator<ChatQueue> iterator = chats.values().iterator();
+                while (iterator.hasNext()) {
+                    ChatQueue chat = iterator.next();
+                    if (chat.inFlight) {
+                        continue;
+                    }
+                    if (chat.messages.isEmpty()) {
+                        if (chat.bucket.isFull(now)) {
+                            iterator.remove();
+                        }
+                        continue;
+                    }
+                    long delay = Math.max(chat.pausedUntil - now, chat.bucket.nanosUntilToken(now));
+                    if (delay <= 0) {
+                        ready = chat;
+                        break;
+                    }
+                    wait = Math.min(wait, delay);
+                }
+
+                if (ready != null) {
+                    long globalDelay = global.nanosUntilToken(now);
+                    if (globalDelay <= 0) {
+                        global.take(now);
+                        ready.bucket.take(now);
+                        ready.inFlight = true;
+                        Outbound outbound = ready.messages.pollFirst();
+                        chats.remove(ready.chatId);
+                        chats.put(ready.chatId, ready);
+                        ChatQueue chat = ready;
+                        senders.execute(() -> deliver(chat, outbound));
+                        continue;
+                    }
+                    wait = globalDelay;
+                }
+
+                if (wait == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(wait);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Outbound scheduler interrupted with {} messages queued", queued);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(ChatQueue chat, Outbound outbound) {
+        outbound.attempts++;
+        try {
+            outbound.call.run();
+            sent.increment();
+            finish(chat);
+            outbound.result.complete(null);
+        } catch (TelegramApiRequestException e) {
+            Integer errorCode = e.getErrorCode();
+            if (errorCode != null && errorCode == TOO_MANY_REQUESTS) {
+                Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                long delay = TimeUnit.SECONDS.toNanos(retryAfter != null ? retryAfter : 1);
+                LOGGER.warn("Telegram asked to retry after {} seconds for chat ID: {}", retryAfter, chat.chatId);
+                retryOrFail(chat, outbound, delay, e);
+            } else if (errorCode == null || errorCode >= 500) {
+                retryOrFail(chat, outbound, backoff(outbound.attempts), e);
+            } else {
+                fail(chat, outbound, e);
+            }
+        } catch (TelegramApiException e) {
+            retryOrFail(chat, outbound, backoff(outbound.attempts), e);
+        } catch (RuntimeException e) {
+            fail(chat, outbound, e);
+        }
+    }
+
+    private void retryOrFail(ChatQueue chat, Outbound outbound, long delayNanos, Exception cause) {
+        if (outbound.attempts >= maxAttempts) {
+            fail(chat, outbound, cause);
+            return;
+        }
+        retried.increment();
+        LOGGER.info("Retrying message to chat ID: {} in {} ms, attempt {} failed: {}",
+                chat.chatId, TimeUnit.NANOSECONDS.toMillis(delayNanos), outbound.attempts, cause.getMessage());
+        lock.lock();
+        try {
+            chat.messages.addFirst(outbound);
+            chat.pausedUntil = System.nanoTime() + delayNanos;
+            chat.inFlight = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fail(ChatQueue chat, Outbound outbound, Exception cause) {
+        failed.increment();
+        LOGGER.error("Failed to send message to chat ID: {} after {} attempts", chat.chatId, outbound.attempts, cause);
+        finish(chat);
+        outbound.result.completeExceptionally(cause);
+    }
+
+    private void finish(ChatQueue chat) {
+        lock.lock();
+        try {
+            chat.inFlight = false;
+            queued--;
+            notFull.signalAll();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long backoff(int attempts) {
+        return Math.min(TimeUnit.MILLISECONDS.toNanos(500) << Math.min(attempts - 1, 16), MAX_BACKOFF_NANOS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            accepting = false;
+            LOGGER.info("Shutting down outbound dispatcher with {} messages queued", queued);
+            notFull.signalAll();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            scheduler.join(TimeUnit.SECONDS.toMillis(10));
+            if (scheduler.isAlive()) {
+                LOGGER.warn("Outbound dispatcher did not send all queued messages in time");
+                scheduler.interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scheduler.interrupt();
+        }
+        senders.shutdown();
+        dropQueued();
+    }
+
+    private void dropQueued() {
+        lock.lock();
+        try {
+            for (ChatQueue chat : chats.values()) {
+                for (Outbound outbound : chat.messages) {
+                    failed.increment();
+                    outbound.result.completeExceptionally(
+                            new TelegramApiException("Outbound dispatcher stopped before the message was sent"));
+                }
+                queued -= chat.messages.size();
+                chat.messages.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Performs the actual call to the Telegram API.
+     */
+    @FunctionalInterface
+    public interface Sender {
+        void send(SendMessage message) throws TelegramApiException;
+    }
+
+    /**
+     * Performs one call to the Telegram API that sends something to a chat.
+     */
+    @FunctionalInterface
+    public interface Call {
+        void run() throws TelegramApiException;
+    }
+
+    private final class ChatQueue {
+        private final String chatId;
+        private final Deque<Outbound> messages = new ArrayDeque<>();
+        private final TokenBucket bucket = new TokenBucket(chatRate, chatBurst);
+        private boolean inFlight;
+        private long pausedUntil = System.nanoTime();
+
+        private ChatQueue(String chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    private static final class Outbound {
+        private final Call call;
+        private final CompletableFuture<Void> result;
+        private int attempts;
+
+        private Outbound(Call call, CompletableFuture<Void> result) {
+            this.call = call;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Token bucket refilled continuously at the given rate up to its capacity. Not thread safe,
+     * it is only used under the dispatcher lock.
+     */
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private TokenBucket(double perSecond, int capacity) {
+            this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        private long nanosUntilToken(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        private void take(long now) {
+            refill(now);
+            tokens -= 1;
+        }
+
+        private boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+    }
+}
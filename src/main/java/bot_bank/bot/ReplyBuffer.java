@@ -0,0 +1,83 @@
+package bot_bank.bot;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * ReplyBuffer collects the replies produced while handling a single update and merges consecutive
+ * plain-text replies to the same chat into one message, as long as the merged text fits into one
+ * Telegram message. Replies with a keyboard or formatting are never merged; they are sent as they are,
+ * after the text collected before them, so the order of the replies does not change.
+ */
+
+class ReplyBuffer {
+
+    static final int MAX_TEXT_LENGTH = 4096;
+    private static final String SEPARATOR = "\n\n";
+
+    private final Function<SendMessage, CompletableFuture<Void>> sender;
+    private String chatId;
+    private StringBuilder text;
+    private List<CompletableFuture<Void>> waiting;
+
+    ReplyBuffer(Function<SendMessage, CompletableFuture<Void>> sender) {
+        this.sender = sender;
+    }
+
+    CompletableFuture<Void> add(SendMessage message) {
+        if (!isPlainText(message)) {
+            flush();
+            return sender.apply(message);
+        }
+        if (text != null && (!chatId.equals(message.getChatId())
+                || text.length() + SEPARATOR.length() + message.getText().length() > MAX_TEXT_LENGTH)) {
+            flush();
+        }
+        if (text == null) {
+            chatId = message.getChatId();
+            text = new StringBuilder(message.getText());
+            waiting = new ArrayList<>();
+        } else {
+            text.append(SEPARATOR).append(message.getText());
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        waiting.add(result);
+        return result;
+    }
+
+    void flush() {
+        if (text == null) {
+            return;
+        }
+        SendMessage merged = new SendMessage();
+        merged.setChatId(chatId);
+        merged.setText(text.toString());
+        List<CompletableFuture<Void>> results = waiting;
+        chatId = null;
+        text = null;
+        waiting = null;
+
+        sender.apply(merged).whenComplete((sent, e) -> {
+            for (CompletableFuture<Void> result : results) {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(null);
+                }
+            }
+        });
+    }
+
+    private static boolean isPlainText(SendMessage message) {
+        return message.getReplyMarkup() == null
+                && message.getParseMode() == null
+                && message.getEntities() == null
+                && message.getReplyToMessageId() == null
+                && message.getText() != null
+                && message.getText().length() <= MAX_TEXT_LENGTH;
+    }
+}
@@ -0,0 +1,60 @@
+package bot_bank.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * IdGeneratorSeeder moves the id generators of the id_generator table past the ids already in use.
+ * Accounts and credits used to get their ids from AUTO_INCREMENT columns; without this, a database that
+ * already holds such rows would hand out their ids again. It runs once the EntityManagerFactory has
+ * updated the schema and before anything is inserted, and does nothing when the generators are ahead of the
+ * highest id in use.
+ * <p>
+ * Hibernate takes the ids in blocks with its pooled optimizer, which reads the stored value as the last id
+ * of the next block: a stored value of 150 hands out the ids 101 to 150, or 102 to 151 with
+ * hibernate.id.generator.stored_last_used, the default, which reads the stored value as the last id used.
+ * So the generator is moved to the highest id in use plus the size of a block, which never hands out an id
+ * in use whichever way the value is read, at the cost of skipping one id in the second case.
+ */
+
+@Component
+@DependsOn("entityManagerFactory")
+public class IdGeneratorSeeder {
+
+    private static final Logger LOGGER = LogManager.getLogger(IdGeneratorSeeder.class);
+
+    /** The tables whose ids come from the id_generator table; the row of a table is named after it. */
+    private static final List<String> TABLES = List.of("account", "credit");
+
+    /** The allocationSize of the @TableGenerator of Account and Credit. */
+    private static final int ALLOCATION_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public IdGeneratorSeeder(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void seed() {
+        for (String table : TABLES) {
+            long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            long next = max + ALLOCATION_SIZE;
+            List<Long> current = jdbcTemplate.queryForList(
+                    "SELECT next_val FROM id_generator WHERE name = ?", Long.class, table);
+            if (current.isEmpty()) {
+                jdbcTemplate.update("INSERT INTO id_generator (name, next_val) VALUES (?, ?)", table, next);
+                LOGGER.info("Id generator {} starts after id {}", table, max);
+            } else if (current.get(0) <= max) {
+                jdbcTemplate.update("UPDATE id_generator SET next_val = ? WHERE name = ?", next, table);
+                LOGGER.warn("Id generator {} was behind the ids in use, moved it past id {}", table, max);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package bot_bank.config;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+
+/**
+ * JournalLegDateBackfill copies the date of the journal entries onto the legs that were written before the
+ * legs carried it, so that they appear in the history of their accounts, which is read by the date of the
+ * legs. It also drops the index the history used to be read from, which the index on the dates replaces.
+ * Both steps do nothing once they are done.
+ */
+
+@Component
+@DependsOn("entityManagerFactory")
+public class JournalLegDateBackfill {
+
+    private static final Logger LOGGER = LogManager.getLogger(JournalLegDateBackfill.class);
+
+    private static final String REPLACED_INDEX = "idx_journal_leg_account_history";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JournalLegDateBackfill(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void backfill() {
+        int legs = jdbcTemplate.update("UPDATE journal_leg SET entry_date = "
+                + "(SELECT e.entry_date FROM journal_entry e WHERE e.id = journal_leg.entry_id) WHERE entry_date IS NULL");
+        if (legs > 0) {
+            LOGGER.info("Copied the entry date onto {} journal legs", legs);
+        }
+        if (hasReplacedIndex()) {
+            jdbcTemplate.execute("DROP INDEX " + REPLACED_INDEX + " ON journal_leg");
+            LOGGER.info("Dropped index {}", REPLACED_INDEX);
+        }
+    }
+
+    private boolean hasReplacedIndex() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (ResultSet indexes = connection.getMetaData().getIndexInfo(connection.getCatalog(), connection.getSchema(),
+                    "journal_leg", false, true)) {
+                while (indexes.next()) {
+                    if (REPLACED_INDEX.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }));
+    }
+}
@@ -0,0 +1,218 @@
+package bot_bank.config;
+
+import bot_bank.model.Account;
+import bot_bank.model.JournalEntry;
+import bot_bank.model.Money;
+import bot_bank.repo.AccountRepository;
+import bot_bank.repo.JournalEntryRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * LegacyTransactionMigrator folds the rows of the transaction table, where transfers were recorded before the
+ * double-entry journal, into journal entries, so the history and the statements of an account go back past
+ * the change. A transfer between accounts was recorded as a TRANSFER row of the sender followed by a DEPOSIT
+ * row of the recipient; the two rows become one entry, with clearing legs when the currencies differ, as
+ * JournalEntry.transfer makes it. A TRANSFER without a DEPOSIT, such as one to an external recipient, is
+ * cleared in the currency of the sender, and a DEPOSIT without a TRANSFER is taken from clearing. The balances
+ * of the accounts already include these transfers and are left alone.
+ * <p>
+ * Every entry is keyed by the id of its first row, so a migration that was interrupted is run again without
+ * writing any entry twice. Once every row is in the journal, the table is renamed to transaction_migrated,
+ * which keeps the rows and lets the migration run only once.
+ */
+
+@Component
+@DependsOn("entityManagerFactory")
+public class LegacyTransactionMigrator {
+
+    private static final Logger LOGGER = LogManager.getLogger(LegacyTransactionMigrator.class);
+
+    static final String LEGACY_TABLE = "transaction";
+    static final String MIGRATED_TABLE = "transaction_migrated";
+    static final String KEY_PREFIX = "legacy-transaction:";
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String SELECT_ROWS = "SELECT t.id, t.account_id, t.transaction_type, t.amount, "
+            + "t.transaction_date, t.recipient_account, t.recipient_details, a.currency "
+            + "FROM " + LEGACY_TABLE + " t JOIN account a ON a.id = t.account_id "
+            + "WHERE t.id > ? ORDER BY t.id LIMIT " + CHUNK_SIZE;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JournalEntryRepository journalEntryRepository;
+    private final AccountRepository accountRepository;
+
+    public LegacyTransactionMigrator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                     JournalEntryRepository journalEntryRepository, AccountRepository accountRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.journalEntryRepository = journalEntryRepository;
+        this.accountRepository = accountRepository;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!legacyTableExists()) {
+            return;
+        }
+        LOGGER.info("Migrating the {} table into the journal", LEGACY_TABLE);
+        Map<List<Long>, Deque<Row>> unpaired = new HashMap<>();
+        int migrated = 0;
+        long lastId = 0;
+        while (true) {
+            List<Row> rows = jdbcTemplate.query(SELECT_ROWS, LegacyTransactionMigrator::row, lastId);
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<List<Row>> entries = new ArrayList<>();
+            for (Row row : rows) {
+                if (row.recipientAccountId == null) {
+                    entries.add(List.of(row));
+                } else if (row.isTransfer()) {
+                    unpaired.computeIfAbsent(List.of(row.accountId, row.recipientAccountId), pair -> new ArrayDeque<>())
+                            .add(row);
+                } else {
+                    Deque<Row> transfers = unpaired.get(List.of(row.recipientAccountId, row.accountId));
+                    Row transfer = transfers != null ? transfers.poll() : null;
+                    entries.add(transfer != null ? List.of(transfer, row) : List.of(row));
+                }
+            }
+            migrated += save(entries);
+            lastId = rows.get(rows.size() - 1).id;
+        }
+        List<List<Row>> rest = new ArrayList<>();
+        unpaired.values().forEach(transfers -> transfers.forEach(transfer -> rest.add(List.of(transfer))));
+        migrated += save(rest);
+
+        jdbcTemplate.execute("ALTER TABLE " + LEGACY_TABLE + " RENAME TO " + MIGRATED_TABLE);
+        LOGGER.info("Migrated {} entries from the {} table, which is kept as {}", migrated, LEGACY_TABLE, MIGRATED_TABLE);
+    }
+
+    private boolean legacyTableExists() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (ResultSet tables = connection.getMetaData().getTables(connection.getCatalog(), connection.getSchema(),
+                    null, null)) {
+                while (tables.next()) {
+                    if (LEGACY_TABLE.equalsIgnoreCase(tables.getString("TABLE_NAME"))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }));
+    }
+
+    /**
+     * Saves the entries made of the given rows, skipping those saved by an earlier run, and returns how
+     * many were saved.
+     */
+    private int save(List<List<Row>> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Integer saved = transactionTemplate.execute(status -> {
+            Set<String> made = new HashSet<>(journalEntryRepository.findExistingIdempotencyKeys(
+                    rows.stream().map(entry -> key(entry.get(0))).collect(Collectors.toList())));
+            List<JournalEntry> entries = new ArrayList<>();
+            for (List<Row> entry : rows) {
+                if (!made.contains(key(entry.get(0)))) {
+                    entries.add(entry(entry));
+                }
+            }
+            journalEntryRepository.saveAll(entries);
+            return entries.size();
+        });
+        return saved != null ? saved : 0;
+    }
+
+    private JournalEntry entry(List<Row> rows) {
+        Row first = rows.get(0);
+        if (!first.isTransfer()) {
+            JournalEntry entry = new JournalEntry();
+            entry.setEntryDate(first.date);
+            entry.setIdempotencyKey(key(first));
+            entry.setRecipientDetails(first.recipientDetails);
+            entry.addLeg(null, first.amount().negate());
+            entry.addLeg(account(first.accountId), first.amount());
+            return entry;
+        }
+        Money senderAmount = first.amount().negate();
+        Row deposit = rows.size() > 1 ? rows.get(1) : null;
+        return JournalEntry.transfer(first.date, key(first), account(first.accountId), senderAmount,
+                deposit != null ? account(deposit.accountId) : null, deposit != null ? deposit.amount() : senderAmount,
+                first.recipientDetails);
+    }
+
+    private Account account(Long id) {
+        return accountRepository.getReferenceById(id);
+    }
+
+    private static String key(Row row) {
+        return KEY_PREFIX + row.id;
+    }
+
+    private static Row row(ResultSet rs, int rowNum) throws SQLException {
+        long recipientAccountId = rs.getLong("recipient_account");
+        Long recipient = rs.wasNull() ? null : recipientAccountId;
+        return new Row(rs.getLong("id"), rs.getLong("account_id"), rs.getString("transaction_type"),
+                rs.getBigDecimal("amount"), rs.getTimestamp("transaction_date").toLocalDateTime(), recipient,
+                rs.getString("recipient_details"), rs.getString("currency"));
+    }
+
+    private static final class Row {
+        private final long id;
+        private final Long accountId;
+        private final String type;
+        private final BigDecimal amount;
+        private final LocalDateTime date;
+        private final Long recipientAccountId;
+        private final String recipientDetails;
+        private final String currency;
+
+        private Row(long id, Long accountId, String type, BigDecimal amount, LocalDateTime date,
+                    Long recipientAccountId, String recipientDetails, String currency) {
+            this.id = id;
+            this.accountId = accountId;
+            this.type = type;
+            this.amount = amount;
+            this.date = date;
+            this.recipientAccountId = recipientAccountId;
+            this.recipientDetails = recipientDetails;
+            this.currency = currency;
+        }
+
+        private boolean isTransfer() {
+            return "TRANSFER".equals(type);
+        }
+
+        /**
+         * The amount of the row, which is negative for a TRANSFER.
+         */
+        private Money amount() {
+            return Money.of(Money.toMinorUnits(amount), currency);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package bot_bank.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateClientConfig sets up the HTTP client used to call the currency rate providers.
+ * The client keeps a small pool of connections alive between calls. Connecting, waiting for a pooled
+ * connection and reading the response are all bounded by timeouts, so a provider that hangs
+ * cannot hold the refreshing thread.
+ */
+
+@Configuration
+public class RateClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient rateHttpClient(@Value("${rates.http.max-connections:10}") int maxConnections,
+                                              @Value("${rates.http.connect-timeout-ms:2000}") int connectTimeout,
+                                              @Value("${rates.http.read-timeout-ms:5000}") int readTimeout,
+                                              @Value("${rates.http.keep-alive-seconds:30}") long keepAlive) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setValidateAfterInactivity(1000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> TimeUnit.SECONDS.toMillis(keepAlive))
+                .evictIdleConnections(keepAlive, TimeUnit.SECONDS)
+                .evictExpiredConnections()
+                .build();
+    }
+
+    @Bean
+    public RestTemplate rateRestTemplate(CloseableHttpClient rateHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(rateHttpClient));
+    }
+}
@@ -1,21 +1,31 @@
 package bot_bank.event;
 
 import bot_bank.bot.BotContext;
-import org.springframework.context.ApplicationEvent;
 
 /**
- * BotEvent represents a custom application event that holds the bot context.
- * It is used to trigger specific actions based on the bot's current state and user input.
+ * BotEvent is the base class of the events published on the BotEventBus. Every event belongs to
+ * a chat and carries the bot context of the update that caused it; events of the same chat are
+ * handled in the order they were published.
  */
-public class BotEvent extends ApplicationEvent {
+public abstract class BotEvent {
+    private final long chatId;
     private final transient BotContext context;
+    private final long publishedAt = System.nanoTime();
 
-    public BotEvent(Object source, BotContext context) {
-        super(source);
+    protected BotEvent(long chatId, BotContext context) {
+        this.chatId = chatId;
         this.context = context;
     }
 
-    BotContext getContext() {
+    public long getChatId() {
+        return chatId;
+    }
+
+    public BotContext getContext() {
         return context;
     }
+
+    long getPublishedAt() {
+        return publishedAt;
+    }
 }
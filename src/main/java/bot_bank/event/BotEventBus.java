@@ -0,0 +1,101 @@
+package bot_bank.event;
+
+import bot_bank.bot.ChatUpdateDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * BotEventBus delivers bot events to the handlers subscribed to their type. Events are handled on the
+ * lane of their chat in the ChatUpdateDispatcher, so events and updates of one chat run one after another
+ * in order. An event published from another thread is queued on the lane and the publisher is not held up
+ * by its handlers. An event published while its own chat's lane is running, such as the command of a
+ * callback update, is handled at once: queueing it would let the chat's updates that are already waiting
+ * run before it. The number of queued events and the time spent waiting and handling are recorded as metrics.
+ */
+
+@Component
+public class BotEventBus {
+
+    private static final Logger LOGGER = LogManager.getLogger(BotEventBus.class);
+
+    private final ChatUpdateDispatcher dispatcher;
+    private final MeterRegistry meterRegistry;
+    private final List<Subscription<?>> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Map<Class<?>, Timer> waitTimers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Timer> handleTimers = new ConcurrentHashMap<>();
+
+    public BotEventBus(ChatUpdateDispatcher dispatcher, MeterRegistry meterRegistry) {
+        this.dispatcher = dispatcher;
+        this.meterRegistry = meterRegistry;
+        meterRegistry.gauge("bot.events.queued", queued);
+    }
+
+    public <E extends BotEvent> void subscribe(Class<E> type, Consumer<? super E> handler) {
+        subscriptions.add(new Subscription<>(type, handler));
+    }
+
+    public void publish(BotEvent event) {
+        LOGGER.debug("Publishing {}", event);
+        queued.incrementAndGet();
+        if (dispatcher.isOnLane(event.getChatId())) {
+            deliver(event);
+        } else {
+            dispatcher.dispatch(event.getChatId(), () -> deliver(event));
+        }
+    }
+
+    public int getQueuedEvents() {
+        return queued.get();
+    }
+
+    private void deliver(BotEvent event) {
+        queued.decrementAndGet();
+        long start = System.nanoTime();
+        timer(waitTimers, "bot.events.wait", event).record(start - event.getPublishedAt(), TimeUnit.NANOSECONDS);
+        try {
+            for (Subscription<?> subscription : subscriptions) {
+                try {
+                    subscription.deliver(event);
+                } catch (Exception e) {
+                    LOGGER.error("Failed to handle {}", event, e);
+                }
+            }
+        } finally {
+            timer(handleTimers, "bot.events.handle", event).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(Map<Class<?>, Timer> timers, String name, BotEvent event) {
+        return timers.computeIfAbsent(event.getClass(), type -> Timer.builder(name)
+                .tag("event", type.getSimpleName())
+                .register(meterRegistry));
+    }
+
+    private static final class Subscription<E extends BotEvent> {
+        private final Class<E> type;
+        private final Consumer<? super E> handler;
+
+        private Subscription(Class<E> type, Consumer<? super E> handler) {
+            this.type = type;
+            this.handler = handler;
+        }
+
+        private void deliver(BotEvent event) {
+            if (type.isInstance(event)) {
+                handler.accept(type.cast(event));
+            }
+        }
+    }
+}
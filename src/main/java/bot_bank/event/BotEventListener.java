@@ -1,23 +1,24 @@
 package bot_bank.event;
 
 import bot_bank.service.CommandService;
-import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 /**
- * BotEventListener listens for BotEvent instances and handles them by invoking
- * the appropriate command on the CommandService.
+ * BotEventListener subscribes to CommandEvent instances on the BotEventBus and handles them by
+ * invoking the appropriate command on the CommandService. The replies of a command are collected
+ * in a reply buffer of the bot, so consecutive texts go out as one message.
  */
 @Component
 public class BotEventListener {
     private final CommandService commandService;
 
-    public BotEventListener(CommandService commandService) {
+    public BotEventListener(CommandService commandService, BotEventBus eventBus) {
         this.commandService = commandService;
+        eventBus.subscribe(CommandEvent.class, this::handleCommandEvent);
     }
 
-    @EventListener
-    public void handleBotEvent(BotEvent event) {
-        commandService.handleCommand(event.getContext().getInput(), event.getContext());
+    public void handleCommandEvent(CommandEvent event) {
+        event.getContext().getBot().withReplyBuffer(
+                () -> commandService.handleCommand(event.getCommand(), event.getContext()));
     }
 }
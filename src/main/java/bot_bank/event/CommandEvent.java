@@ -0,0 +1,25 @@
+package bot_bank.event;
+
+import bot_bank.bot.BotContext;
+
+/**
+ * CommandEvent is published when a user presses an inline keyboard button. It holds the command
+ * taken from the callback data, for example "/mycards" or "USD".
+ */
+public class CommandEvent extends BotEvent {
+    private final String command;
+
+    public CommandEvent(long chatId, String command, BotContext context) {
+        super(chatId, context);
+        this.command = command;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    @Override
+    public String toString() {
+        return "CommandEvent{chatId=" + getChatId() + ", command='" + command + "'}";
+    }
+}
@@ -0,0 +1,73 @@
+package bot_bank.ledger;
+
+import bot_bank.model.Money;
+
+/**
+ * LedgerEntry is one transfer recorded in the ledger journal. The recipient amount is in the currency of
+ * the recipient account, or in the currency of the sender when there is no recipient account. The recipient
+ * account is null when the money leaves the bank, in which case the recipient details describe where to.
+ * The sequence number is assigned by the journal and orders the entries of the whole ledger.
+ */
+public final class LedgerEntry {
+
+    private final long sequence;
+    private final long timestamp;
+    private final String idempotencyKey;
+    private final long senderAccountId;
+    private final Long recipientAccountId;
+    private final Money senderAmount;
+    private final Money recipientAmount;
+    private final String recipientDetails;
+
+    public LedgerEntry(long sequence, long timestamp, String idempotencyKey, long senderAccountId,
+                       Long recipientAccountId, Money senderAmount, Money recipientAmount, String recipientDetails) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.idempotencyKey = idempotencyKey;
+        this.senderAccountId = senderAccountId;
+        this.recipientAccountId = recipientAccountId;
+        this.senderAmount = senderAmount;
+        this.recipientAmount = recipientAmount;
+        this.recipientDetails = recipientDetails;
+    }
+
+    LedgerEntry withSequence(long sequence) {
+        return new LedgerEntry(sequence, timestamp, idempotencyKey, senderAccountId, recipientAccountId,
+                senderAmount, recipientAmount, recipientDetails);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * The time of the transfer in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public long getSenderAccountId() {
+        return senderAccountId;
+    }
+
+    public Long getRecipientAccountId() {
+        return recipientAccountId;
+    }
+
+    public Money getSenderAmount() {
+        return senderAmount;
+    }
+
+    public Money getRecipientAmount() {
+        return recipientAmount;
+    }
+
+    public String getRecipientDetails() {
+        return recipientDetails;
+    }
+}
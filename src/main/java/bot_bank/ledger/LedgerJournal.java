@@ -0,0 +1,348 @@
+package bot_bank.ledger;
+
+import bot_bank.model.Money;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * LedgerJournal is the append-only log of the ledger. Entries are written by a single writer thread in
+ * the order of their sequence numbers; the writer takes every entry waiting at that moment, writes them
+ * together and forces them to disk with one fsync (group commit), and only then completes their futures,
+ * so a transfer is never confirmed before it is durable. Every record carries its length and a CRC, so a
+ * record torn by a crash is recognized and cut off on recovery. The journal is split into segments named
+ * after their first sequence number; segments whose entries are all projected to the database are deleted.
+ */
+public class LedgerJournal implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(LedgerJournal.class);
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Object sequenceLock = new Object();
+    private final Timer commitTimer;
+    private final DistributionSummary batchSize;
+    private long lastSequence;
+    private FileChannel channel;
+    private Thread writer;
+    private volatile boolean running;
+
+    public LedgerJournal(Path directory, long segmentBytes, int maxBatch, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBatch = maxBatch;
+        this.commitTimer = Timer.builder("ledger.journal.commit").register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("ledger.journal.batch").register(meterRegistry);
+    }
+
+    /**
+     * Reads the entries with a sequence number greater than the given one, in order. A torn record at the
+     * end of a segment is cut off. Must be called before the journal is started.
+     */
+    public List<LedgerEntry> recover(long afterSequence) throws IOException {
+        Files.createDirectories(directory);
+        List<LedgerEntry> entries = new ArrayList<>();
+        long last = afterSequence;
+        for (Path segment : segments()) {
+            long valid = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+                byte[] payload;
+                while ((payload = readPayload(in)) != null) {
+                    LedgerEntry entry = decode(payload);
+                    valid += HEADER_BYTES + payload.length;
+                    last = Math.max(last, entry.getSequence());
+                    if (entry.getSequence() > afterSequence) {
+                        entries.add(entry);
+                    }
+                }
+            }
+            if (valid < Files.size(segment)) {
+                LOGGER.warn("Cutting off a torn record at byte {} of {}", valid, segment);
+                try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    file.truncate(valid);
+                }
+            }
+        }
+        synchronized (sequenceLock) {
+            lastSequence = last;
+        }
+        return entries;
+    }
+
+    /**
+     * Starts the writer. The listener is called on the writer thread with every entry once it is durable,
+     * in the order of the sequence numbers.
+     */
+    public void start(Consumer<LedgerEntry> listener) throws IOException {
+        Files.createDirectories(directory);
+        openSegment(lastSequence + 1);
+        running = true;
+        writer = new Thread(() -> write(listener), "ledger-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Assigns the next sequence number to the entry and queues it for writing. The future completes with
+     * the numbered entry once it is on disk, or exceptionally if it could not be written.
+     */
+    public CompletableFuture<LedgerEntry> append(LedgerEntry entry) {
+        Pending pending;
+        synchronized (sequenceLock) {
+            if (!running) {
+                return CompletableFuture.failedFuture(new IOException("The ledger journal is closed"));
+            }
+            pending = new Pending(entry.withSequence(++lastSequence));
+            queue.add(pending);
+        }
+        return pending.future;
+    }
+
+    public long getLastSequence() {
+        synchronized (sequenceLock) {
+            return lastSequence;
+        }
+    }
+
+    public int getPendingEntries() {
+        return queue.size();
+    }
+
+    /**
+     * Deletes the segments that only hold entries up to the given sequence number. The segment being
+     * written is never deleted.
+     */
+    public void deleteSegmentsUpTo(long sequence) {
+        try {
+            List<Path> segments = segments();
+            for (int i = 0; i < segments.size() - 1; i++) {
+                if (firstSequence(segments.get(i + 1)) - 1 <= sequence) {
+                    Files.deleteIfExists(segments.get(i));
+                    LOGGER.info("Deleted projected journal segment {}", segments.get(i));
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to delete projected journal segments", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (sequenceLock) {
+            running = false;
+        }
+        if (writer != null) {
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to close the ledger journal", e);
+        }
+    }
+
+    private void write(Consumer<LedgerEntry> listener) {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            Pending first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.clear();
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            commit(batch, listener);
+        }
+    }
+
+    private void commit(List<Pending> batch, Consumer<LedgerEntry> listener) {
+        long start = System.nanoTime();
+        long position = -1;
+        try {
+            position = channel.position();
+            ByteBuffer buffer = encode(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOGGER.error("Failed to write {} ledger entries", batch.size(), e);
+            truncate(position);
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+            return;
+        }
+        commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        batchSize.record(batch.size());
+        for (Pending pending : batch) {
+            pending.future.complete(pending.entry);
+            listener.accept(pending.entry);
+        }
+        try {
+            if (channel.size() >= segmentBytes) {
+                openSegment(batch.get(batch.size() - 1).entry.getSequence() + 1);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to start a new journal segment", e);
+        }
+    }
+
+    /**
+     * Cuts off whatever part of a failed batch reached the file, so the entries written after it are
+     * not hidden behind a broken record.
+     */
+    private void truncate(long position) {
+        if (position < 0) {
+            return;
+        }
+        try {
+            channel.truncate(position);
+            channel.position(position);
+        } catch (IOException e) {
+            LOGGER.error("Failed to cut off a failed journal write", e);
+        }
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        Path segment = directory.resolve(PREFIX + String.format("%020d", firstSequence) + SUFFIX);
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX)
+                            && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static ByteBuffer encode(List<Pending> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(batch.size() * 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+        for (Pending pending : batch) {
+            byte[] payload = payload(pending.entry);
+            crc.reset();
+            crc.update(payload);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static byte[] payload(LedgerEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(entry.getSequence());
+        out.writeLong(entry.getTimestamp());
+        out.writeLong(entry.getSenderAccountId());
+        out.writeLong(entry.getRecipientAccountId() != null ? entry.getRecipientAccountId() : -1);
+        out.writeLong(entry.getSenderAmount().getMinorUnits());
+        out.writeUTF(entry.getSenderAmount().getCurrency());
+        out.writeLong(entry.getRecipientAmount().getMinorUnits());
+        out.writeUTF(entry.getRecipientAmount().getCurrency());
+        out.writeUTF(entry.getIdempotencyKey() != null ? entry.getIdempotencyKey() : "");
+        out.writeUTF(entry.getRecipientDetails() != null ? entry.getRecipientDetails() : "");
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the payload of the next record, or returns null at the end of the segment or at a torn or
+     * corrupt record.
+     */
+    private static byte[] readPayload(DataInputStream in) throws IOException {
+        byte[] payload;
+        int checksum;
+        try {
+            int length = in.readInt();
+            checksum = in.readInt();
+            if (length <= 0 || length > 1 << 20) {
+                return null;
+            }
+            payload = in.readNBytes(length);
+            if (payload.length < length) {
+                return null;
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+
+    private static LedgerEntry decode(byte[] payload) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        long sequence = record.readLong();
+        long timestamp = record.readLong();
+        long sender = record.readLong();
+        long recipient = record.readLong();
+        Money senderAmount = Money.of(record.readLong(), record.readUTF());
+        Money recipientAmount = Money.of(record.readLong(), record.readUTF());
+        String key = record.readUTF();
+        String details = record.readUTF();
+        return new LedgerEntry(sequence, timestamp, key.isEmpty() ? null : key, sender, recipient >= 0 ? recipient : null,
+                senderAmount, recipientAmount, details.isEmpty() ? null : details);
+    }
+
+    private static final class Pending {
+        private final LedgerEntry entry;
+        private final CompletableFuture<LedgerEntry> future = new CompletableFuture<>();
+
+        private Pending(LedgerEntry entry) {
+            this.entry = entry;
+        }
+    }
+}
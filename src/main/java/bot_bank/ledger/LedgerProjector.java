@@ -0,0 +1,291 @@
+package bot_bank.ledger;
+
+import bot_bank.model.Account;
+import bot_bank.model.JournalEntry;
+import bot_bank.model.JournalLeg;
+import bot_bank.model.Money;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.Closeable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * LedgerProjector writes the durable ledger entries to the account and journal tables in the
+ * background. Entries are projected in batches: the balance changes of a batch are summed per account,
+ * so an account that received a hundred payments is updated once, and the journal entries, their legs and
+ * the new checkpoint are written in the same database transaction. A batch that cannot be written is retried
+ * until the database accepts it, so the tables only ever lag behind the journal. The idempotency key of every
+ * projected entry is handed to the listener once its entry is committed.
+ */
+class LedgerProjector implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(LedgerProjector.class);
+    private static final int CHECKPOINT_ID = 1;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private static final String UPDATE_BALANCE =
+            "UPDATE account SET current_balance = current_balance + ? WHERE id = ?";
+    private static final String INSERT_ENTRY =
+            "INSERT INTO journal_entry (entry_date, idempotency_key, recipient_details) VALUES (?, ?, ?)";
+    private static final String INSERT_LEG =
+            "INSERT INTO journal_leg (entry_id, leg_index, account_id, currency, amount, entry_date) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LedgerJournal journal;
+    private final int maxBatch;
+    private final Consumer<String> projectedKeys;
+    private final BlockingQueue<LedgerEntry> queue = new LinkedBlockingQueue<>();
+    private Thread worker;
+    private volatile boolean running;
+    private volatile long projectedSequence;
+
+    LedgerProjector(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, LedgerJournal journal,
+                    int maxBatch, Consumer<String> projectedKeys) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.journal = journal;
+        this.maxBatch = maxBatch;
+        this.projectedKeys = projectedKeys;
+    }
+
+    /**
+     * Returns the sequence number of the last projected entry, creating the checkpoint if there is none.
+     */
+    long loadCheckpoint() {
+        List<Long> sequences = jdbcTemplate.queryForList(
+                "SELECT last_sequence FROM ledger_checkpoint WHERE id = ?", Long.class, CHECKPOINT_ID);
+        if (sequences.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO ledger_checkpoint (id, last_sequence) VALUES (?, 0)", CHECKPOINT_ID);
+            projectedSequence = 0;
+        } else {
+            projectedSequence = sequences.get(0);
+        }
+        return projectedSequence;
+    }
+
+    /**
+     * Returns whether a journal entry with the idempotency key is stored in the journal table.
+     */
+    boolean isProjected(String idempotencyKey) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM journal_entry WHERE idempotency_key = ?",
+                Long.class, idempotencyKey);
+        return count != null && count > 0;
+    }
+
+    long getProjectedSequence() {
+        return projectedSequence;
+    }
+
+    void enqueue(LedgerEntry entry) {
+        queue.add(entry);
+    }
+
+    void start() {
+        running = true;
+        worker = new Thread(this::run, "ledger-projector");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Projects the given entries right away, on the calling thread, e.g. the entries recovered from the
+     * journal on startup.
+     */
+    void projectNow(List<LedgerEntry> entries) {
+        for (int from = 0; from < entries.size(); from += maxBatch) {
+            projectUntilDone(entries.subList(from, Math.min(entries.size(), from + maxBatch)));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        List<LedgerEntry> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            LedgerEntry first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.clear();
+            batch.add(first);
+            queue.drainTo(batch, maxBatch - 1);
+            projectUntilDone(batch);
+            journal.deleteSegmentsUpTo(projectedSequence);
+        }
+    }
+
+    private void projectUntilDone(List<LedgerEntry> batch) {
+        while (true) {
+            try {
+                project(batch);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                LOGGER.error("Ledger batch up to {} violates a constraint, projecting its entries one by one",
+                        batch.get(batch.size() - 1).getSequence(), e);
+                batch.forEach(this::projectSingle);
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to project ledger batch up to {}, retrying",
+                        batch.get(batch.size() - 1).getSequence(), e);
+                if (!pause()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Projects one entry of a batch the database refused. An entry that is refused even on its own is skipped,
+     * so it changes no balance in the tables. The ledger refuses a duplicate idempotency key before it moves
+     * any money, so such an entry can only come from a journal written before it did; it is recovered and
+     * skipped on startup, before the shards load the balances from the tables.
+     */
+    private void projectSingle(LedgerEntry entry) {
+        while (true) {
+            try {
+                project(List.of(entry));
+                return;
+            } catch (DataIntegrityViolationException e) {
+                LOGGER.error("Ledger entry {} with idempotency key {} cannot be projected, skipping it",
+                        entry.getSequence(), entry.getIdempotencyKey(), e);
+                if (entry.getIdempotencyKey() != null) {
+                    projectedKeys.accept(entry.getIdempotencyKey());
+                }
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.error("Failed to project ledger entry {}, retrying", entry.getSequence(), e);
+                if (!pause()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean pause() {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void project(List<LedgerEntry> batch) {
+        Map<Long, Long> changes = new LinkedHashMap<>();
+        List<JournalEntry> entries = new ArrayList<>(batch.size());
+        for (LedgerEntry entry : batch) {
+            if (entry.getSequence() <= projectedSequence) {
+                continue;
+            }
+            LocalDateTime date = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getTimestamp()), ZoneId.systemDefault());
+            entries.add(JournalEntry.transfer(date, entry.getIdempotencyKey(), account(entry.getSenderAccountId()),
+                    entry.getSenderAmount(), account(entry.getRecipientAccountId()), entry.getRecipientAmount(),
+                    entry.getRecipientDetails()));
+            changes.merge(entry.getSenderAccountId(), -entry.getSenderAmount().getMinorUnits(), Long::sum);
+            if (entry.getRecipientAccountId() != null) {
+                changes.merge(entry.getRecipientAccountId(), entry.getRecipientAmount().getMinorUnits(), Long::sum);
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        long lastSequence = batch.get(batch.size() - 1).getSequence();
+        List<Object[]> balances = new ArrayList<>(changes.size());
+        changes.forEach((accountId, change) -> balances.add(new Object[]{Money.toBigDecimal(change), accountId}));
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(UPDATE_BALANCE, balances);
+            List<Long> ids = insertEntries(entries);
+            List<Object[]> legs = new ArrayList<>(entries.size() * 2);
+            for (int i = 0; i < entries.size(); i++) {
+                for (JournalLeg leg : entries.get(i).getLegs()) {
+                    legs.add(new Object[]{ids.get(i), leg.getPosition(),
+                            leg.getAccount() != null ? leg.getAccount().getId() : null, leg.getCurrency(),
+                            Money.toBigDecimal(leg.getAmount()), Timestamp.valueOf(leg.getEntryDate())});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_LEG, legs);
+            jdbcTemplate.update("UPDATE ledger_checkpoint SET last_sequence = ? WHERE id = ?", lastSequence, CHECKPOINT_ID);
+        });
+        projectedSequence = lastSequence;
+        for (JournalEntry entry : entries) {
+            if (entry.getIdempotencyKey() != null) {
+                projectedKeys.accept(entry.getIdempotencyKey());
+            }
+        }
+    }
+
+    /**
+     * Inserts the headers of the journal entries in one batch and returns their generated ids, in order.
+     */
+    private List<Long> insertEntries(List<JournalEntry> entries) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_ENTRY, Statement.RETURN_GENERATED_KEYS)) {
+                for (JournalEntry entry : entries) {
+                    statement.setTimestamp(1, Timestamp.valueOf(entry.getEntryDate()));
+                    statement.setString(2, entry.getIdempotencyKey());
+                    statement.setString(3, entry.getRecipientDetails());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                List<Long> ids = new ArrayList<>(entries.size());
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    while (keys.next()) {
+                        ids.add(keys.getLong(1));
+                    }
+                }
+                if (ids.size() != entries.size()) {
+                    throw new IllegalStateException("Expected " + entries.size() + " journal entry ids, got " + ids.size());
+                }
+                return ids;
+            }
+        });
+    }
+
+    private static Account account(Long id) {
+        if (id == null) {
+            return null;
+        }
+        Account account = new Account();
+        account.setId(id);
+        return account;
+    }
+}
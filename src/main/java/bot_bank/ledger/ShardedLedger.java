@@ -0,0 +1,242 @@
+package bot_bank.ledger;
+
+import bot_bank.model.Money;
+import bot_bank.service.TransferEngine.Outcome;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ShardedLedger keeps the balances of the accounts in memory and carries out transfers without taking
+ * database locks. The accounts are split across shards by id, and each shard is a single thread that alone
+ * reads and changes the balances of its accounts, so no balance needs a lock. A balance is loaded from the
+ * account table the first time its account is used. A transfer takes the money from the sender on the shard
+ * of the sender and appends the transfer to the LedgerJournal; once the journal entry is durable the money
+ * is added to the recipient on the shard of the recipient and the transfer is confirmed. The LedgerProjector
+ * writes the entries to the account and journal tables in the background.
+ * <p>
+ * On startup the journal entries after the checkpoint of the tables are projected before any transfer is
+ * accepted, so the tables plus the journal always give the state of the ledger. The ledger is off unless
+ * ledger.enabled is set; while it is on, it must be the only writer of the balances of the accounts, which is
+ * why the interest on credits is charged through it as well.
+ * <p>
+ * A transfer with the idempotency key of an earlier transfer moves no money. The ledger remembers the key of
+ * every transfer until its entry is projected, and looks up the keys it no longer remembers in the journal
+ * table, so a key is refused before the sender is debited whether or not its entry has been projected.
+ */
+
+@Component
+@ConditionalOnProperty(name = "ledger.enabled", havingValue = "true")
+public class ShardedLedger {
+
+    private static final Logger LOGGER = LogManager.getLogger(ShardedLedger.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LedgerJournal journal;
+    private final LedgerProjector projector;
+    private final Shard[] shards;
+    private final ConcurrentMap<String, CompletableFuture<Outcome>> unprojectedKeys = new ConcurrentHashMap<>();
+    private final Counter duplicates;
+
+    public ShardedLedger(JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager,
+                         MeterRegistry meterRegistry,
+                         @Value("${ledger.shards:4}") int shards,
+                         @Value("${ledger.journal.dir:ledger}") String journalDirectory,
+                         @Value("${ledger.journal.segment-bytes:67108864}") long segmentBytes,
+                         @Value("${ledger.batch-size:500}") int batchSize) throws IOException {
+        this.jdbcTemplate = jdbcTemplate;
+        this.journal = new LedgerJournal(Path.of(journalDirectory), segmentBytes, batchSize, meterRegistry);
+        this.projector = new LedgerProjector(jdbcTemplate, transactionManager, journal, batchSize,
+                unprojectedKeys::remove);
+
+        long checkpoint = projector.loadCheckpoint();
+        List<LedgerEntry> unprojected = journal.recover(checkpoint);
+        if (!unprojected.isEmpty()) {
+            LOGGER.info("Projecting {} journal entries after checkpoint {}", unprojected.size(), checkpoint);
+            projector.projectNow(unprojected);
+        }
+        journal.start(projector::enqueue);
+        projector.start();
+
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(i);
+        }
+        this.duplicates = Counter.builder("ledger.transfers.duplicates").register(meterRegistry);
+        Gauge.builder("ledger.journal.pending", journal, LedgerJournal::getPendingEntries).register(meterRegistry);
+        Gauge.builder("ledger.projection.lag", this, ledger -> ledger.journal.getLastSequence()
+                - ledger.projector.getProjectedSequence()).register(meterRegistry);
+        LOGGER.info("Ledger started with {} shards at journal sequence {}", shards, journal.getLastSequence());
+    }
+
+    /**
+     * Transfers the amounts, in minor units, between the accounts. The returned future completes once the
+     * transfer is durable in the journal, or once it was refused. A transfer whose idempotency key was already
+     * used gets the outcome of the earlier transfer instead: the future of the earlier transfer while it has
+     * not been projected, and COMPLETED once its journal entry is stored.
+     */
+    public CompletableFuture<Outcome> transfer(String idempotencyKey, long senderAccountId, Long recipientAccountId,
+                                               Money senderAmount, Money recipientAmount, String recipientDetails) {
+        if (idempotencyKey == null) {
+            return transfer(null, senderAccountId, recipientAccountId, senderAmount, recipientAmount,
+                    recipientDetails, true);
+        }
+        CompletableFuture<Outcome> result = new CompletableFuture<>();
+        CompletableFuture<Outcome> earlier = unprojectedKeys.putIfAbsent(idempotencyKey, result);
+        if (earlier != null) {
+            duplicates.increment();
+            LOGGER.info("Transfer {} is already in the ledger, returning its outcome", idempotencyKey);
+            return earlier;
+        }
+        // The key was not remembered, so an earlier transfer with it, if any, had been projected before
+        if (projector.isProjected(idempotencyKey)) {
+            unprojectedKeys.remove(idempotencyKey, result);
+            duplicates.increment();
+            LOGGER.info("Transfer {} was already made, its journal entry is stored", idempotencyKey);
+            result.complete(Outcome.COMPLETED);
+            return result;
+        }
+        transfer(idempotencyKey, senderAccountId, recipientAccountId, senderAmount, recipientAmount, recipientDetails,
+                true).whenComplete((outcome, e) -> {
+                    if (e != null || outcome != Outcome.COMPLETED) {
+                        // Nothing was journaled, so the key may be used again
+                        unprojectedKeys.remove(idempotencyKey, result);
+                    }
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(outcome);
+                    }
+                });
+        return result;
+    }
+
+    /**
+     * Charges the amount, in minor units, to the account, e.g. the interest on a credit. The money leaves the
+     * bank with the given details, and unlike a transfer the charge is made even when it overdraws the account.
+     */
+    public CompletableFuture<Outcome> charge(long accountId, Money amount, String details) {
+        return transfer(null, accountId, null, amount, amount, details, false);
+    }
+
+    private CompletableFuture<Outcome> transfer(String idempotencyKey, long senderAccountId, Long recipientAccountId,
+                                                Money senderAmount, Money recipientAmount, String recipientDetails,
+                                                boolean checkFunds) {
+        Shard sender = shardOf(senderAccountId);
+        Shard recipient = recipientAccountId != null ? shardOf(recipientAccountId) : null;
+        CompletableFuture<Boolean> recipientExists = recipient == null
+                ? CompletableFuture.completedFuture(true)
+                : CompletableFuture.supplyAsync(() -> recipient.balance(recipientAccountId) != null, recipient.executor);
+
+        return recipientExists.thenComposeAsync(exists -> {
+            if (!exists) {
+                return CompletableFuture.completedFuture(Outcome.ACCOUNT_NOT_FOUND);
+            }
+            Long balance = sender.balance(senderAccountId);
+            if (balance == null) {
+                return CompletableFuture.completedFuture(Outcome.ACCOUNT_NOT_FOUND);
+            }
+            if (checkFunds && balance < senderAmount.getMinorUnits()) {
+                return CompletableFuture.completedFuture(Outcome.INSUFFICIENT_FUNDS);
+            }
+            sender.add(senderAccountId, -senderAmount.getMinorUnits());
+
+            LedgerEntry entry = new LedgerEntry(0, System.currentTimeMillis(), idempotencyKey, senderAccountId,
+                    recipientAccountId, senderAmount, recipientAmount, recipientDetails);
+            return journal.append(entry).handle((durable, e) -> {
+                if (e != null) {
+                    LOGGER.error("Transfer from account {} could not be journaled, returning the money", senderAccountId, e);
+                    sender.executor.execute(() -> sender.add(senderAccountId, senderAmount.getMinorUnits()));
+                    return Outcome.FAILED;
+                }
+                if (recipient != null) {
+                    recipient.executor.execute(() -> recipient.add(recipientAccountId, recipientAmount.getMinorUnits()));
+                }
+                return Outcome.COMPLETED;
+            });
+        }, sender.executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+        projector.close();
+    }
+
+    private Shard shardOf(long accountId) {
+        return shards[(int) Math.floorMod(accountId, (long) shards.length)];
+    }
+
+    /**
+     * The balances of the accounts of one shard. Only the thread of the shard touches them.
+     */
+    private final class Shard {
+        private final ExecutorService executor;
+        private final Map<Long, Long> balances = new HashMap<>();
+
+        private Shard(int index) {
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ledger-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Returns the balance of the account, loading it from the account table on first use, or null if
+         * there is no such account.
+         */
+        private Long balance(long accountId) {
+            Long balance = balances.get(accountId);
+            if (balance == null) {
+                List<BigDecimal> rows = jdbcTemplate.queryForList(
+                        "SELECT current_balance FROM account WHERE id = ?", BigDecimal.class, accountId);
+                if (rows.isEmpty()) {
+                    return null;
+                }
+                balance = Money.toMinorUnits(rows.get(0));
+                balances.put(accountId, balance);
+            }
+            return balance;
+        }
+
+        private void add(long accountId, long amount) {
+            Long balance = balance(accountId);
+            if (balance != null) {
+                balances.put(accountId, Math.addExact(balance, amount));
+            }
+        }
+    }
+}
@@ -10,6 +10,7 @@ import lombok.ToString;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
@@ -21,7 +22,7 @@ import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.PrePersist;
 import javax.persistence.Table;
-import java.math.BigDecimal;
+import javax.persistence.TableGenerator;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,7 +30,9 @@ import java.util.List;
 /**
  * Account represents a bank account entity associated with a user. It contains details
  * such as account number, balances, currency, and associated credits. This entity is
- * used to manage account-related operations.
+ * used to manage account-related operations. The balances are held in minor units of the
+ * account currency, see Money. Ids are taken in blocks from the id_generator table, so new
+ * accounts do not have to be inserted one at a time.
  */
 
 @Entity
@@ -43,7 +46,9 @@ import java.util.List;
 public class Account {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "account_id")
+    @TableGenerator(name = "account_id", table = "id_generator", pkColumnName = "name", valueColumnName = "next_val",
+            pkColumnValue = "account", allocationSize = 50)
     private Long id;
 
     @OneToOne(mappedBy = "account", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
@@ -56,11 +61,13 @@ public class Account {
     @Column(name = "account_number", nullable = false, unique = true, length = 20)
     private String accountNumber;
 
+    @Convert(converter = MinorUnitsConverter.class)
     @Column(name = "credit_balance", nullable = true)
-    private BigDecimal creditBalance;
+    private Long creditBalance;
 
+    @Convert(converter = MinorUnitsConverter.class)
     @Column(name = "current_balance", nullable = false)
-    private BigDecimal currentBalance = BigDecimal.ZERO;
+    private long currentBalance;
 
     @Column(name = "currency", nullable = false, length = 3)
     private String currency;
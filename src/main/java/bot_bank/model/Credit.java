@@ -17,6 +17,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.TableGenerator;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
@@ -24,6 +25,7 @@ import java.time.LocalDateTime;
 /**
  * Credit represents a credit entity associated with an account.
  * This entity is used to manage credit-related operations.
+ * Ids are taken in blocks from the id_generator table, so credits are inserted in batches.
  */
 
 @Entity
@@ -38,7 +40,9 @@ public class Credit implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "credit_id")
+    @TableGenerator(name = "credit_id", table = "id_generator", pkColumnName = "name", valueColumnName = "next_val",
+            pkColumnValue = "credit", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
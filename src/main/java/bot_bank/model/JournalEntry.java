@@ -0,0 +1,100 @@
+package bot_bank.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.OneToMany;
+import javax.persistence.OrderBy;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JournalEntry is the header of one movement of money in the double-entry journal. The money is moved by
+ * its legs, and the legs of an entry are balanced: per currency they sum up to zero. Money that comes from
+ * or goes to outside the bank, or is exchanged into another currency, passes through clearing legs, which
+ * have no account. The journal is append-only; the transactions of an account are derived from it.
+ */
+
+@Entity
+@Getter
+@Setter
+@ToString(exclude = "legs")
+@NoArgsConstructor
+@Table(name = "journal_entry", indexes = @Index(name = "idx_journal_entry_date", columnList = "entry_date"))
+public class JournalEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "entry_date", nullable = false)
+    private LocalDateTime entryDate;
+
+    /**
+     * Identifies the request that made the entry, so the same request is never carried out twice.
+     */
+    @Column(name = "idempotency_key", nullable = true, unique = true, length = 64)
+    private String idempotencyKey;
+
+    @Column(name = "recipient_details", length = 255)
+    private String recipientDetails;
+
+    @OneToMany(mappedBy = "entry", cascade = CascadeType.PERSIST)
+    @OrderBy("position")
+    private List<JournalLeg> legs = new ArrayList<>();
+
+    /**
+     * Creates the entry of a transfer of the sender amount from the sender account and of the recipient
+     * amount to the recipient account. A transfer between accounts in the same currency has one leg per
+     * account. A transfer into another currency is cleared in both currencies, and a transfer without a
+     * recipient account, which leaves the bank, is cleared in the currency of the sender.
+     */
+    public static JournalEntry transfer(LocalDateTime date, String idempotencyKey, Account sender, Money senderAmount,
+                                        Account recipient, Money recipientAmount, String recipientDetails) {
+        JournalEntry entry = new JournalEntry();
+        entry.setEntryDate(date);
+        entry.setIdempotencyKey(idempotencyKey);
+        entry.setRecipientDetails(recipientDetails);
+        entry.addLeg(sender, senderAmount.negate());
+        if (recipient != null && recipientAmount.equals(senderAmount)) {
+            entry.addLeg(recipient, recipientAmount);
+            return entry;
+        }
+        entry.addLeg(null, senderAmount);
+        if (recipient != null) {
+            entry.addLeg(null, recipientAmount.negate());
+            entry.addLeg(recipient, recipientAmount);
+        }
+        return entry;
+    }
+
+    /**
+     * Adds a leg of the amount to the account, or a clearing leg if the account is null. The leg takes the
+     * date of the entry, so the date is set first.
+     */
+    public void addLeg(Account account, Money amount) {
+        legs.add(new JournalLeg(this, legs.size(), account, amount.getCurrency(), amount.getMinorUnits(), entryDate));
+    }
+
+    /**
+     * Returns whether the legs sum up to zero in every currency.
+     */
+    public boolean isBalanced() {
+        Map<String, Long> sums = new HashMap<>();
+        legs.forEach(leg -> sums.merge(leg.getCurrency(), leg.getAmount(), Math::addExact));
+        return sums.values().stream().allMatch(sum -> sum == 0);
+    }
+}
@@ -0,0 +1,81 @@
+package bot_bank.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * JournalLeg is one side of a JournalEntry: an amount, in minor units of its currency, added to or, when
+ * negative, taken from an account. A leg without an account is a clearing leg. Legs are identified by
+ * their entry and their position in it, so the legs of an entry need no generated ids of their own and
+ * are inserted together in one batch. Every leg carries the date of its entry, so the legs of an account
+ * are indexed in date order, which is not the order of the entry ids, and a page of the history of an
+ * account is one range of the index.
+ */
+
+@Entity
+@Getter
+@Setter
+@ToString(exclude = {"entry", "account"})
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(JournalLeg.Key.class)
+@Table(name = "journal_leg", indexes = @Index(name = "idx_journal_leg_account_date",
+        columnList = "account_id, entry_date, entry_id, leg_index, currency, amount"))
+public class JournalLeg {
+
+    @Id
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "entry_id", nullable = false)
+    private JournalEntry entry;
+
+    @Id
+    @Column(name = "leg_index", nullable = false)
+    private int position;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "account_id", nullable = true)
+    private Account account;
+
+    @Column(name = "currency", nullable = false, length = 3)
+    private String currency;
+
+    @Convert(converter = MinorUnitsConverter.class)
+    @Column(name = "amount", nullable = false, precision = 15, scale = 2)
+    private long amount;
+
+    /**
+     * The date of the entry. The column allows nulls only so it can be added to a journal that has rows;
+     * JournalLegDateBackfill fills it in for them.
+     */
+    @Column(name = "entry_date")
+    private LocalDateTime entryDate;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long entry;
+        private int position;
+    }
+}
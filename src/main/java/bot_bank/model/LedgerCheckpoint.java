@@ -0,0 +1,30 @@
+package bot_bank.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * LedgerCheckpoint records the sequence number of the last ledger journal entry projected to the
+ * account and journal tables. It is written in the same database transaction as the projected
+ * rows, so the tables are always the state of the ledger as of that entry.
+ */
+
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "ledger_checkpoint")
+public class LedgerCheckpoint {
+
+    @Id
+    private Integer id;
+
+    @Column(name = "last_sequence", nullable = false)
+    private long lastSequence;
+}
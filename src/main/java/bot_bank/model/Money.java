@@ -0,0 +1,178 @@
+package bot_bank.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money is an amount of money in one currency, held as a whole number of minor units (cents, kopiykas),
+ * so 100.50 UAH is 10050 minor units of UAH. All supported currencies have two decimal places.
+ * Balances and transaction amounts are stored as minor units in long fields of the entities; the static
+ * methods work on those longs directly, so adding, comparing and converting amounts does not allocate
+ * and never goes through floating point. Every rounding, e.g. after a conversion or applying interest,
+ * is half-even to the nearest minor unit.
+ */
+
+public final class Money implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+
+    private static final long MINOR_PER_MAJOR = 100;
+    private static final int RATE_SCALE = 8;
+    private static final long RATE_FACTOR = 100_000_000L;
+
+    private final long minorUnits;
+    private final String currency;
+
+    private Money(long minorUnits, String currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static Money of(long minorUnits, String currency) {
+        return new Money(minorUnits, currency);
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public Money plus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money minus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits), currency);
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    /**
+     * Converts the amount into the given currency, see {@link #convert(long, double)}.
+     */
+    public Money convertTo(String targetCurrency, double rate) {
+        return new Money(convert(minorUnits, rate), targetCurrency);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Money)) {
+            return false;
+        }
+        Money other = (Money) o;
+        return minorUnits == other.minorUnits && currency.equals(other.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currency.hashCode();
+    }
+
+    /**
+     * Returns the amount followed by the currency, e.g. "100.50 UAH".
+     */
+    @Override
+    public String toString() {
+        return format(minorUnits) + " " + currency;
+    }
+
+    private void checkCurrency(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " and " + other.currency);
+        }
+    }
+
+    /**
+     * Parses an amount such as "100" or "100.50" into minor units. Amounts with more than two decimal
+     * places are not rounded but rejected, since the user could not have meant them.
+     *
+     * @throws NumberFormatException if the text is not an amount with at most two decimal places
+     */
+    public static long parseMinorUnits(String text) {
+        if (text == null) {
+            throw new NumberFormatException("null");
+        }
+        try {
+            return new BigDecimal(text.trim()).setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Not an amount with at most " + SCALE + " decimal places: " + text);
+        }
+    }
+
+    /**
+     * Returns the minor units of a whole amount, e.g. 500000 for 5000.
+     */
+    public static long minorUnitsOf(long majorUnits) {
+        return Math.multiplyExact(majorUnits, MINOR_PER_MAJOR);
+    }
+
+    public static long toMinorUnits(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toBigDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Formats minor units as a plain amount with two decimal places, e.g. "-12.30".
+     */
+    public static String format(long minorUnits) {
+        long major = Math.abs(minorUnits / MINOR_PER_MAJOR);
+        long minor = Math.abs(minorUnits % MINOR_PER_MAJOR);
+        return (minorUnits < 0 ? "-" : "") + major + (minor < 10 ? ".0" : ".") + minor;
+    }
+
+    /**
+     * Converts minor units with the given exchange rate. The rate is first fixed to eight decimal places,
+     * so the result depends only on those digits and not on how the double was computed, and the
+     * converted amount is rounded half-even to a minor unit.
+     */
+    public static long convert(long minorUnits, double rate) {
+        long fixedRate = Math.round(rate * RATE_FACTOR);
+        try {
+            return divideHalfEven(Math.multiplyExact(minorUnits, fixedRate), RATE_FACTOR);
+        } catch (ArithmeticException e) {
+            return BigDecimal.valueOf(minorUnits).multiply(BigDecimal.valueOf(fixedRate, RATE_SCALE))
+                    .setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+        }
+    }
+
+    /**
+     * Multiplies minor units by the fraction numerator / denominator, e.g. by 5 / 100 for five percent,
+     * rounding half-even to a minor unit.
+     */
+    public static long multiply(long minorUnits, long numerator, long denominator) {
+        return divideHalfEven(Math.multiplyExact(minorUnits, numerator), denominator);
+    }
+
+    private static long divideHalfEven(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        long remainder = Math.abs(dividend % divisor);
+        long twice = remainder * 2;
+        if (twice > divisor || (twice == divisor && (quotient & 1) != 0)) {
+            quotient += (dividend < 0) != (divisor < 0) ? -1 : 1;
+        }
+        return quotient;
+    }
+}
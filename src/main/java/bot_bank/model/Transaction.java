@@ -1,66 +1,84 @@
 package bot_bank.model;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Subselect;
+import org.hibernate.annotations.Synchronize;
 
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
+import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
-import javax.persistence.Table;
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 
 
 /**
- * Transaction represents a financial transaction entity associated with an account. This entity is used
- * to manage transaction-related operations.
+ * Transaction represents a financial transaction of an account. Transactions are not stored on their own;
+ * every leg of the double-entry journal that has an account is one transaction of that account, a TRANSFER
+ * when money left the account and a DEPOSIT when it came in. The other account of the entry, if any, is the
+ * recipient account. The amount is held in minor units of the account currency. The transactions recorded
+ * before the journal are moved into it by the LegacyTransactionMigrator.
+ * <p>
+ * A transaction is identified by its journal entry and leg: the id is the entry id times
+ * MAX_LEGS plus the index of the leg.
  */
 
 @Entity
+@Immutable
+@Subselect("SELECT l.entry_id * " + Transaction.MAX_LEGS + " + l.leg_index AS id, "
+        + "l.account_id AS account_id, "
+        + "CASE WHEN l.amount < 0 THEN 'TRANSFER' ELSE 'DEPOSIT' END AS transaction_type, "
+        + "l.amount AS amount, "
+        + "e.entry_date AS transaction_date, "
+        + "c.account_id AS recipient_account, "
+        + "CASE WHEN l.amount < 0 THEN e.recipient_details END AS recipient_details "
+        + "FROM journal_leg l "
+        + "JOIN journal_entry e ON e.id = l.entry_id "
+        + "LEFT JOIN journal_leg c ON c.entry_id = l.entry_id AND c.account_id IS NOT NULL AND c.leg_index <> l.leg_index "
+        + "WHERE l.account_id IS NOT NULL")
+@Synchronize({"journal_entry", "journal_leg"})
 @Getter
-@Setter
 @ToString
-@Builder
-@AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "transaction")
 public class Transaction {
 
+    /** The most legs a journal entry has, see JournalEntry.transfer. */
+    public static final int MAX_LEGS = 4;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    @Column(name = "id", nullable = false, unique = true)
+    @Column(name = "id")
     private Long id;
 
-    @ManyToOne
-    @JoinColumn(name = "account_id", nullable = false)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "account_id")
+    @ToString.Exclude
     private Account account;
 
     @Enumerated(EnumType.STRING)
-    @Column(name = "transaction_type", nullable = false)
+    @Column(name = "transaction_type")
     private TransactionType transactionType;
 
-    @Column(name = "amount", nullable = false, precision = 15, scale = 2)
-    private BigDecimal amount;
+    @Convert(converter = MinorUnitsConverter.class)
+    @Column(name = "amount")
+    private long amount;
 
-    @Column(name = "transaction_date", nullable = false)
+    @Column(name = "transaction_date")
     private LocalDateTime transactionDate;
 
-    @ManyToOne
-    @JoinColumn(name = "recipient_account", nullable = true)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "recipient_account")
+    @ToString.Exclude
     private Account recipientAccount;
 
-    @Column(name = "recipient_details", length = 255)
+    @Column(name = "recipient_details")
     private String recipientDetails;
 
 
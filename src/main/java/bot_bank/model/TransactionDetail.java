@@ -6,6 +6,7 @@ import lombok.ToString;
 
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
@@ -13,7 +14,6 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
-import java.math.BigDecimal;
 
 /**
  * TransactionDetail represents detailed information about a transaction.Accepted and rejected transactions are
@@ -47,13 +47,14 @@ public class TransactionDetail {
     @Column(name = "recipient_card_number", nullable = true, length = 20)
     private String recipientCardNumber;
 
+    @Convert(converter = MinorUnitsConverter.class)
     @Column(name = "amount", nullable = true, precision = 15, scale = 2)
-    private BigDecimal amount;
+    private Long amount;
 
 
     public TransactionDetail() {}
 
-    public TransactionDetail(String senderCardNumber, String senderCvv, String senderExpDate, String recipientCardNumber, BigDecimal amount) {
+    public TransactionDetail(String senderCardNumber, String senderCvv, String senderExpDate, String recipientCardNumber, Long amount) {
         this.senderCardNumber = senderCardNumber;
         this.senderCvv = senderCvv;
         this.senderExpDate = senderExpDate;
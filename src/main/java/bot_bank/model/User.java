@@ -80,7 +80,10 @@ public class User implements Serializable {
 
     private Integer stateId;
 
-    @Column(name = "is_banned", nullable = false)
+    /**
+     * Written only by UserRepository.updateBanned, so saving a user loaded before a ban cannot lift it.
+     */
+    @Column(name = "is_banned", nullable = false, updatable = false)
     private boolean isBanned = false;
 
     @OneToOne(cascade = CascadeType.ALL)
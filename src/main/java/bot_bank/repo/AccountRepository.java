@@ -1,10 +1,17 @@
 package bot_bank.repo;
 
 import bot_bank.model.Account;
+import bot_bank.model.Money;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 public  interface AccountRepository extends JpaRepository<Account, Long> {
 
@@ -15,4 +22,61 @@ public  interface AccountRepository extends JpaRepository<Account, Long> {
  @Query("SELECT a FROM Account a WHERE a.currentBalance < a.creditBalance")
  List<Account> findAllByCurrentBalanceLessThanCreditBalance();
 
+ Optional<AccountSummary> findSummaryByAccountNumber(String accountNumber);
+
+ /**
+  * Reads the balance of the account, in minor units, without locking its row.
+  */
+ @Query("SELECT a.currentBalance FROM Account a WHERE a.id = :id")
+ Optional<Long> findCurrentBalanceById(@Param("id") Long id);
+
+ List<AccountSummary> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+ List<AccountSummary> findByIdLessThanOrderByIdDesc(Long id, Pageable pageable);
+
+ /**
+  * Takes the amount, in minor units, from the account in a single UPDATE that only applies while the
+  * balance covers it. Returns false if the account does not exist or has insufficient funds.
+  */
+ default boolean debit(Long id, long amount) {
+  return debitBalance(id, Money.toBigDecimal(amount)) == 1;
+ }
+
+ /**
+  * Adds the amount, in minor units, to the account in a single UPDATE. Returns false if the account
+  * does not exist.
+  */
+ default boolean credit(Long id, long amount) {
+  return creditBalance(id, Money.toBigDecimal(amount)) == 1;
+ }
+
+ /**
+  * Takes the amount, in minor units, from the account in a single UPDATE whatever its balance, for charges
+  * such as credit interest that may overdraw it. Returns false if the account does not exist.
+  */
+ default boolean charge(Long id, long amount) {
+  return chargeBalance(id, Money.toBigDecimal(amount)) == 1;
+ }
+
+ @Modifying
+ @Query(value = "UPDATE account SET current_balance = current_balance - :amount WHERE id = :id AND current_balance >= :amount",
+         nativeQuery = true)
+ int debitBalance(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+ @Modifying
+ @Query(value = "UPDATE account SET current_balance = current_balance + :amount WHERE id = :id", nativeQuery = true)
+ int creditBalance(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+ @Modifying
+ @Query(value = "UPDATE account SET current_balance = current_balance - :amount WHERE id = :id", nativeQuery = true)
+ int chargeBalance(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+ /**
+  * Sets the date the account was last checked for interest without writing any other column, so the balance
+  * is left to whoever owns it.
+  */
+ @Modifying
+ @Query(value = "UPDATE account SET last_checked_date = :date WHERE id = :id", nativeQuery = true)
+ int updateLastCheckedDate(@Param("id") Long id, @Param("date") LocalDateTime date);
+
 }
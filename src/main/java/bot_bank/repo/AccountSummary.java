@@ -0,0 +1,15 @@
+package bot_bank.repo;
+
+/**
+ * AccountSummary is a projection of the account columns shown in the admin account listing.
+ */
+public interface AccountSummary {
+
+    Long getId();
+
+    String getAccountNumber();
+
+    long getCurrentBalance();
+
+    String getCurrency();
+}
@@ -1,8 +1,12 @@
 package bot_bank.repo;
 
 import bot_bank.model.Card;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,4 +18,13 @@ public interface CardRepository extends JpaRepository<Card, Long> {
 
     Optional<Card> findByCardNumber(String cardNumber);
 
+    List<CardSummary> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    List<CardSummary> findByIdLessThanOrderByIdDesc(Long id, Pageable pageable);
+
+    @Query("SELECT c.cardNumber AS cardNumber, c.cvv AS cvv, c.expirationDate AS expirationDate, c.isBanned AS banned, "
+            + "c.user.id AS userId, a.id AS accountId, a.currency AS currency, a.currentBalance AS currentBalance "
+            + "FROM Card c JOIN c.account a WHERE c.cardNumber IN :cardNumbers")
+    List<TransferCard> findTransferCards(@Param("cardNumbers") Collection<String> cardNumbers);
+
 }
@@ -0,0 +1,20 @@
+package bot_bank.repo;
+
+import bot_bank.model.CardType;
+
+import java.time.LocalDate;
+
+/**
+ * CardSummary is a projection of the card columns shown in the admin card listing. Unlike the Card
+ * entity it does not pull the owner and the account along with every card.
+ */
+public interface CardSummary {
+
+    Long getId();
+
+    String getCardNumber();
+
+    LocalDate getExpirationDate();
+
+    CardType getCardType();
+}
@@ -0,0 +1,12 @@
+package bot_bank.repo;
+
+/**
+ * EntryIdRange is a projection of the smallest and the largest id of a set of journal entries; both are
+ * null when the set is empty.
+ */
+public interface EntryIdRange {
+
+    Long getFirstId();
+
+    Long getLastId();
+}
@@ -0,0 +1,28 @@
+package bot_bank.repo;
+
+import bot_bank.model.JournalEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface JournalEntryRepository extends JpaRepository<JournalEntry, Long> {
+
+    boolean existsByIdempotencyKey(String idempotencyKey);
+
+    @Query("SELECT e.idempotencyKey FROM JournalEntry e WHERE e.idempotencyKey IN :keys")
+    List<String> findExistingIdempotencyKeys(@Param("keys") Collection<String> keys);
+
+    /**
+     * Returns the smallest and the largest id of the entries made in the given period. The dates of the entries
+     * do not follow their ids exactly, entries being dated before they are inserted, so the range is taken over
+     * all the entries of the period rather than from its first and last entry.
+     */
+    @Query("SELECT MIN(e.id) AS firstId, MAX(e.id) AS lastId FROM JournalEntry e "
+            + "WHERE e.entryDate >= :from AND e.entryDate < :to")
+    EntryIdRange findIdRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+}
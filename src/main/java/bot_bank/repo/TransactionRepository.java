@@ -1,8 +1,85 @@
 package bot_bank.repo;
 
 import bot_bank.model.Transaction;
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
 
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
+/**
+ * Reads the transactions, which are derived from the journal and cannot be saved.
+ * <p>
+ * The history of an account is paged by the date of its legs, newest first, straight from the journal legs
+ * rather than through the Transaction view, whose computed id no index can serve. The entry id and the
+ * position of the leg break ties between legs of the same date. The date is copied onto the legs because the
+ * entry ids do not follow the dates: entries are dated before they are inserted, the ledger dates them on
+ * its shards, and the transactions migrated from before the journal were inserted after newer ones. Both
+ * queries seek on the (account_id, entry_date, entry_id, leg_index) index of the legs and take a page as a
+ * range of it, however long the history is. Every row of the page then reads the details of its entry by
+ * primary key and the account number of the other account of the entry, so a page costs one lookup of each
+ * per row shown.
+ * <p>
+ * A statement streams the transactions of one account between two entries of the journal instead of loading
+ * them; the fetch size of Integer.MIN_VALUE makes the MySQL driver hand the rows over one at a time rather
+ * than reading the whole result first.
+ */
+public interface TransactionRepository extends Repository<Transaction, Long> {
+
+    String HISTORY = "SELECT l.entry.id * " + Transaction.MAX_LEGS + " + l.position AS id, l.entryDate AS date, "
+            + "l.amount AS amount, l.currency AS currency, e.recipientDetails AS recipientDetails, "
+            + "(SELECT MIN(a.accountNumber) FROM JournalLeg o JOIN o.account a "
+            + "WHERE o.entry = l.entry AND o.position <> l.position) AS counterparty "
+            + "FROM JournalLeg l JOIN l.entry e WHERE l.account.id = :accountId ";
+
+    Optional<Transaction> findById(Long id);
+
+    /**
+     * Returns the date of the given leg, by which the history continues from it.
+     */
+    @Query("SELECT l.entryDate FROM JournalLeg l WHERE l.entry.id = :entryId AND l.position = :position")
+    Optional<LocalDateTime> findLegDate(@Param("entryId") long entryId, @Param("position") int position);
+
+    /**
+     * Returns the transactions of the account that come before the given leg, newest first.
+     */
+    @Query(HISTORY + "AND (l.entryDate < :date OR (l.entryDate = :date AND (l.entry.id < :entryId "
+            + "OR (l.entry.id = :entryId AND l.position < :position)))) "
+            + "ORDER BY l.entryDate DESC, l.entry.id DESC, l.position DESC")
+    List<TransactionSummary> findHistoryBefore(@Param("accountId") Long accountId, @Param("date") LocalDateTime date,
+                                               @Param("entryId") long entryId, @Param("position") int position,
+                                               Pageable pageable);
+
+    /**
+     * Returns the transactions of the account that come after the given leg, oldest first.
+     */
+    @Query(HISTORY + "AND (l.entryDate > :date OR (l.entryDate = :date AND (l.entry.id > :entryId "
+            + "OR (l.entry.id = :entryId AND l.position > :position)))) "
+            + "ORDER BY l.entryDate ASC, l.entry.id ASC, l.position ASC")
+    List<TransactionSummary> findHistoryAfter(@Param("accountId") Long accountId, @Param("date") LocalDateTime date,
+                                              @Param("entryId") long entryId, @Param("position") int position,
+                                              Pageable pageable);
+
+    /**
+     * Streams the transactions of the account in the given entries that were made in the given period, oldest
+     * first. The stream has to be read and closed within a transaction.
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query(HISTORY + "AND l.entry.id BETWEEN :firstEntryId AND :lastEntryId "
+            + "AND e.entryDate >= :from AND e.entryDate < :to ORDER BY l.entry.id ASC, l.position ASC")
+    Stream<TransactionSummary> streamStatement(@Param("accountId") Long accountId,
+                                               @Param("firstEntryId") long firstEntryId,
+                                               @Param("lastEntryId") long lastEntryId,
+                                               @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
 
 }
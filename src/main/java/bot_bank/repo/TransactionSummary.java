@@ -0,0 +1,23 @@
+package bot_bank.repo;
+
+import java.time.LocalDateTime;
+
+/**
+ * TransactionSummary is a projection of one transaction shown in the history of an account: the leg of the
+ * account with the date and details of its journal entry and the account number of the other account of the
+ * entry, if there is one. The id is the id of the Transaction the leg stands for.
+ */
+public interface TransactionSummary {
+
+    Long getId();
+
+    LocalDateTime getDate();
+
+    long getAmount();
+
+    String getCurrency();
+
+    String getRecipientDetails();
+
+    String getCounterparty();
+}
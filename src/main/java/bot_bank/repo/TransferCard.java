@@ -0,0 +1,27 @@
+package bot_bank.repo;
+
+import java.time.LocalDate;
+
+/**
+ * TransferCard is a projection of a card and its account with the columns needed to validate and carry
+ * out a transfer. The sender and the recipient card are read together in one query, without the owners
+ * of the cards and their other cards that come along with the Card entity; only the id of the owner is read.
+ */
+public interface TransferCard {
+
+    String getCardNumber();
+
+    String getCvv();
+
+    LocalDate getExpirationDate();
+
+    boolean isBanned();
+
+    Long getUserId();
+
+    Long getAccountId();
+
+    String getCurrency();
+
+    long getCurrentBalance();
+}
@@ -1,13 +1,31 @@
 package bot_bank.repo;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import bot_bank.model.User;
 
+import java.util.List;
+
 public interface UserRepository extends JpaRepository<User, Long> {
 
     User findByTelegramId(Long telegramId);
 
     User findByNumber(String Number);
 
+    List<UserSummary> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    List<UserSummary> findByIdLessThanOrderByIdDesc(Long id, Pageable pageable);
+
+    /**
+     * Bans or unbans the user without writing any other column. Saving the user never writes the ban, so this
+     * is the only way to change it.
+     */
+    @Modifying
+    @Query(value = "UPDATE user SET is_banned = :banned WHERE telegram_id = :telegramId", nativeQuery = true)
+    int updateBanned(@Param("telegramId") Long telegramId, @Param("banned") boolean banned);
+
 }
 
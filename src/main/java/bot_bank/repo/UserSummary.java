@@ -0,0 +1,15 @@
+package bot_bank.repo;
+
+/**
+ * UserSummary is a projection of the user columns shown in the admin user listing.
+ */
+public interface UserSummary {
+
+    Long getId();
+
+    Long getTelegramId();
+
+    String getNumber();
+
+    String getEmail();
+}
@@ -0,0 +1,51 @@
+package bot_bank.retrievers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * FileRateProvider reads fixed currency rates from a local JSON file in the format of the fixer.io
+ * response, e.g. {"success": true, "rates": {"EUR": 1.0, "USD": 1.18, "UAH": 41.84}}. It lets the bot
+ * run without the network and gives load tests rates that do not change. The provider has no rates
+ * when rates.file.path is not set.
+ */
+
+@Component
+public class FileRateProvider implements RateProvider {
+
+    private static final Logger LOGGER = LogManager.getLogger(FileRateProvider.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String path;
+
+    public FileRateProvider(@Value("${rates.file.path:}") String path) {
+        this.path = path;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public Map<String, Double> fetchRates() {
+        if (path == null || path.isBlank()) {
+            return null;
+        }
+        try {
+            RateResponse response = objectMapper.readValue(Files.readAllBytes(Path.of(path)), RateResponse.class);
+            return response.isSuccess() ? response.getRates() : null;
+        } catch (IOException e) {
+            LOGGER.error("Failed to read currency rates from {}", path, e);
+            return null;
+        }
+    }
+}
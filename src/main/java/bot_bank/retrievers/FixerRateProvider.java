@@ -0,0 +1,45 @@
+package bot_bank.retrievers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Map;
+
+/**
+ * FixerRateProvider retrieves the latest currency rates from the fixer.io API. It sends a GET request
+ * to the API through the shared rate client and returns the rates of a successful response, quoted
+ * against EUR.
+ */
+
+@Component
+public class FixerRateProvider implements RateProvider {
+
+    private static final Logger LOGGER = LogManager.getLogger(FixerRateProvider.class);
+
+    private final RestTemplate restTemplate;
+    private final String url;
+
+    public FixerRateProvider(RestTemplate rateRestTemplate,
+                             @Value("${rates.fixer.url:http://data.fixer.io/api/latest?access_key=1a0c4a508ca7a31399eea86626f6d148}") String url) {
+        this.restTemplate = rateRestTemplate;
+        this.url = url;
+    }
+
+    @Override
+    public String getName() {
+        return "fixer";
+    }
+
+    @Override
+    public Map<String, Double> fetchRates() {
+        RateResponse response = restTemplate.getForObject(url, RateResponse.class);
+        if (response != null && response.isSuccess()) {
+            return response.getRates();
+        }
+        LOGGER.warn("Rate provider fixer did not return rates");
+        return null;
+    }
+}
@@ -0,0 +1,22 @@
+package bot_bank.retrievers;
+
+import java.util.Map;
+
+/**
+ * RateProvider is a source of currency rates for RateRetriever. The rates are keyed by the currency
+ * code and quoted against a common base currency. Providers are asked in the order configured by
+ * rates.providers until one of them returns rates.
+ */
+public interface RateProvider {
+
+    /**
+     * The name the provider is referred to by in rates.providers.
+     */
+    String getName();
+
+    /**
+     * Returns the current rates, or null if the provider has no rates to give. A provider may also
+     * throw a runtime exception when it cannot be reached; the next provider is asked then.
+     */
+    Map<String, Double> fetchRates();
+}
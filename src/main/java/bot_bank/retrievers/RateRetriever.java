@@ -1,35 +1,195 @@
 package bot_bank.retrievers;
 
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import org.springframework.web.client.RestTemplate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * RateRetriever is a component responsible for retrieving currency rates from an external
- * API. It uses a RestTemplate to send a GET request to the API and returns the rates in a map.
+ * RateRetriever is a component responsible for retrieving currency rates from the configured
+ * RateProvider chain. The providers are asked in the order of rates.providers, and the first one
+ * that returns rates wins. The rates are saved to the RateSnapshotStore and loaded from it on startup,
+ * so the last known rates are available even when no provider can be reached.
+ * The rates are kept in memory and refreshed in the background, so callers get the snapshot without
+ * waiting on the providers. A snapshot older than the TTL is still returned while a fresh one is
+ * fetched, and only one fetch runs at a time however many callers ask for the rates. Only the very
+ * first call, when there is no snapshot at all, waits for the providers.
  */
 
 @Component
 public class RateRetriever {
 
+    private static final Logger LOGGER = LogManager.getLogger(RateRetriever.class);
 
-    private static final String URL =
-            "http://data.fixer.io/api/latest?access_key=1a0c4a508ca7a31399eea86626f6d148";
+    private final List<RateProvider> providers;
+    private final RateSnapshotStore store;
+    private final MeterRegistry meterRegistry;
+    private final long ttlNanos;
+    private final ExecutorService refresher;
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+    private volatile Snapshot snapshot;
 
+    public RateRetriever(List<RateProvider> providers,
+                         @Value("${rates.providers:fixer,file}") String[] order,
+                         RateSnapshotStore store,
+                         MeterRegistry meterRegistry,
+                         @Value("${rates.cache.ttl-seconds:600}") long ttlSeconds) {
+        this.providers = new ArrayList<>();
+        for (String name : order) {
+            providers.stream()
+                    .filter(provider -> provider.getName().equals(name.trim()))
+                    .findFirst()
+                    .ifPresentOrElse(this.providers::add,
+                            () -> LOGGER.warn("Unknown rate provider {}", name));
+        }
+        this.store = store;
+        this.meterRegistry = meterRegistry;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<String, Double> saved = store.load();
+        if (saved != null) {
+            // The saved rates are served right away but count as expired, so the first call refreshes them.
+            snapshot = new Snapshot(Map.copyOf(saved), System.nanoTime() - ttlNanos - 1);
+            LOGGER.info("Loaded the last known currency rates");
+        }
+    }
 
     public Map<String, Double> getRates() {
-        RestTemplate restTemplate = new RestTemplate();
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = refresh().join();
+            return current != null ? current.rates : null;
+        }
+        if (System.nanoTime() - current.fetchedAt > ttlNanos) {
+            refresh();
+        }
+        return current.rates;
+    }
+
+    /**
+     * Fetches the rates in the background. A caller arriving while a fetch is running gets the running
+     * fetch instead of starting a new one. The returned future completes with the current snapshot,
+     * which is the previous one when the fetch failed.
+     */
+    public CompletableFuture<Snapshot> refresh() {
+        CompletableFuture<Snapshot> running = inFlight.get();
+        if (running != null) {
+            return running;
+        }
+        CompletableFuture<Snapshot> result = new CompletableFuture<>();
+        if (!inFlight.compareAndSet(null, result)) {
+            return inFlight.get() != null ? inFlight.get() : CompletableFuture.completedFuture(snapshot);
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    Map<String, Double> rates = fetchRates();
+                    if (rates != null) {
+                        snapshot = new Snapshot(Map.copyOf(rates), System.nanoTime());
+                        LOGGER.info("Currency rates refreshed");
+                    } else {
+                        LOGGER.warn("Currency rates could not be refreshed, keeping the previous rates");
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.error("Failed to refresh currency rates", e);
+                } finally {
+                    inFlight.set(null);
+                    result.complete(snapshot);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.set(null);
+            result.complete(snapshot);
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${rates.cache.refresh-interval-ms:300000}")
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * Stops the refresher and waits for a running fetch to finish, so no snapshot is saved after shutdown.
+     */
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
         try {
-            RateResponse response = restTemplate.getForObject(URL, RateResponse.class);
-            if (response != null && response.isSuccess()) {
-                return response.getRates();
+            if (!refresher.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Currency rate refresh did not finish on shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Asks the providers in order and returns the rates of the first one that has them, saving them
+     * as the last known rates, or null if none of the providers has rates.
+     */
+    protected Map<String, Double> fetchRates() {
+        for (RateProvider provider : providers) {
+            Map<String, Double> rates;
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                rates = provider.fetchRates();
+            } catch (RuntimeException e) {
+                sample.stop(fetchTimer(provider, "error"));
+                LOGGER.error("Rate provider {} failed", provider.getName(), e);
+                continue;
+            }
+            boolean found = rates != null && !rates.isEmpty();
+            sample.stop(fetchTimer(provider, found ? "success" : "empty"));
+            if (found) {
+                LOGGER.debug("Currency rates fetched from {}", provider.getName());
+                store.save(rates);
+                return rates;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
         return null;
     }
 
+    private Timer fetchTimer(RateProvider provider, String outcome) {
+        return Timer.builder("rates.provider.fetch")
+                .tag("provider", provider.getName())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * The rates fetched at one moment, keyed by the currency code.
+     */
+    public static final class Snapshot {
+        private final Map<String, Double> rates;
+        private final long fetchedAt;
+
+        private Snapshot(Map<String, Double> rates, long fetchedAt) {
+            this.rates = rates;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public Map<String, Double> getRates() {
+            return rates;
+        }
+    }
 }
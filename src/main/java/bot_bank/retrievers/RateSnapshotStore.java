@@ -0,0 +1,64 @@
+package bot_bank.retrievers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * RateSnapshotStore keeps the last rates fetched from a provider in a local file, in the same format
+ * FileRateProvider reads. The file is loaded when the bot starts, so rates are available before the
+ * first provider answers or when none of them does. The file is replaced atomically, so a crash while
+ * saving never leaves a half-written snapshot behind.
+ */
+
+@Component
+public class RateSnapshotStore {
+
+    private static final Logger LOGGER = LogManager.getLogger(RateSnapshotStore.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String path;
+
+    public RateSnapshotStore(@Value("${rates.snapshot.path:rates-snapshot.json}") String path) {
+        this.path = path;
+    }
+
+    public Map<String, Double> load() {
+        if (path == null || path.isBlank() || !Files.exists(Path.of(path))) {
+            return null;
+        }
+        try {
+            RateResponse response = objectMapper.readValue(Files.readAllBytes(Path.of(path)), RateResponse.class);
+            return response.isSuccess() ? response.getRates() : null;
+        } catch (IOException e) {
+            LOGGER.error("Failed to load the rate snapshot from {}", path, e);
+            return null;
+        }
+    }
+
+    public void save(Map<String, Double> rates) {
+        if (path == null || path.isBlank()) {
+            return;
+        }
+        try {
+            Path target = Path.of(path).toAbsolutePath();
+            Path temp = Files.createTempFile(target.getParent(), "rates", ".tmp");
+            try {
+                objectMapper.writeValue(temp.toFile(), Map.of("success", true, "rates", rates));
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to save the rate snapshot to {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package bot_bank.service;
+
+import bot_bank.bot.BotContext;
+import bot_bank.model.Card;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * AccountChoice finds the account a command of a user is about. The account id is the part of the callback
+ * data after the command, e.g. "/history:12"; without it the only card of the user is taken, and a user with
+ * several cards gets a button per card to choose from. Only the accounts of the user's own cards can be chosen.
+ */
+
+final class AccountChoice {
+
+    private static final Logger LOGGER = LogManager.getLogger(AccountChoice.class);
+
+    private AccountChoice() {
+    }
+
+    /**
+     * Returns the card of the chosen account, or null when no account is chosen yet or the chosen one is not
+     * an account of the user, in which case the reply has already been sent.
+     */
+    static Card choose(BotContext context, String command, CardService cardService, MessageService messageService) {
+        long chatId = context.getUser().getTelegramId();
+        List<Card> cards = cardService.getCardsByUserId(context.getUser().getId());
+        String[] parts = context.getInput().split(":");
+
+        if (parts.length > 1) {
+            Card card = cards.stream().filter(c -> parts[1].equals(String.valueOf(c.getAccount().getId())))
+                    .findFirst().orElse(null);
+            if (card == null) {
+                LOGGER.warn("Account {} is not an account of user {}", parts[1], chatId);
+                messageService.sendMessage(chatId, "Account not found.");
+            }
+            return card;
+        }
+        if (cards.size() == 1) {
+            return cards.get(0);
+        }
+        if (cards.isEmpty()) {
+            messageService.sendMessage(chatId, "No cards now");
+        } else {
+            sendChoice(context, command, cards);
+        }
+        return null;
+    }
+
+    private static void sendChoice(BotContext context, String command, List<Card> cards) {
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(cards.stream().map(card -> {
+            InlineKeyboardButton button = new InlineKeyboardButton();
+            button.setText(card.getCardNumber());
+            button.setCallbackData(command + ":" + card.getAccount().getId());
+            return List.of(button);
+        }).collect(Collectors.toList()));
+
+        SendMessage message = new SendMessage();
+        message.setChatId(Long.toString(context.getUser().getTelegramId()));
+        message.setText("Choose a card:");
+        message.setReplyMarkup(markup);
+        context.getBot().executeAsync(message);
+    }
+}
@@ -3,9 +3,11 @@ package bot_bank.service;
 
 import bot_bank.model.Account;
 import bot_bank.repo.AccountRepository;
+import bot_bank.repo.AccountSummary;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -75,6 +77,16 @@ public class AccountService {
     }
 
 
+    @Transactional(readOnly = true)
+    public List<AccountSummary> findAccountsAfter(long afterId, int limit) {
+        return accountRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit));
+    }
+
+    @Transactional(readOnly = true)
+    public List<AccountSummary> findAccountsBefore(long beforeId, int limit) {
+        return accountRepository.findByIdLessThanOrderByIdDesc(beforeId, PageRequest.of(0, limit));
+    }
+
     @Transactional(readOnly = true)
     public List<Account> findAllAccounts() {
         LOGGER.info("Finding all accounts");
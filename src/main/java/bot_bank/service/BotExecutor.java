@@ -1,13 +1,32 @@
 package bot_bank.service;
 
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * BotExecutor provides an interface for executing Telegram send message requests.
  * Implementations of this interface should handle the process of sending messages via the Telegram API.
+ * The asynchronous variant lets update handlers queue their replies and move on without waiting for
+ * the round trip to Telegram.
  */
 
 public interface BotExecutor {
     void execute(SendMessage message) throws TelegramApiException;
+
+    /**
+     * Queues the message for sending and returns immediately. Failures are logged by the implementation.
+     *
+     * @return a future completed when the message has been sent
+     */
+    CompletableFuture<Void> executeAsync(SendMessage message);
+
+    /**
+     * Queues the document for sending after the messages queued before it and returns immediately.
+     *
+     * @return a future completed when the document has been sent
+     */
+    CompletableFuture<Void> sendDocumentAsync(SendDocument document);
 }
@@ -10,9 +10,6 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-
-import java.math.BigDecimal;
 
 /**
  * CardAccountService provides methods for creating and managing credit and debit card accounts.
@@ -31,7 +28,7 @@ public class CardAccountService {
 
 
 
-    public void createCreditCardAndAccount(User user, BigDecimal initialBalance, String currency, BotContext context) {
+    public void createCreditCardAndAccount(User user, long initialBalance, String currency, BotContext context) {
         LOGGER.info("Creating credit card and account for user: {}, initial balance: {}, currency: {}", user.getId(), initialBalance, currency);
 
         Account account = Account.builder()
@@ -54,6 +51,7 @@ public class CardAccountService {
                 .build();
 
         cardService.addCard(card);
+        attachCard(user, card);
         sendMessage(context, "You created a credit card. You can see more info in menu (my cards).");
     }
 
@@ -65,7 +63,7 @@ public class CardAccountService {
         Account account = Account.builder()
                 .accountNumber(accountService.generateAccountNumber())
                 .user(user)
-                .currentBalance(BigDecimal.ZERO)
+                .currentBalance(0)
                 .currency(currency)
                 .build();
 
@@ -81,19 +79,26 @@ public class CardAccountService {
                 .build();
 
         cardService.addCard(card);
+        attachCard(user, card);
         sendMessage(context, "You created a debit card. You can see more info in menu (my cards).");
     }
 
 
+    /**
+     * Adds the new card to the user's card list, so that saving the cached user afterwards does not
+     * merge a stale list and drop the card as an orphan.
+     */
+    private static void attachCard(User user, Card card) {
+        if (user.getCards() != null) {
+            user.getCards().add(card);
+        }
+    }
+
     private static void sendMessage(BotContext context, String text) {
         SendMessage message = new SendMessage();
         message.setChatId(Long.toString(context.getUser().getTelegramId()));
         message.setText(text);
 
-        try {
-            context.getBot().execute(message);
-        } catch (TelegramApiException e) {
-            LOGGER.error("Failed to send message to chat ID: {}", context.getUser().getTelegramId(), e);
-        }
+        context.getBot().executeAsync(message);
     }
 }
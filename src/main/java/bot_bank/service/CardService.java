@@ -2,17 +2,22 @@ package bot_bank.service;
 
 import bot_bank.model.Card;
 import bot_bank.model.CardType;
+import bot_bank.model.Money;
 import bot_bank.repo.CardRepository;
+import bot_bank.repo.CardSummary;
+import bot_bank.repo.TransferCard;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
@@ -49,6 +54,26 @@ public class CardService {
         return cardRepository.findByCardNumber(cardNumber);
     }
 
+    /**
+     * Finds the sender and the recipient card of a transfer with their accounts in one query. Either card
+     * is missing from the result if there is no card with its number.
+     */
+    @Transactional(readOnly = true)
+    public List<TransferCard> findTransferCards(String senderCardNumber, String recipientCardNumber) {
+        LOGGER.info("Finding transfer cards: {} -> {}", senderCardNumber, recipientCardNumber);
+        return cardRepository.findTransferCards(Arrays.asList(senderCardNumber, recipientCardNumber));
+    }
+
+    /**
+     * Finds the cards with the given numbers with their accounts in one query, e.g. all the cards of a window
+     * of a bulk payout. The numbers without a card are missing from the result.
+     */
+    @Transactional(readOnly = true)
+    public List<TransferCard> findTransferCards(Collection<String> cardNumbers) {
+        LOGGER.info("Finding {} transfer cards", cardNumbers.size());
+        return cardRepository.findTransferCards(cardNumbers);
+    }
+
     @Transactional(readOnly = true)
     public Optional<Card> findById(Long id) {
         LOGGER.info("Finding card by id: {}", id);
@@ -160,14 +185,13 @@ public class CardService {
                     .append("\nCVV: ").append(card.getCvv())
                     .append("\nCard Type: ").append(card.getCardType().toString().toLowerCase());
 
-            BigDecimal currentBalance = card.getAccount().getCurrentBalance();
-            response.append("\nBalance: ").append(currentBalance);
+            long currentBalance = card.getAccount().getCurrentBalance();
+            response.append("\nBalance: ").append(Money.format(currentBalance));
 
-            if (card.getCardType() == CardType.CREDIT) {
-                BigDecimal creditBalance = card.getAccount().getCreditBalance();
-                BigDecimal debt = creditBalance.subtract(currentBalance);
-                if (debt.compareTo(BigDecimal.ZERO) > 0) {
-                    response.append(" (Debt: ").append(debt).append(" UAH)");
+            if (card.getCardType() == CardType.CREDIT && card.getAccount().getCreditBalance() != null) {
+                long debt = card.getAccount().getCreditBalance() - currentBalance;
+                if (debt > 0) {
+                    response.append(" (Debt: ").append(Money.format(debt)).append(" UAH)");
                 }
             }
 
@@ -177,6 +201,16 @@ public class CardService {
         return response.toString();
     }
 
+    @Transactional(readOnly = true)
+    public List<CardSummary> findCardsAfter(long afterId, int limit) {
+        return cardRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit));
+    }
+
+    @Transactional(readOnly = true)
+    public List<CardSummary> findCardsBefore(long beforeId, int limit) {
+        return cardRepository.findByIdLessThanOrderByIdDesc(beforeId, PageRequest.of(0, limit));
+    }
+
     @Transactional(readOnly = true)
     public List<Card> findAllCards() {
         LOGGER.info("Finding all cards");
@@ -1,16 +1,12 @@
 package bot_bank.service;
 
 import bot_bank.bot.BotContext;
-import bot_bank.model.Card;
+import bot_bank.repo.CardSummary;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-
-import static bot_bank.service.UserListingService.sendMessage;
-
 
 /**
  * CardServiceFacade provides a facade for managing card-related operations, delegating the actual
@@ -22,29 +18,20 @@ public class CardServiceFacade {
 
     private static final Logger LOGGER = LogManager.getLogger(CardServiceFacade.class);
 
+    private static final KeysetListing<CardSummary> LISTING = new KeysetListing<>("/listcards",
+            "All cards list:", "No cards found.", CardSummary::getId,
+            card -> card.getCardNumber() + " " + card.getExpirationDate() + " " + card.getCardType());
+
     private final CardService cardService;
 
     /**
-     * Lists all cards and sends the card details to the user via the Telegram bot.
+     * Lists one page of cards, selected by the callback data in the context input, and sends the card
+     * details to the user via the Telegram bot.
      *
      * @param context the bot context containing user and bot information
      */
     public void listCards(BotContext context) {
-        StringBuffer sb = new StringBuffer("All cards list:\r\n");
-        List<Card> cards = cardService.findAllCards();
-
-        if (cards.isEmpty()) {
-            sb.append("No cards found.");
-        } else {
-            cards.forEach(card -> sb.append(card.getCardNumber())
-                    .append(" ")
-                    .append(card.getExpirationDate())
-                    .append(" ")
-                    .append(card.getCardType())
-                    .append("\r\n"));
-        }
-
-        LOGGER.info("Listing all cards");
-        sendMessage(context, sb.toString());
+        LOGGER.info("Listing cards: {}", context.getInput());
+        LISTING.show(context, cardService::findCardsAfter, cardService::findCardsBefore);
     }
 }
@@ -0,0 +1,99 @@
+package bot_bank.service;
+
+import bot_bank.bot.BotContext;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CommandRegistry maps the callback data of inline keyboard buttons to the handlers of the commands.
+ * Every command declares what it changes about the user, so the caller knows whether the user has
+ * to be saved afterwards, and every command has its own timer counting calls and measuring latency.
+ * Commands can be registered by any bean, which makes adding a command independent of CommandService.
+ */
+
+@Component
+public class CommandRegistry {
+
+    private static final Logger LOGGER = LogManager.getLogger(CommandRegistry.class);
+
+    private final Map<String, Command> commands = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public CommandRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void register(String name, Mutation mutation, CommandHandler handler) {
+        Timer timer = Timer.builder("bot.commands")
+                .tag("command", name)
+                .register(meterRegistry);
+        if (commands.put(name, new Command(name, mutation, handler, timer)) != null) {
+            LOGGER.warn("Command {} was registered again, replacing the previous handler", name);
+        }
+    }
+
+    /**
+     * Finds the command for the given callback data. Callback data may carry arguments after a colon,
+     * e.g. "/listusers:next:40", in which case the command is looked up by the part before the colon.
+     */
+    public Command find(String callbackData) {
+        if (callbackData == null) {
+            return null;
+        }
+        Command command = commands.get(callbackData);
+        int separator = callbackData.indexOf(':');
+        if (command == null && separator > 0) {
+            command = commands.get(callbackData.substring(0, separator));
+        }
+        return command;
+    }
+
+    /**
+     * What a command changes about the user that pressed the button.
+     */
+    public enum Mutation {
+        /** The command only reads data, the user does not need to be saved. */
+        NONE,
+        /** The command only moves the user to another state. */
+        STATE,
+        /** The command changes other user data, the whole user is saved. */
+        USER
+    }
+
+    @FunctionalInterface
+    public interface CommandHandler {
+        void handle(BotContext context);
+    }
+
+    public static final class Command {
+        private final String name;
+        private final Mutation mutation;
+        private final CommandHandler handler;
+        private final Timer timer;
+
+        private Command(String name, Mutation mutation, CommandHandler handler, Timer timer) {
+            this.name = name;
+            this.mutation = mutation;
+            this.handler = handler;
+            this.timer = timer;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Mutation getMutation() {
+            return mutation;
+        }
+
+        public void execute(BotContext context) {
+            timer.record(() -> handler.handle(context));
+        }
+    }
+}
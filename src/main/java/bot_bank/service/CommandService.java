@@ -3,25 +3,30 @@ package bot_bank.service;
 import bot_bank.bot.BotContext;
 import bot_bank.bot.BotState;
 import bot_bank.model.Card;
+import bot_bank.model.Money;
 import bot_bank.model.User;
 import bot_bank.model.TransactionDetail;
+import bot_bank.service.CommandRegistry.Command;
+import bot_bank.service.CommandRegistry.Mutation;
 
-import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 /**
  * CommandService handles the processing of user commands received from the bot.
- * It updates the user's state and interacts with various services to perform actions
- * such as adding cards, banning users, listing accounts, and sending messages.
+ * It registers the built-in commands in the CommandRegistry, runs the handler of the received
+ * command and saves the user only as far as the command changed it: read-only commands skip
+ * the save, commands that only move the user to another state write the state behind.
  */
 
 @Service
-@RequiredArgsConstructor
 public class CommandService {
 
+    private static final Logger LOGGER = LogManager.getLogger(CommandService.class);
+
     private final UserService userService;
     private final CardService cardService;
     private final CardAccountService cardAccountService;
@@ -31,87 +36,106 @@ public class CommandService {
     private final MessageService messageService;
     private final CardServiceFacade cardServiceFacade;
     private final UserListingService userListingService;
+    private final HistoryService historyService;
+    private final StatementService statementService;
+    private final CommandRegistry commandRegistry;
 
-
+    public CommandService(UserService userService, CardService cardService, CardAccountService cardAccountService,
+                          CurrencyRateService rateService, TransactionService transactionService,
+                          AccountListingService accountListingService, MessageService messageService,
+                          CardServiceFacade cardServiceFacade, UserListingService userListingService,
+                          HistoryService historyService, StatementService statementService,
+                          CommandRegistry commandRegistry) {
+        this.userService = userService;
+        this.cardService = cardService;
+        this.cardAccountService = cardAccountService;
+        this.rateService = rateService;
+        this.transactionService = transactionService;
+        this.accountListingService = accountListingService;
+        this.messageService = messageService;
+        this.cardServiceFacade = cardServiceFacade;
+        this.userListingService = userListingService;
+        this.historyService = historyService;
+        this.statementService = statementService;
+        this.commandRegistry = commandRegistry;
+        registerCommands();
+    }
 
     public void handleCommand(String callbackData, BotContext context) {
         User user = context.getUser();
         long chatId = context.getUser().getTelegramId();
 
-        switch (callbackData) {
-            case "/update":
-                user.setStateId(BotState.ENTER_PASSWORD_FOR_UPDATE.ordinal());
-                messageService.sendMessage(chatId, "You selected to update.");
-                break;
-            case "/addcard":
-                user.setStateId(BotState.ADD_CARD.ordinal());
-                messageService.sendMessage(chatId, "You selected to add a card.");
-                break;
-            case "/listusers":
-                userListingService.listUsers(context);
-                break;
-            case "/banuser":
-                user.setStateId(BotState.BAN_USER.ordinal());
-                messageService.sendMessage(chatId, "You selected to ban user.");
-                break;
-            case "/unbanuser":
-                user.setStateId(BotState.UNBAN_USER.ordinal());
-                messageService.sendMessage(chatId, "You selected to unban user.");
-                break;
-            case "credit":
-                context.getCardAccountService().createCreditCardAndAccount(user, BigDecimal.valueOf(5000), "UAH", context);
-                user.setStateId(BotState.MENU.ordinal());
-                break;
-            case "debit":
-                messageService.sendMessage(chatId, "You selected to add a debit card.");
-                user.setStateId(BotState.CHOSE_CURRENCY.ordinal());
-                break;
-            case "UAH", "USD", "EUR":
-                context.getCardAccountService().createDebitCardAndAccount(user, callbackData, context);
-                user.setStateId(BotState.MENU.ordinal());
-                break;
-            case "/mycards":
-                List<Card> userCards = cardService.getCardsByUserId(user.getId());
-                if (userCards.isEmpty()) {
-                    messageService.sendMessage(chatId, "No cards now");
-                } else {
-                    messageService.sendMessage(chatId, cardService.formatCardDetails(userCards));
-                }
-                break;
-
-            case "/rates":
-                messageService.sendMessage(chatId, rateService.getFormattedRates());
-                break;
-            case "/send":
-                TransactionDetail transactionDetail = new TransactionDetail();
-                user.setTransactionDetail(transactionDetail);
-                user.setStateId(BotState.ENTER_CARD_NUMBER_FOR_TRANSACTION.ordinal());
-                break;
-            case "/hi":
-                user.setStateId(BotState.ENTER_PHONE.ordinal());
-                break;
-            case "/listcards":
-                cardServiceFacade.listCards(context);
-                break;
-            case "/listaccounts":
-                accountListingService.listAccounts(context);
-                break;
-            case "/bancard":
-                user.setStateId(BotState.BAN_CARD.ordinal());
-                messageService.sendMessage(chatId, "You selected to ban card.");
-                break;
-            case "/unbancard":
-                user.setStateId(BotState.UNBAN_CARD.ordinal());
-                messageService.sendMessage(chatId, "You selected to unban card.");
-                break;
-
-            default:
-                messageService.sendMessage(chatId, "Invalid option.");
-                break;
+        Command command = commandRegistry.find(callbackData);
+        if (command == null) {
+            LOGGER.warn("Unknown command: {} from chat ID: {}", callbackData, chatId);
+            messageService.sendMessage(chatId, "Invalid option.");
+        } else {
+            command.execute(context);
+            if (command.getMutation() == Mutation.USER) {
+                userService.updateUser(user);
+            } else if (command.getMutation() == Mutation.STATE) {
+                userService.updateState(user);
+            }
         }
 
-        userService.updateUser(user);
         BotState state = BotState.byId(user.getStateId());
         state.enter(context);
     }
+
+    private void registerCommands() {
+        registerStateCommand("/update", BotState.ENTER_PASSWORD_FOR_UPDATE, "You selected to update.");
+        registerStateCommand("/addcard", BotState.ADD_CARD, "You selected to add a card.");
+        registerStateCommand("/banuser", BotState.BAN_USER, "You selected to ban user.");
+        registerStateCommand("/unbanuser", BotState.UNBAN_USER, "You selected to unban user.");
+        registerStateCommand("debit", BotState.CHOSE_CURRENCY, "You selected to add a debit card.");
+        registerStateCommand("/bancard", BotState.BAN_CARD, "You selected to ban card.");
+        registerStateCommand("/unbancard", BotState.UNBAN_CARD, "You selected to unban card.");
+        registerStateCommand("/payout", BotState.PAYOUT, "You selected to make a payout.");
+        registerStateCommand("/accountstatement", BotState.ACCOUNT_STATEMENT, "You selected an account statement.");
+        registerStateCommand("/hi", BotState.ENTER_PHONE, null);
+
+        commandRegistry.register("credit", Mutation.USER, context -> {
+            User user = context.getUser();
+            context.getCardAccountService().createCreditCardAndAccount(user, Money.minorUnitsOf(5000), "UAH", context);
+            user.setStateId(BotState.MENU.ordinal());
+        });
+        for (String currency : List.of("UAH", "USD", "EUR")) {
+            commandRegistry.register(currency, Mutation.USER, context -> {
+                User user = context.getUser();
+                context.getCardAccountService().createDebitCardAndAccount(user, currency, context);
+                user.setStateId(BotState.MENU.ordinal());
+            });
+        }
+        commandRegistry.register("/send", Mutation.USER, context -> {
+            User user = context.getUser();
+            user.setTransactionDetail(new TransactionDetail());
+            user.setStateId(BotState.ENTER_CARD_NUMBER_FOR_TRANSACTION.ordinal());
+        });
+
+        commandRegistry.register("/mycards", Mutation.NONE, context -> {
+            User user = context.getUser();
+            List<Card> userCards = cardService.getCardsByUserId(user.getId());
+            if (userCards.isEmpty()) {
+                messageService.sendMessage(user.getTelegramId(), "No cards now");
+            } else {
+                messageService.sendMessage(user.getTelegramId(), cardService.formatCardDetails(userCards));
+            }
+        });
+        commandRegistry.register("/history", Mutation.NONE, historyService::showHistory);
+        commandRegistry.register("/statement", Mutation.NONE, statementService::showStatement);
+        commandRegistry.register("/rates", Mutation.NONE, context ->
+                messageService.sendMessage(context.getUser().getTelegramId(), rateService.getFormattedRates()));
+        commandRegistry.register("/listusers", Mutation.NONE, userListingService::listUsers);
+        commandRegistry.register("/listcards", Mutation.NONE, cardServiceFacade::listCards);
+        commandRegistry.register("/listaccounts", Mutation.NONE, accountListingService::listAccounts);
+    }
+
+    private void registerStateCommand(String name, BotState state, String reply) {
+        commandRegistry.register(name, Mutation.STATE, context -> {
+            context.getUser().setStateId(state.ordinal());
+            if (reply != null) {
+                messageService.sendMessage(context.getUser().getTelegramId(), reply);
+            }
+        });
+    }
 }
@@ -1,31 +1,45 @@
 package bot_bank.service;
 
+import bot_bank.ledger.ShardedLedger;
 import bot_bank.model.Account;
 import bot_bank.model.Credit;
+import bot_bank.model.Money;
 import bot_bank.repo.AccountRepository;
 import bot_bank.repo.CreditRepository;
-import lombok.AllArgsConstructor;
+import bot_bank.service.TransferEngine.Outcome;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Optional;
 
 /**
- * CreditProcessingService manages the credit processing operations.
+ * CreditProcessingService manages the credit processing operations. The interest is charged through the
+ * ShardedLedger when it is enabled, since it then owns the balances, and otherwise with a single relative
+ * UPDATE of the balance. Only the date of the last check is written to the account besides; the account is
+ * never saved with the balance read here, which would undo the transfers committed in the meantime.
  */
 @Service
-@AllArgsConstructor
 public class CreditProcessingService {
 
     private static final Logger LOGGER = LogManager.getLogger(CreditProcessingService.class);
+    private static final long INTEREST_PERCENT = 5;
 
     private final CreditRepository creditRepository;
     private final AccountRepository accountRepository;
+    private final ShardedLedger ledger;
+
+    public CreditProcessingService(CreditRepository creditRepository,
+                                   AccountRepository accountRepository,
+                                   Optional<ShardedLedger> ledger) {
+        this.creditRepository = creditRepository;
+        this.accountRepository = accountRepository;
+        this.ledger = ledger.orElse(null);
+    }
 
     @Transactional
     public void checkAndApplyCredits() {
@@ -44,17 +58,29 @@ public class CreditProcessingService {
             LOGGER.debug("Months between last check and now: {}", monthsBetween);
 
             if (monthsBetween >= 1) {
-                BigDecimal debt = account.getCreditBalance().subtract(account.getCurrentBalance());
+                long debt = account.getCreditBalance() - account.getCurrentBalance();
                 LOGGER.debug("Debt calculated: {}", debt);
 
-                if (debt.compareTo(BigDecimal.ZERO) > 0) {
-                    BigDecimal interest = debt.multiply(BigDecimal.valueOf(0.05));
-                    account.setCurrentBalance(account.getCurrentBalance().subtract(interest));
+                if (debt > 0) {
+                    long interest = Money.multiply(debt, INTEREST_PERCENT, 100);
+                    if (ledger != null) {
+                        Outcome outcome = ledger.charge(account.getId(), Money.of(interest, account.getCurrency()),
+                                "Credit interest").join();
+                        if (outcome != Outcome.COMPLETED) {
+                            LOGGER.error("Interest could not be charged to account {}: {}",
+                                    account.getAccountNumber(), outcome);
+                            continue;
+                        }
+                    } else if (!accountRepository.charge(account.getId(), interest)) {
+                        LOGGER.error("Interest could not be charged to account {}: account not found",
+                                account.getAccountNumber());
+                        continue;
+                    }
                     LOGGER.debug("Interest applied: {}", interest);
 
                     Credit credit = Credit.builder()
-                            .interestRate(interest.doubleValue())
-                            .amount(debt.add(interest).doubleValue())
+                            .interestRate(Money.toBigDecimal(interest).doubleValue())
+                            .amount(Money.toBigDecimal(debt + interest).doubleValue())
                             .startDate(account.getCreatedAt())
                             .endDate(currentDateTime.plusMonths(1))
                             .account(account)
@@ -64,9 +90,8 @@ public class CreditProcessingService {
                     LOGGER.info("Credit applied to account: {}", account.getAccountNumber());
                 }
 
-                account.setLastCheckedDate(currentDateTime);
                 LOGGER.debug("Setting last checked date for account: {}", account.getAccountNumber());
-                accountRepository.save(account);
+                accountRepository.updateLastCheckedDate(account.getId(), currentDateTime);
                 LOGGER.info("Account updated with last checked date: {}", account.getAccountNumber());
             }
         }
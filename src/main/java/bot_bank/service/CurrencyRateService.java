@@ -1,7 +1,6 @@
 package bot_bank.service;
 
 import bot_bank.retrievers.RateRetriever;
-import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
@@ -11,89 +10,62 @@ import java.util.Map;
 /**
  * CurrencyRateService provides methods to retrieve and calculate currency exchange rates.
  * It uses RateRetriever to get the latest rates and offers methods to get specific rates and
- * formatted rate information for different currencies.
+ * formatted rate information for different currencies. Both are served from a RateMatrix that is
+ * built once for every new snapshot of the rates.
  */
 
 @Service
-@AllArgsConstructor
 public class CurrencyRateService {
 
     private static final Logger LOGGER = LogManager.getLogger(CurrencyRateService.class);
 
     private final RateRetriever rateRetriever;
+    private volatile RateMatrix matrix;
 
-    public Double getRate(String fromCurrency, String toCurrency) {
-        LOGGER.info("Getting rate from {} to {}", fromCurrency, toCurrency);
-        Map<String, Double> rates = rateRetriever.getRates();
-        if (rates == null || !rates.containsKey(fromCurrency) || !rates.containsKey(toCurrency)) {
-            LOGGER.warn("Rates not available for {} or {}", fromCurrency, toCurrency);
-            return null;
-        }
-
-
-        if (fromCurrency.equals(toCurrency)) {
-            return 1.0;
-        }
-
-        Double conversionRate = calculateConversionRate(fromCurrency, toCurrency, rates);
-        LOGGER.info("Conversion rate from {} to {}: {}", fromCurrency, toCurrency, conversionRate);
-        return conversionRate;
+    public CurrencyRateService(RateRetriever rateRetriever) {
+        this.rateRetriever = rateRetriever;
     }
 
-    private Double calculateConversionRate(String fromCurrency, String toCurrency, Map<String, Double> rates) {
-        Double usdToEur = rates.get("USD");
-        Double eurToUsd = 1.0 / usdToEur;
-        Double uahToEur = rates.get("UAH");
-        Double uahToUsd = uahToEur * eurToUsd;
-        Double usdToEurDirect = 1.0 / eurToUsd;
-        Double eurToUah = 1.0 / uahToEur;
-        Double usdToUah = 1.0 / uahToUsd;
-
-        if (fromCurrency.equals("USD") && toCurrency.equals("EUR")) {
-            return eurToUsd; // USD → EUR
-        } else if (fromCurrency.equals("EUR") && toCurrency.equals("USD")) {
-            return usdToEurDirect; // EUR → USD
-        } else if (fromCurrency.equals("USD") && toCurrency.equals("UAH")) {
-            return uahToUsd; // USD → UAH
-        } else if (fromCurrency.equals("UAH") && toCurrency.equals("USD")) {
-            return usdToUah; // UAH → USD
-        } else if (fromCurrency.equals("EUR") && toCurrency.equals("UAH")) {
-            return uahToEur; // EUR → UAH
-        } else if (fromCurrency.equals("UAH") && toCurrency.equals("EUR")) {
-            return eurToUah; // UAH → EUR
-        } else {
-            Double fromToUsd = 1.0 / rates.get(fromCurrency);
-            Double toFromUsd = rates.get(toCurrency) / rates.get("USD");
-            return fromToUsd / toFromUsd;
+    /**
+     * Returns the rate from one currency to the other, or NaN if the rate of either is not available.
+     */
+    public double getRate(String fromCurrency, String toCurrency) {
+        LOGGER.debug("Getting rate from {} to {}", fromCurrency, toCurrency);
+        RateMatrix matrix = currentMatrix();
+        int from = matrix != null ? matrix.indexOf(fromCurrency) : -1;
+        int to = matrix != null ? matrix.indexOf(toCurrency) : -1;
+        if (from < 0 || to < 0) {
+            LOGGER.warn("Rates not available for {} or {}", fromCurrency, toCurrency);
+            return Double.NaN;
         }
+        return matrix.rate(from, to);
     }
 
     public String getFormattedRates() {
         LOGGER.info("Getting formatted rates");
-        Map<String, Double> rates = rateRetriever.getRates();
-        if (rates != null) {
-            Double usdToEur = rates.get("USD");
-            Double eurToUsd = 1.0 / usdToEur;
-            Double uahToEur = rates.get("UAH");
-            Double uahToUsd = uahToEur * eurToUsd;
-            Double usdToEurDirect = 1.0 / eurToUsd;
-            Double eurToUah = 1.0 / uahToEur;
-            Double usdToUah = 1.0 / uahToUsd;
-
-            String formattedRates = """
-                    Exchange rates:
-                    EUR → USD: %.2f
-                    USD → EUR: %.2f
-                    UAH → EUR: %.2f
-                    UAH → USD: %.2f
-                    EUR → UAH: %.2f
-                    USD → UAH: %.2f
-                    """.formatted(eurToUsd, usdToEurDirect, uahToEur, uahToUsd, eurToUah, usdToUah);
-            LOGGER.info("Formatted rates: {}", formattedRates);
-            return formattedRates;
+        RateMatrix matrix = currentMatrix();
+        if (matrix != null) {
+            return matrix.getFormatted();
         } else {
             LOGGER.error("Rates are not available");
             return "Error.";
         }
     }
+
+    /**
+     * Returns the matrix of the current rate snapshot, building it only when the snapshot has changed.
+     */
+    private RateMatrix currentMatrix() {
+        Map<String, Double> rates = rateRetriever.getRates();
+        if (rates == null) {
+            return null;
+        }
+        RateMatrix current = matrix;
+        if (current == null || !current.isBuiltFrom(rates)) {
+            current = RateMatrix.of(rates);
+            matrix = current;
+            LOGGER.info("Rate matrix rebuilt: {}", current.getFormatted());
+        }
+        return current;
+    }
 }
@@ -0,0 +1,83 @@
+package bot_bank.service;
+
+import bot_bank.bot.BotContext;
+import bot_bank.model.Card;
+import bot_bank.model.Money;
+import bot_bank.model.Transaction;
+import bot_bank.repo.TransactionRepository;
+import bot_bank.repo.TransactionSummary;
+import lombok.RequiredArgsConstructor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * HistoryService shows the transaction history of the accounts of a user, newest first, one page at a time.
+ * A user with several cards first chooses the card; "/history:12" then shows the history of account 12, and
+ * the pages are addressed by the id of the neighbouring transaction like the other listings. The history
+ * continues from the date of that transaction, so every page is one range query on the journal legs of the
+ * account, however long its history is.
+ */
+
+@Service
+@RequiredArgsConstructor
+public class HistoryService {
+
+    private static final Logger LOGGER = LogManager.getLogger(HistoryService.class);
+
+    private static final String COMMAND = "/history";
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    /** A date after every transaction, which the first page starts from; the databases store no later date. */
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private final CardService cardService;
+    private final TransactionRepository transactionRepository;
+    private final MessageService messageService;
+
+    public void showHistory(BotContext context) {
+        LOGGER.info("Showing history: {}", context.getInput());
+        Card card = AccountChoice.choose(context, COMMAND, cardService, messageService);
+        if (card == null) {
+            return;
+        }
+
+        Long accountId = card.getAccount().getId();
+        new KeysetListing<TransactionSummary>(COMMAND + ":" + accountId, "History of card " + card.getCardNumber() + ":",
+                "No transactions yet.", TransactionSummary::getId, HistoryService::formatTransaction)
+                .show(context, (key, limit) -> findOlder(accountId, key, limit), (key, limit) -> findNewer(accountId, key, limit));
+    }
+
+    private List<TransactionSummary> findOlder(Long accountId, long key, int limit) {
+        long entryId = key / Transaction.MAX_LEGS;
+        int position = (int) (key % Transaction.MAX_LEGS);
+        LocalDateTime date = key > 0 ? transactionRepository.findLegDate(entryId, position).orElse(null) : null;
+        if (date == null) {
+            return transactionRepository.findHistoryBefore(accountId, LATEST, Long.MAX_VALUE, 0, PageRequest.of(0, limit));
+        }
+        return transactionRepository.findHistoryBefore(accountId, date, entryId, position, PageRequest.of(0, limit));
+    }
+
+    private List<TransactionSummary> findNewer(Long accountId, long key, int limit) {
+        long entryId = key / Transaction.MAX_LEGS;
+        int position = (int) (key % Transaction.MAX_LEGS);
+        return transactionRepository.findLegDate(entryId, position)
+                .map(date -> transactionRepository.findHistoryAfter(accountId, date, entryId, position,
+                        PageRequest.of(0, limit)))
+                .orElse(List.of());
+    }
+
+    private static String formatTransaction(TransactionSummary transaction) {
+        boolean outgoing = transaction.getAmount() < 0;
+        String other = transaction.getCounterparty() != null ? transaction.getCounterparty()
+                : outgoing ? transaction.getRecipientDetails() : null;
+        return transaction.getDate().format(DATE_FORMAT) + " " + (outgoing ? "" : "+")
+                + Money.of(transaction.getAmount(), transaction.getCurrency())
+                + (other != null ? (outgoing ? " to " : " from ") + other : "");
+    }
+}
@@ -0,0 +1,121 @@
+package bot_bank.service;
+
+import bot_bank.bot.BotContext;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * KeysetListing renders one page of an admin listing with inline buttons for the previous and the
+ * next page. A page is addressed by the id of the row next to it rather than by an offset, e.g.
+ * "/listusers:next:40" shows the rows after id 40 and "/listusers:prev:41" the rows before id 41,
+ * so every page is a single indexed range query of a fixed size, however large the table is. The command
+ * may carry arguments of its own, e.g. "/history:12" lists the history of account 12 and
+ * "/history:12:next:40" its next page; the page is always addressed by the last two parts.
+ *
+ * @param <T> the type of the listed rows
+ */
+
+final class KeysetListing<T> {
+
+    static final int PAGE_SIZE = 20;
+
+    private static final String NEXT = "next";
+    private static final String PREVIOUS = "prev";
+
+    private final String command;
+    private final String title;
+    private final String emptyText;
+    private final Function<T, Long> idOf;
+    private final Function<T, String> lineOf;
+
+    KeysetListing(String command, String title, String emptyText, Function<T, Long> idOf, Function<T, String> lineOf) {
+        this.command = command;
+        this.title = title;
+        this.emptyText = emptyText;
+        this.idOf = idOf;
+        this.lineOf = lineOf;
+    }
+
+    /**
+     * Sends the page requested by the callback data in the context input.
+     *
+     * @param after  loads up to the given number of rows that follow the row with the given id in the listing,
+     *               in the order of the listing, or the first rows for id 0; e.g. ids greater than it, ascending
+     * @param before loads up to the given number of rows that precede the row with the given id in the listing,
+     *               nearest first; e.g. ids less than it, descending
+     */
+    void show(BotContext context, PageLoader<T> after, PageLoader<T> before) {
+        String[] parts = context.getInput() != null ? context.getInput().split(":") : new String[0];
+        int page = parts.length - command.split(":").length;
+        long key = page == 2 ? parseKey(parts[parts.length - 1]) : 0;
+        boolean backwards = key > 0 && PREVIOUS.equals(parts[parts.length - 2]);
+
+        List<T> rows;
+        boolean hasPrevious;
+        boolean hasNext;
+        if (backwards) {
+            rows = new ArrayList<>(before.load(key, PAGE_SIZE + 1));
+            hasPrevious = rows.size() > PAGE_SIZE;
+            rows = new ArrayList<>(rows.subList(0, Math.min(rows.size(), PAGE_SIZE)));
+            Collections.reverse(rows);
+            hasNext = true;
+        } else {
+            rows = after.load(key, PAGE_SIZE + 1);
+            hasNext = rows.size() > PAGE_SIZE;
+            rows = rows.subList(0, Math.min(rows.size(), PAGE_SIZE));
+            hasPrevious = key > 0;
+        }
+
+        StringBuilder sb = new StringBuilder(title).append("\r\n");
+        if (rows.isEmpty()) {
+            sb.append(emptyText);
+        }
+        rows.forEach(row -> sb.append(lineOf.apply(row)).append("\r\n"));
+
+        SendMessage message = new SendMessage();
+        message.setChatId(Long.toString(context.getUser().getTelegramId()));
+        message.setText(sb.toString());
+        if (!rows.isEmpty() && (hasPrevious || hasNext)) {
+            message.setReplyMarkup(createPageKeyboard(rows, hasPrevious, hasNext));
+        }
+        context.getBot().executeAsync(message);
+    }
+
+    private InlineKeyboardMarkup createPageKeyboard(List<T> rows, boolean hasPrevious, boolean hasNext) {
+        List<InlineKeyboardButton> buttons = new ArrayList<>();
+        if (hasPrevious) {
+            InlineKeyboardButton previous = new InlineKeyboardButton();
+            previous.setText("« Previous");
+            previous.setCallbackData(command + ":" + PREVIOUS + ":" + idOf.apply(rows.get(0)));
+            buttons.add(previous);
+        }
+        if (hasNext) {
+            InlineKeyboardButton next = new InlineKeyboardButton();
+            next.setText("Next »");
+            next.setCallbackData(command + ":" + NEXT + ":" + idOf.apply(rows.get(rows.size() - 1)));
+            buttons.add(next);
+        }
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(List.of(buttons));
+        return markup;
+    }
+
+    private static long parseKey(String key) {
+        try {
+            return Long.parseLong(key);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @FunctionalInterface
+    interface PageLoader<T> {
+        List<T> load(long key, int limit);
+    }
+}
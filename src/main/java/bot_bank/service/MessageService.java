@@ -2,11 +2,11 @@ package bot_bank.service;
 
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 /**
  * MessageService provides methods for sending messages via the Telegram bot.
- * It uses the BotExecutor to execute SendMessage requests, handling any exceptions that occur.
+ * It queues SendMessage requests on the BotExecutor without waiting for them to be sent;
+ * failed sends are logged by the BotExecutor.
  */
 
 @Service
@@ -22,10 +22,6 @@ public class MessageService {
         SendMessage message = new SendMessage();
         message.setChatId(Long.toString(chatId));
         message.setText(text);
-        try {
-            botExecutor.execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
-        }
+        botExecutor.executeAsync(message);
     }
 }
@@ -0,0 +1,306 @@
+package bot_bank.service;
+
+import bot_bank.model.Money;
+import bot_bank.model.User;
+import bot_bank.repo.TransferCard;
+import bot_bank.service.TransferEngine.BatchTransfer;
+import bot_bank.service.TransferEngine.Outcome;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * PayoutService makes the bulk payouts of an admin. A payout is entered as lines of text: a line
+ * "from &lt;card number&gt;" chooses one of the admin's cards to pay from, and every other line is
+ * "&lt;recipient card number&gt; &lt;amount&gt;", the amount in the currency of the paying card. The lines are
+ * streamed through the payout in windows of a fixed size, so the cards of only one window are loaded at a
+ * time: the cards of a window are read in one query, its lines are validated and converted, grouped by the
+ * paying account and handed to the TransferEngine, which makes every group in one transaction.
+ * Every line gets a result, and the report ends with the totals and the throughput of the payout.
+ */
+
+@Service
+public class PayoutService {
+
+    private static final Logger LOGGER = LogManager.getLogger(PayoutService.class);
+
+    static final int MAX_MESSAGE_LENGTH = 4000;
+    private static final String FROM = "from ";
+
+    private final CardService cardService;
+    private final CurrencyRateService currencyRateService;
+    private final TransferEngine transferEngine;
+    private final MeterRegistry meterRegistry;
+    private final Timer payoutTime;
+    private final int windowSize;
+
+    public PayoutService(CardService cardService,
+                         CurrencyRateService currencyRateService,
+                         TransferEngine transferEngine,
+                         MeterRegistry meterRegistry,
+                         @Value("${payout.window-size:100}") int windowSize) {
+        this.cardService = cardService;
+        this.currencyRateService = currencyRateService;
+        this.transferEngine = transferEngine;
+        this.meterRegistry = meterRegistry;
+        this.payoutTime = Timer.builder("bank.payouts").register(meterRegistry);
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Makes the payout entered by the admin. The idempotency key of a line is the given key prefix and the
+     * number of the line, so the same payout sent again pays nothing twice.
+     *
+     * @param keyPrefix identifies the message with the payout, or null to make the payout without idempotency keys
+     * @return the report of the payout, split into messages that fit into a Telegram message
+     */
+    public Report payout(User admin, String text, String keyPrefix) {
+        long start = System.nanoTime();
+        Report report = new Report();
+        List<PayoutLine> window = new ArrayList<>(windowSize);
+        String senderCardNumber = null;
+        int lineNumber = 0;
+
+        Iterator<String> lines = text.lines().iterator();
+        while (lines.hasNext()) {
+            String line = lines.next().trim();
+            lineNumber++;
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.toLowerCase(Locale.ROOT).startsWith(FROM)) {
+                senderCardNumber = line.substring(FROM.length()).trim();
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (senderCardNumber == null) {
+                report.fail(lineNumber, line, "no \"from <card number>\" line before it");
+                continue;
+            }
+            if (parts.length != 2) {
+                report.fail(lineNumber, line, "expected \"<card number> <amount>\"");
+                continue;
+            }
+            long amount;
+            try {
+                amount = Money.parseMinorUnits(parts[1]);
+            } catch (NumberFormatException e) {
+                report.fail(lineNumber, line, "invalid amount");
+                continue;
+            }
+            if (amount <= 0) {
+                report.fail(lineNumber, line, "the amount must be positive");
+                continue;
+            }
+            window.add(new PayoutLine(lineNumber, senderCardNumber, parts[0], amount,
+                    keyPrefix != null ? keyPrefix + ":" + lineNumber : null));
+            if (window.size() == windowSize) {
+                payWindow(admin, window, report);
+                window.clear();
+            }
+        }
+        if (!window.isEmpty()) {
+            payWindow(admin, window, report);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        payoutTime.record(elapsed, TimeUnit.NANOSECONDS);
+        report.finish(elapsed);
+        count("paid", report.paid);
+        count("failed", report.failed);
+        LOGGER.info("Payout of admin {}: {} lines paid, {} failed in {} ms", admin.getTelegramId(), report.paid,
+                report.failed, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return report;
+    }
+
+    private void payWindow(User admin, List<PayoutLine> window, Report report) {
+        Set<String> cardNumbers = new HashSet<>();
+        for (PayoutLine line : window) {
+            cardNumbers.add(line.senderCardNumber);
+            cardNumbers.add(line.recipientCardNumber);
+        }
+        Map<String, TransferCard> cards = cardService.findTransferCards(cardNumbers).stream()
+                .collect(Collectors.toMap(TransferCard::getCardNumber, Function.identity()));
+
+        Map<Long, List<PayoutLine>> bySender = new LinkedHashMap<>();
+        for (PayoutLine line : window) {
+            TransferCard sender = cards.get(line.senderCardNumber);
+            TransferCard recipient = cards.get(line.recipientCardNumber);
+            String error = validate(admin, sender, recipient);
+            if (error != null) {
+                report.fail(line, error);
+                continue;
+            }
+            long recipientAmount = line.amount;
+            if (!sender.getCurrency().equals(recipient.getCurrency())) {
+                double rate = currencyRateService.getRate(sender.getCurrency(), recipient.getCurrency());
+                if (Double.isNaN(rate)) {
+                    report.fail(line, "no exchange rate from " + sender.getCurrency() + " to " + recipient.getCurrency());
+                    continue;
+                }
+                recipientAmount = Money.convert(line.amount, rate);
+            }
+            line.transfer = new BatchTransfer(line.idempotencyKey, recipient.getAccountId(),
+                    Money.of(line.amount, sender.getCurrency()), Money.of(recipientAmount, recipient.getCurrency()));
+            bySender.computeIfAbsent(sender.getAccountId(), id -> new ArrayList<>()).add(line);
+        }
+
+        for (Map.Entry<Long, List<PayoutLine>> group : bySender.entrySet()) {
+            List<PayoutLine> lines = group.getValue();
+            List<Outcome> outcomes = transferEngine.transferAll(group.getKey(),
+                    lines.stream().map(line -> line.transfer).collect(Collectors.toList()));
+            for (int i = 0; i < lines.size(); i++) {
+                report.add(lines.get(i), outcomes.get(i));
+            }
+        }
+    }
+
+    private static String validate(User admin, TransferCard sender, TransferCard recipient) {
+        if (sender == null || !admin.getId().equals(sender.getUserId())) {
+            return "the paying card is not one of your cards";
+        }
+        if (sender.isBanned()) {
+            return "the paying card is banned";
+        }
+        if (recipient == null) {
+            return "recipient card not found";
+        }
+        if (recipient.isBanned()) {
+            return "the recipient card is banned";
+        }
+        if (recipient.getAccountId().equals(sender.getAccountId())) {
+            return "the recipient card is the paying card";
+        }
+        return null;
+    }
+
+    private void count(String result, int lines) {
+        Counter.builder("bank.payouts.lines")
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment(lines);
+    }
+
+    private static final class PayoutLine {
+        private final int number;
+        private final String senderCardNumber;
+        private final String recipientCardNumber;
+        private final long amount;
+        private final String idempotencyKey;
+        private BatchTransfer transfer;
+
+        private PayoutLine(int number, String senderCardNumber, String recipientCardNumber, long amount,
+                           String idempotencyKey) {
+            this.number = number;
+            this.senderCardNumber = senderCardNumber;
+            this.recipientCardNumber = recipientCardNumber;
+            this.amount = amount;
+            this.idempotencyKey = idempotencyKey;
+        }
+    }
+
+    /**
+     * The result of every line of a payout, in the order of the lines, followed by the totals.
+     */
+    public static final class Report {
+        private final Map<Integer, String> results = new TreeMap<>();
+        private final Map<String, Long> paidAmounts = new TreeMap<>();
+        private int paid;
+        private int failed;
+        private long elapsedNanos;
+
+        private Report() {
+        }
+
+        private void add(PayoutLine line, Outcome outcome) {
+            if (outcome != Outcome.COMPLETED) {
+                fail(line, describe(outcome));
+                return;
+            }
+            paid++;
+            paidAmounts.merge(line.transfer.getSenderAmount().getCurrency(), line.amount, Math::addExact);
+            results.put(line.number, line.number + ": " + line.recipientCardNumber + " "
+                    + line.transfer.getSenderAmount() + " - paid");
+        }
+
+        private void fail(PayoutLine line, String reason) {
+            fail(line.number, line.recipientCardNumber + " " + Money.format(line.amount), reason);
+        }
+
+        private void fail(int lineNumber, String line, String reason) {
+            failed++;
+            results.put(lineNumber, lineNumber + ": " + line + " - " + reason);
+        }
+
+        private void finish(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getPaid() {
+            return paid;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the report as texts of at most MAX_MESSAGE_LENGTH characters, never splitting a line.
+         */
+        public List<String> getMessages() {
+            List<String> messages = new ArrayList<>();
+            StringBuilder message = new StringBuilder("Payout results:\r\n");
+            for (String result : results.values()) {
+                if (message.length() + result.length() + 2 > MAX_MESSAGE_LENGTH) {
+                    messages.add(message.toString());
+                    message.setLength(0);
+                }
+                message.append(result).append("\r\n");
+            }
+            String summary = summary();
+            if (message.length() + summary.length() > MAX_MESSAGE_LENGTH) {
+                messages.add(message.toString());
+                message.setLength(0);
+            }
+            messages.add(message.append(summary).toString());
+            return messages;
+        }
+
+        private String summary() {
+            long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            String totals = paidAmounts.entrySet().stream()
+                    .map(total -> Money.format(total.getValue()) + " " + total.getKey())
+                    .collect(Collectors.joining(", "));
+            return "Paid: " + paid + (totals.isEmpty() ? "" : " (" + totals + ")") + ", failed: " + failed + "\r\n"
+                    + "Time: " + millis + " ms, " + (paid + failed) * 1000L / millis + " lines/s";
+        }
+    }
+
+    private static String describe(Outcome outcome) {
+        switch (outcome) {
+            case INSUFFICIENT_FUNDS:
+                return "insufficient funds";
+            case ACCOUNT_NOT_FOUND:
+                return "account not found";
+            default:
+                return "failed, try again later";
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package bot_bank.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * RateMatrix holds the conversion rate between every pair of supported currencies, computed once from
+ * a snapshot of the rates, so looking up a rate is two index lookups and an array read. The rates of
+ * the snapshot are quoted against a common base currency; the rate from A to B is the rate of B divided
+ * by the rate of A, and the rate from B to A is its reciprocal. The text shown by /rates is rendered
+ * from the same matrix when it is built.
+ */
+
+final class RateMatrix {
+
+    /**
+     * The supported currencies. Adding a currency to the list adds its row and column to the matrix.
+     */
+    static final List<String> CURRENCIES = List.of("USD", "EUR", "UAH");
+
+    /**
+     * The rates are shown with a decimal comma whatever the default locale of the server is.
+     */
+    private static final Locale LOCALE = Locale.forLanguageTag("uk-UA");
+
+    private final Map<String, Double> source;
+    private final double[][] rates;
+    private final boolean[] available;
+    private final String formatted;
+
+    private RateMatrix(Map<String, Double> source) {
+        int size = CURRENCIES.size();
+        this.source = source;
+        this.rates = new double[size][size];
+        this.available = new boolean[size];
+
+        double[] base = new double[size];
+        for (int i = 0; i < size; i++) {
+            Double rate = source.get(CURRENCIES.get(i));
+            available[i] = rate != null;
+            base[i] = rate != null ? rate : Double.NaN;
+        }
+        for (int i = 0; i < size; i++) {
+            rates[i][i] = 1.0;
+            for (int j = i + 1; j < size; j++) {
+                rates[i][j] = base[j] * (1.0 / base[i]);
+                rates[j][i] = 1.0 / rates[i][j];
+            }
+        }
+        this.formatted = format();
+    }
+
+    static RateMatrix of(Map<String, Double> rates) {
+        return new RateMatrix(rates);
+    }
+
+    /**
+     * Returns whether the matrix was built from the given rates.
+     */
+    boolean isBuiltFrom(Map<String, Double> rates) {
+        return source == rates;
+    }
+
+    /**
+     * Returns the index of the given currency, or -1 if it is not supported or missing from the rates.
+     */
+    int indexOf(String currency) {
+        int index = CURRENCIES.indexOf(currency);
+        return index >= 0 && available[index] ? index : -1;
+    }
+
+    double rate(int from, int to) {
+        return rates[from][to];
+    }
+
+    String getFormatted() {
+        return formatted;
+    }
+
+    private String format() {
+        StringBuilder sb = new StringBuilder("Exchange rates:\n");
+        for (int i = 0; i < CURRENCIES.size(); i++) {
+            for (int j = 0; j < CURRENCIES.size(); j++) {
+                if (i != j && available[i] && available[j]) {
+                    sb.append(String.format(LOCALE, "%s → %s: %.2f\n", CURRENCIES.get(i), CURRENCIES.get(j), rates[j][i]));
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
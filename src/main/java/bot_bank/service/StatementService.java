@@ -0,0 +1,263 @@
+package bot_bank.service;
+
+import bot_bank.bot.BotContext;
+import bot_bank.model.Card;
+import bot_bank.model.Money;
+import bot_bank.repo.AccountRepository;
+import bot_bank.repo.AccountSummary;
+import bot_bank.repo.EntryIdRange;
+import bot_bank.repo.JournalEntryRepository;
+import bot_bank.repo.TransactionRepository;
+import bot_bank.repo.TransactionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.InputFile;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * StatementService sends the monthly statement of an account as a CSV document. Users choose one of their
+ * cards and a month, "/statement:12:2026-09" being the statement of account 12 for September 2026, and admins
+ * enter the number of any account with the month. The transactions of the month are streamed from the journal
+ * straight into a temporary file, row by row, so a statement of an account with any number of transactions
+ * holds only one row in memory; the file is deleted once it has been sent.
+ */
+
+@Service
+public class StatementService {
+
+    private static final Logger LOGGER = LogManager.getLogger(StatementService.class);
+
+    private static final String COMMAND = "/statement";
+    private static final int MONTHS = 6;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final CardService cardService;
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final JournalEntryRepository journalEntryRepository;
+    private final MessageService messageService;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer statementTime;
+
+    public StatementService(CardService cardService,
+                            AccountRepository accountRepository,
+                            TransactionRepository transactionRepository,
+                            JournalEntryRepository journalEntryRepository,
+                            MessageService messageService,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry) {
+        this.cardService = cardService;
+        this.accountRepository = accountRepository;
+        this.transactionRepository = transactionRepository;
+        this.journalEntryRepository = journalEntryRepository;
+        this.messageService = messageService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.statementTime = Timer.builder("bank.statements").register(meterRegistry);
+    }
+
+    /**
+     * Handles "/statement": lets the user choose the card and the month, then sends the statement.
+     */
+    public void showStatement(BotContext context) {
+        LOGGER.info("Showing statement: {}", context.getInput());
+        Card card = AccountChoice.choose(context, COMMAND, cardService, messageService);
+        if (card == null) {
+            return;
+        }
+        String[] parts = context.getInput().split(":");
+        if (parts.length < 3) {
+            sendMonthChoice(context, card.getAccount().getId());
+            return;
+        }
+        YearMonth month = parseMonth(parts[2]);
+        if (month == null) {
+            messageService.sendMessage(context.getUser().getTelegramId(), "Invalid month.");
+            return;
+        }
+        sendStatement(context, card.getAccount().getId(), card.getAccount().getAccountNumber(), month);
+    }
+
+    /**
+     * Sends the statement of any account to an admin, who entered "&lt;account number&gt; &lt;yyyy-MM&gt;".
+     */
+    public void sendAccountStatement(BotContext context) {
+        long chatId = context.getUser().getTelegramId();
+        String[] parts = context.getInput().trim().split("\\s+");
+        YearMonth month = parts.length == 2 ? parseMonth(parts[1]) : null;
+        if (month == null) {
+            messageService.sendMessage(chatId, "Enter the account number and the month, e.g. 1234567890 2026-09.");
+            return;
+        }
+        Optional<AccountSummary> account = accountRepository.findSummaryByAccountNumber(parts[0]);
+        if (account.isEmpty()) {
+            messageService.sendMessage(chatId, "Account not found.");
+            return;
+        }
+        sendStatement(context, account.get().getId(), account.get().getAccountNumber(), month);
+    }
+
+    private void sendStatement(BotContext context, Long accountId, String accountNumber, YearMonth month) {
+        long start = System.nanoTime();
+        long chatId = context.getUser().getTelegramId();
+        Path file;
+        Totals totals;
+        try {
+            file = Files.createTempFile("statement-", ".csv");
+        } catch (IOException e) {
+            LOGGER.error("Could not create the statement file", e);
+            messageService.sendMessage(chatId, "The statement could not be created, try again later.");
+            return;
+        }
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            totals = transactionTemplate.execute(status -> write(accountId, month, out));
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error("Could not write the statement of account {} for {}", accountId, month, e);
+            delete(file);
+            messageService.sendMessage(chatId, "The statement could not be created, try again later.");
+            return;
+        }
+        statementTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        LOGGER.info("Wrote statement of account {} for {}: {} transactions in {} ms", accountId, month, totals.count,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        if (totals.count == 0) {
+            delete(file);
+            messageService.sendMessage(chatId, "No transactions in " + month + ".");
+            return;
+        }
+        SendDocument document = new SendDocument();
+        document.setChatId(Long.toString(chatId));
+        document.setDocument(new InputFile(file.toFile(), "statement-" + accountNumber + "-" + month + ".csv"));
+        document.setCaption("Statement of account " + accountNumber + " for " + month + ": " + totals.count
+                + " transactions, in " + Money.of(totals.in, totals.currency) + ", out " + Money.of(totals.out, totals.currency));
+        context.getBot().sendDocumentAsync(document).whenComplete((sent, e) -> delete(file));
+    }
+
+    /**
+     * Writes the transactions of the account in the month as CSV rows while they are read. The range of the ids
+     * of the entries of the month is found by date first, so the transactions are read as one range of the index
+     * of the account, and the dates of the entries in that range decide which belong to the month.
+     */
+    private Totals write(Long accountId, YearMonth month, Writer out) {
+        Totals totals = new Totals();
+        try {
+            out.write("date,amount,currency,counterparty,details\r\n");
+            LocalDateTime from = month.atDay(1).atStartOfDay();
+            LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+            EntryIdRange entries = journalEntryRepository.findIdRange(from, to);
+            if (entries == null || entries.getFirstId() == null) {
+                return totals;
+            }
+            try (Stream<TransactionSummary> transactions = transactionRepository.streamStatement(accountId,
+                    entries.getFirstId(), entries.getLastId(), from, to)) {
+                transactions.forEach(transaction -> writeRow(out, transaction, totals));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return totals;
+    }
+
+    private static void writeRow(Writer out, TransactionSummary transaction, Totals totals) {
+        totals.add(transaction);
+        try {
+            out.write(transaction.getDate().format(DATE_FORMAT) + "," + Money.format(transaction.getAmount()) + ","
+                    + transaction.getCurrency() + "," + csv(transaction.getCounterparty()) + ","
+                    + csv(transaction.getAmount() < 0 ? transaction.getRecipientDetails() : null) + "\r\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private void sendMonthChoice(BotContext context, Long accountId) {
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        List<InlineKeyboardButton> row = new ArrayList<>();
+        YearMonth month = YearMonth.now();
+        for (int i = 0; i < MONTHS; i++, month = month.minusMonths(1)) {
+            InlineKeyboardButton button = new InlineKeyboardButton();
+            button.setText(month.toString());
+            button.setCallbackData(COMMAND + ":" + accountId + ":" + month);
+            row.add(button);
+            if (row.size() == 3) {
+                rows.add(row);
+                row = new ArrayList<>();
+            }
+        }
+        InlineKeyboardMarkup markup = new InlineKeyboardMarkup();
+        markup.setKeyboard(rows);
+
+        SendMessage message = new SendMessage();
+        message.setChatId(Long.toString(context.getUser().getTelegramId()));
+        message.setText("Choose a month:");
+        message.setReplyMarkup(markup);
+        context.getBot().executeAsync(message);
+    }
+
+    private static YearMonth parseMonth(String text) {
+        try {
+            return YearMonth.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete statement file {}", file, e);
+        }
+    }
+
+    private static final class Totals {
+        private int count;
+        private long in;
+        private long out;
+        private String currency;
+
+        private void add(TransactionSummary transaction) {
+            count++;
+            currency = transaction.getCurrency();
+            if (transaction.getAmount() < 0) {
+                out += transaction.getAmount();
+            } else {
+                in += transaction.getAmount();
+            }
+        }
+    }
+}
@@ -1,31 +1,25 @@
 package bot_bank.service;
 
 import bot_bank.bot.BotContext;
-import bot_bank.model.Account;
-import bot_bank.model.Card;
-import bot_bank.model.Transaction;
-import bot_bank.model.TransactionType;
-import bot_bank.repo.TransactionRepository;
+import bot_bank.model.Money;
+import bot_bank.model.TransactionDetail;
+import bot_bank.repo.TransferCard;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import javax.transaction.Transactional;
-import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.Optional;
+import java.util.List;
 
 /**
  * TransactionService manages the processing of financial transactions.
- * It provides methods to parse amounts, validate sender details, retrieve recipient accounts,
- * convert currencies, and save transactions. It also handles the processing of transactions
- * between accounts and sending messages to users via Telegram.
+ * It provides methods to parse amounts, validate sender details and convert currencies. It also handles
+ * the processing of transactions between accounts, which are carried out by the TransferEngine, and sending
+ * messages to users via Telegram.
  */
 
 @Service
@@ -35,34 +29,28 @@ public class TransactionService {
     private static final Logger LOGGER = LogManager.getLogger(TransactionService.class);
 
 
-    private final TransactionRepository transactionRepository;
-
-
     private final CurrencyRateService currencyRateService;
 
 
-    private final AccountService accountService;
+    private final TransferEngine transferEngine;
 
 
     private final CardService cardService;
 
-    @Transactional
-    public void saveTransaction(Transaction transaction) {
-        LOGGER.info("Saving transaction: {}", transaction);
-        transactionRepository.save(transaction);
-    }
-
-
-    public BigDecimal parseAmount(String amountStr, BotContext context) {
+    /**
+     * Parses the amount entered by the user into minor units, or returns null and tells the user why
+     * the amount is not valid.
+     */
+    public Long parseAmount(String amountStr, BotContext context) {
         try {
-            BigDecimal senderAmount = new BigDecimal(amountStr);
-            if (senderAmount.compareTo(BigDecimal.ZERO) <= 0) {
-                LOGGER.warn("Invalid amount entered: {}", senderAmount);
+            long senderAmount = Money.parseMinorUnits(amountStr);
+            if (senderAmount <= 0) {
+                LOGGER.warn("Invalid amount entered: {}", amountStr);
                 sendMessage(context, "The amount must be greater than zero. Please, try again.");
                 return null;
             }
             context.getUser().getTransactionDetail().setAmount(senderAmount);
-            LOGGER.info("Amount for transaction: {}", senderAmount);
+            LOGGER.info("Amount for transaction: {}", Money.format(senderAmount));
             return senderAmount;
         } catch (NumberFormatException e) {
             LOGGER.error("Invalid amount format: {}", amountStr, e);
@@ -71,7 +59,30 @@ public class TransactionService {
         }
     }
 
-    public boolean validateSenderDetails(BotContext context, BigDecimal senderAmount) {
+    /**
+     * Carries out the transfer described by the transaction details of the user. The sender and the
+     * recipient card are read with one query, and the transfer is validated and made against that result.
+     * A recipient card that is not ours is an external recipient. Returns whether the money was transferred;
+     * otherwise the user has been told why not.
+     */
+    public boolean transfer(BotContext context, long senderAmount) {
+        TransactionDetail detail = context.getUser().getTransactionDetail();
+        List<TransferCard> cards = cardService.findTransferCards(detail.getSenderCardNumber(),
+                detail.getRecipientCardNumber());
+        TransferCard senderCard = findCard(cards, detail.getSenderCardNumber());
+        TransferCard recipientCard = findCard(cards, detail.getRecipientCardNumber());
+
+        if (!validateSenderDetails(context, senderCard, senderAmount)) {
+            return false;
+        }
+        Long recipientAmount = convertCurrencyIfNeeded(senderCard, recipientCard, senderAmount, context);
+        if (recipientAmount == null) {
+            return false;
+        }
+        return processTransaction(senderCard, recipientCard, senderAmount, recipientAmount, context);
+    }
+
+    public boolean validateSenderDetails(BotContext context, TransferCard senderCard, long senderAmount) {
         String senderCardNumber = context.getUser().getTransactionDetail().getSenderCardNumber();
         String senderCvv = context.getUser().getTransactionDetail().getSenderCvv();
         String senderExpDateStr = context.getUser().getTransactionDetail().getSenderExpDate();
@@ -86,24 +97,21 @@ public class TransactionService {
             return false;
         }
 
-        Optional<Card> senderCardOpt = cardService.findByCardNumber(senderCardNumber);
-        if (senderCardOpt.isEmpty() || !senderCardOpt.get().getCvv().equals(senderCvv)
-                || !senderCardOpt.get().getExpirationDate().equals(senderExpDate)) {
+        if (senderCard == null || !senderCard.getCvv().equals(senderCvv)
+                || !senderCard.getExpirationDate().equals(senderExpDate)) {
             LOGGER.warn("Invalid or not found sender card details");
             sendMessage(context, "Sender card details are invalid or not found.");
             return false;
         }
 
-        Card senderCard = senderCardOpt.get();
         if (senderCard.isBanned()) {
             LOGGER.warn("Sender card is banned: {}", senderCardNumber);
             sendMessage(context, "Transaction cannot be processed because the sender's card is banned.");
             return false;
         }
 
-        Account senderAccount = senderCard.getAccount();
-        if (senderAccount.getCurrentBalance().compareTo(senderAmount) < 0) {
-            LOGGER.warn("Insufficient funds on sender's account: {}", senderAccount.getCurrentBalance());
+        if (senderCard.getCurrentBalance() < senderAmount) {
+            LOGGER.warn("Insufficient funds on sender's account: {}", Money.format(senderCard.getCurrentBalance()));
             sendMessage(context, "Insufficient funds on sender's account.");
             return false;
         }
@@ -111,21 +119,19 @@ public class TransactionService {
         return true;
     }
 
-    public Account getRecipientAccount(BotContext context) {
-        String recipientCardNumber = context.getUser().getTransactionDetail().getRecipientCardNumber();
-        Optional<Card> recipientCardOpt = cardService.findByCardNumber(recipientCardNumber);
-        return recipientCardOpt.map(Card::getAccount).orElse(null);
-    }
-
-    public BigDecimal convertCurrencyIfNeeded(Account senderAccount, Account recipientAccount, BigDecimal senderAmount, BotContext context) {
-        BigDecimal recipientAmount = senderAmount;
-        String senderCurrency = senderAccount.getCurrency();
-        String recipientCurrency = recipientAccount != null ? recipientAccount.getCurrency() : null;
-
-        if (recipientAccount != null && !senderCurrency.equals(recipientCurrency)) {
-            Double rate = currencyRateService.getRate(senderCurrency, recipientCurrency);
-            if (rate != null) {
-                recipientAmount = senderAmount.multiply(BigDecimal.valueOf(rate));
+    /**
+     * Returns the amount the recipient gets in the currency of their account, in minor units, or null
+     * if the rate between the currencies is not available.
+     */
+    public Long convertCurrencyIfNeeded(TransferCard senderCard, TransferCard recipientCard, long senderAmount, BotContext context) {
+        long recipientAmount = senderAmount;
+        String senderCurrency = senderCard.getCurrency();
+        String recipientCurrency = recipientCard != null ? recipientCard.getCurrency() : null;
+
+        if (recipientCard != null && !senderCurrency.equals(recipientCurrency)) {
+            double rate = currencyRateService.getRate(senderCurrency, recipientCurrency);
+            if (!Double.isNaN(rate)) {
+                recipientAmount = Money.convert(senderAmount, rate);
             } else {
                 LOGGER.error("Currency conversion rate unavailable");
                 sendMessage(context, "Currency conversion rate is unavailable.");
@@ -136,60 +142,60 @@ public class TransactionService {
         return recipientAmount;
     }
 
-    @Transactional
-    public void processTransaction(Account senderAccount, Account recipientAccount, BigDecimal senderAmount,
-                                   BigDecimal recipientAmount, BotContext context) {
-        senderAccount.setCurrentBalance(senderAccount.getCurrentBalance().subtract(senderAmount));
-        accountService.saveAccount(senderAccount);
-        LOGGER.info("Sender account balance updated: {}", senderAccount.getCurrentBalance());
-
-        if (recipientAccount != null) {
-            recipientAccount.setCurrentBalance(recipientAccount.getCurrentBalance().add(recipientAmount));
-            accountService.saveAccount(recipientAccount);
-            LOGGER.info("Recipient account balance updated: {}", recipientAccount.getCurrentBalance());
+    /**
+     * Transfers the amounts through the TransferEngine and tells the user when the transfer could not be
+     * made. Returns whether the money was transferred.
+     */
+    public boolean processTransaction(TransferCard senderCard, TransferCard recipientCard, long senderAmount,
+                                      long recipientAmount, BotContext context) {
+        String recipientDetails = recipientCard == null
+                ? "External recipient: " + context.getUser().getTransactionDetail().getRecipientCardNumber()
+                : null;
+        String recipientCurrency = recipientCard != null ? recipientCard.getCurrency() : senderCard.getCurrency();
+        TransferEngine.Outcome outcome = transferEngine.transfer(idempotencyKey(context), senderCard.getAccountId(),
+                recipientCard != null ? recipientCard.getAccountId() : null,
+                Money.of(senderAmount, senderCard.getCurrency()), Money.of(recipientAmount, recipientCurrency),
+                recipientDetails);
+
+        switch (outcome) {
+            case COMPLETED:
+                return true;
+            case INSUFFICIENT_FUNDS:
+                sendMessage(context, "Insufficient funds on sender's account.");
+                return false;
+            case ACCOUNT_NOT_FOUND:
+                sendMessage(context, "Sender or recipient account not found.");
+                return false;
+            default:
+                sendMessage(context, "The transaction could not be processed right now. Please, try again.");
+                return false;
         }
+    }
 
-        Transaction.TransactionBuilder senderTransactionBuilder = Transaction.builder()
-                .account(senderAccount)
-                .transactionType(TransactionType.TRANSFER)
-                .amount(senderAmount.negate())
-                .transactionDate(LocalDateTime.now());
+    private static TransferCard findCard(List<TransferCard> cards, String cardNumber) {
+        return cards.stream()
+                .filter(card -> card.getCardNumber().equals(cardNumber))
+                .findFirst()
+                .orElse(null);
+    }
 
-        if (recipientAccount != null) {
-            senderTransactionBuilder.recipientAccount(recipientAccount);
-        } else {
-            senderTransactionBuilder.recipientDetails("External recipient: " + context.getUser().getTransactionDetail().getRecipientCardNumber());
-        }
 
-        Transaction senderTransaction = senderTransactionBuilder.build();
-        transactionRepository.save(senderTransaction);
-        LOGGER.info("Sender transaction saved: {}", senderTransaction);
-
-        if (recipientAccount != null) {
-            Transaction recipientTransaction = Transaction.builder()
-                    .account(recipientAccount)
-                    .transactionType(TransactionType.DEPOSIT)
-                    .amount(recipientAmount)
-                    .transactionDate(LocalDateTime.now())
-                    .recipientAccount(senderAccount)
-                    .build();
-
-            transactionRepository.save(recipientTransaction);
-            LOGGER.info("Recipient transaction saved: {}", recipientTransaction);
-        }
+    /**
+     * Derives the idempotency key of a transfer from the chat and the message that confirmed it, so the
+     * same message delivered twice is recognized as the same transfer.
+     */
+    private static String idempotencyKey(BotContext context) {
+        return context.getMessageId() != null
+                ? context.getUser().getTelegramId() + ":" + context.getMessageId()
+                : null;
     }
 
-
     public static void sendMessage(BotContext context, String text) {
         SendMessage message = new SendMessage();
         message.setChatId(Long.toString(context.getUser().getTelegramId()));
         message.setText(text);
 
-        try {
-            context.getBot().execute(message);
-        } catch (TelegramApiException e) {
-            e.printStackTrace();
-        }
+        context.getBot().executeAsync(message);
 
     }
 }
@@ -0,0 +1,439 @@
+package bot_bank.service;
+
+import bot_bank.ledger.ShardedLedger;
+import bot_bank.model.Account;
+import bot_bank.model.JournalEntry;
+import bot_bank.model.Money;
+import bot_bank.repo.AccountRepository;
+import bot_bank.repo.JournalEntryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TransferEngine moves money between two accounts in one database transaction. The sender is debited
+ * with a single conditional UPDATE that only applies while the balance covers the amount, and the
+ * recipient is credited with a single UPDATE, so the balances are never read into Java and concurrent
+ * transfers can neither overdraw an account nor lose an update. The two rows are updated in the order
+ * of their ids, so two transfers between the same accounts in opposite directions cannot deadlock each
+ * other. A transfer that still loses a deadlock or times out waiting for a row lock is retried a few times
+ * with a short random backoff. The time spent in the balance updates, which includes waiting for the row
+ * locks, and the number of retries are recorded as metrics. Transfers carry an idempotency key, so a
+ * request that arrives twice moves the money only once. Every transfer is recorded as one balanced
+ * JournalEntry, whose legs are inserted together with it.
+ * <p>
+ * When the ShardedLedger is enabled, the transfers are carried out by the ledger in memory instead, and
+ * the database is only written afterwards from its journal.
+ * <p>
+ * Batches of transfers from one sender, such as bulk payouts, are made in one transaction each, with one
+ * debit of the sender for the whole batch and one credit per recipient.
+ */
+
+@Service
+public class TransferEngine {
+
+    private static final Logger LOGGER = LogManager.getLogger(TransferEngine.class);
+
+    private final AccountRepository accountRepository;
+    private final JournalEntryRepository journalEntryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Timer updateTime;
+    private final Counter retries;
+    private final Counter duplicates;
+    private final int maxAttempts;
+    private final Map<String, Outcome> recentOutcomes;
+    private final ShardedLedger ledger;
+
+    public TransferEngine(AccountRepository accountRepository,
+                          JournalEntryRepository journalEntryRepository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry,
+                          Optional<ShardedLedger> ledger,
+                          @Value("${transfer.max-attempts:3}") int maxAttempts,
+                          @Value("${transfer.idempotency.window-size:10000}") int windowSize) {
+        this.accountRepository = accountRepository;
+        this.journalEntryRepository = journalEntryRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.updateTime = Timer.builder("bank.transfers.update").register(meterRegistry);
+        this.retries = Counter.builder("bank.transfers.retries").register(meterRegistry);
+        this.duplicates = Counter.builder("bank.transfers.duplicates").register(meterRegistry);
+        this.maxAttempts = maxAttempts;
+        this.ledger = ledger.orElse(null);
+        this.recentOutcomes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Outcome> eldest) {
+                return size() > windowSize;
+            }
+        };
+    }
+
+    /**
+     * Transfers the sender amount from the sender account and the recipient amount, already converted
+     * into the currency of the recipient, to the recipient account. Without a recipient account the money
+     * leaves the bank and the recipient details are recorded instead.
+     * <p>
+     * A transfer with the idempotency key of an earlier transfer is not made again; the outcome of the
+     * earlier transfer is returned instead. Recent keys are remembered in memory, and the key is stored
+     * with the journal entry under a unique constraint, which catches the duplicates the memory
+     * no longer knows about, e.g. after a restart.
+     */
+    public Outcome transfer(String idempotencyKey, Long senderAccountId, Long recipientAccountId, Money senderAmount,
+                            Money recipientAmount, String recipientDetails) {
+        long start = System.nanoTime();
+        Outcome previous = idempotencyKey != null ? recentOutcome(idempotencyKey) : null;
+        if (previous != null) {
+            duplicates.increment();
+            LOGGER.info("Transfer {} was already made, returning its outcome {}", idempotencyKey, previous);
+            return previous;
+        }
+        if (ledger != null) {
+            return transferInLedger(idempotencyKey, senderAccountId, recipientAccountId, senderAmount, recipientAmount,
+                    recipientDetails, start);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Outcome outcome = transactionTemplate.execute(status -> transferInTransaction(status, idempotencyKey,
+                        senderAccountId, recipientAccountId, senderAmount, recipientAmount, recipientDetails));
+                remember(idempotencyKey, outcome);
+                record(outcome, start);
+                return outcome;
+            } catch (DataIntegrityViolationException e) {
+                if (idempotencyKey == null || !journalEntryRepository.existsByIdempotencyKey(idempotencyKey)) {
+                    throw e;
+                }
+                duplicates.increment();
+                LOGGER.info("Transfer {} was already made, its journal entry is stored", idempotencyKey);
+                remember(idempotencyKey, Outcome.COMPLETED);
+                return Outcome.COMPLETED;
+            } catch (PessimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    LOGGER.error("Transfer from account {} failed after {} attempts", senderAccountId, attempt, e);
+                    record(Outcome.FAILED, start);
+                    return Outcome.FAILED;
+                }
+                retries.increment();
+                LOGGER.warn("Transfer from account {} hit lock contention, retrying (attempt {})", senderAccountId, attempt);
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Transfers a batch of amounts from one sender account to accounts of the bank in one database transaction.
+     * The transfers the balance of the sender covers, in the given order, are chosen before any row is locked;
+     * the sender is then debited once with their total and every recipient is credited once with the sum of its
+     * amounts, all rows in the order of their ids like a single transfer, so a batch cannot deadlock against
+     * transfers in the other direction. The transfers whose idempotency key is already in the journal are not
+     * made again. When the balance changed before the debit, or the batch keeps losing lock contention, it is
+     * tried again, and after the last attempt none of its transfers is made.
+     *
+     * @return the outcome of every transfer, in the given order
+     */
+    public List<Outcome> transferAll(Long senderAccountId, List<BatchTransfer> transfers) {
+        long start = System.nanoTime();
+        if (ledger != null) {
+            List<Outcome> outcomes = new ArrayList<>(transfers.size());
+            for (BatchTransfer transfer : transfers) {
+                outcomes.add(transfer(transfer.getIdempotencyKey(), senderAccountId, transfer.getRecipientAccountId(),
+                        transfer.getSenderAmount(), transfer.getRecipientAmount(), null));
+            }
+            return outcomes;
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                List<Outcome> outcomes = transactionTemplate.execute(status ->
+                        transferAllInTransaction(senderAccountId, transfers));
+                for (int i = 0; i < transfers.size(); i++) {
+                    remember(transfers.get(i).getIdempotencyKey(), outcomes.get(i));
+                }
+                recordBatch(outcomes, start);
+                return outcomes;
+            } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+                // A key journaled concurrently is found by the next attempt and the batch is made without it
+                if (attempt >= maxAttempts) {
+                    LOGGER.error("Batch of {} transfers from account {} failed after {} attempts", transfers.size(),
+                            senderAccountId, attempt, e);
+                    List<Outcome> outcomes = Collections.nCopies(transfers.size(), Outcome.FAILED);
+                    recordBatch(outcomes, start);
+                    return outcomes;
+                }
+                retries.increment();
+                LOGGER.warn("Batch of transfers from account {} failed with {}, retrying (attempt {})", senderAccountId,
+                        e.getClass().getSimpleName(), attempt);
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Carries out the transfer in the ledger. The ledger refuses a key it has already journaled, whether or not
+     * its entry has been projected, and returns the outcome of the earlier transfer.
+     */
+    private Outcome transferInLedger(String idempotencyKey, Long senderAccountId, Long recipientAccountId,
+                                     Money senderAmount, Money recipientAmount, String recipientDetails, long start) {
+        Outcome outcome = ledger.transfer(idempotencyKey, senderAccountId, recipientAccountId, senderAmount,
+                recipientAmount, recipientDetails).join();
+        remember(idempotencyKey, outcome);
+        record(outcome, start);
+        return outcome;
+    }
+
+    private Outcome transferInTransaction(TransactionStatus status, String idempotencyKey, Long senderAccountId,
+                                          Long recipientAccountId, Money senderAmount, Money recipientAmount,
+                                          String recipientDetails) {
+        boolean internal = recipientAccountId != null;
+        long updateStart = System.nanoTime();
+        Outcome outcome;
+        if (internal && recipientAccountId < senderAccountId) {
+            outcome = !accountRepository.credit(recipientAccountId, recipientAmount.getMinorUnits()) ? Outcome.ACCOUNT_NOT_FOUND
+                    : debit(senderAccountId, senderAmount.getMinorUnits());
+        } else {
+            outcome = debit(senderAccountId, senderAmount.getMinorUnits());
+            if (outcome == Outcome.COMPLETED && internal
+                    && !accountRepository.credit(recipientAccountId, recipientAmount.getMinorUnits())) {
+                outcome = Outcome.ACCOUNT_NOT_FOUND;
+            }
+        }
+        updateTime.record(System.nanoTime() - updateStart, TimeUnit.NANOSECONDS);
+        if (outcome != Outcome.COMPLETED) {
+            status.setRollbackOnly();
+            return outcome;
+        }
+
+        Account sender = accountRepository.getReferenceById(senderAccountId);
+        Account recipient = internal ? accountRepository.getReferenceById(recipientAccountId) : null;
+        journalEntryRepository.save(JournalEntry.transfer(LocalDateTime.now(), idempotencyKey, sender, senderAmount,
+                recipient, recipientAmount, recipientDetails));
+        LOGGER.info("Transferred {} from account {} to {}", senderAmount, senderAccountId,
+                internal ? recipientAccountId : recipientDetails);
+        return Outcome.COMPLETED;
+    }
+
+    private List<Outcome> transferAllInTransaction(Long senderAccountId, List<BatchTransfer> transfers) {
+        Outcome[] outcomes = new Outcome[transfers.size()];
+        Set<String> keys = transfers.stream().map(BatchTransfer::getIdempotencyKey).filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<String> made = keys.isEmpty() ? Set.of() : new HashSet<>(journalEntryRepository.findExistingIdempotencyKeys(keys));
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            String key = transfers.get(i).getIdempotencyKey();
+            if (key != null && made.contains(key)) {
+                duplicates.increment();
+                outcomes[i] = Outcome.COMPLETED;
+            } else {
+                pending.add(i);
+            }
+        }
+        if (pending.isEmpty()) {
+            return Arrays.asList(outcomes);
+        }
+
+        // The balance is read without a lock, so the rows can be locked in the order of their ids afterwards
+        Optional<Long> balance = accountRepository.findCurrentBalanceById(senderAccountId);
+        if (balance.isEmpty()) {
+            pending.forEach(i -> outcomes[i] = Outcome.ACCOUNT_NOT_FOUND);
+            return Arrays.asList(outcomes);
+        }
+        List<Integer> debited = new ArrayList<>();
+        long left = balance.get();
+        for (int i : pending) {
+            long amount = transfers.get(i).getSenderAmount().getMinorUnits();
+            if (amount <= left) {
+                debited.add(i);
+                left -= amount;
+            } else {
+                outcomes[i] = Outcome.INSUFFICIENT_FUNDS;
+            }
+        }
+        if (debited.isEmpty()) {
+            LOGGER.warn("Insufficient funds on account {} for a batch of {} transfers", senderAccountId, pending.size());
+            return Arrays.asList(outcomes);
+        }
+
+        long updateStart = System.nanoTime();
+        Map<Long, List<Integer>> byRecipient = debited.stream()
+                .collect(Collectors.groupingBy(i -> transfers.get(i).getRecipientAccountId(), TreeMap::new, Collectors.toList()));
+        boolean senderDebited = false;
+        for (Map.Entry<Long, List<Integer>> recipient : byRecipient.entrySet()) {
+            if (!senderDebited && recipient.getKey() > senderAccountId) {
+                debitBatch(senderAccountId, transfers, debited, outcomes);
+                senderDebited = true;
+            }
+            List<Integer> indexes = recipient.getValue();
+            long credit = indexes.stream().mapToLong(i -> transfers.get(i).getRecipientAmount().getMinorUnits()).sum();
+            Outcome outcome = Outcome.COMPLETED;
+            if (!accountRepository.credit(recipient.getKey(), credit)) {
+                // Before the debit the transfers are left out of it, after it their amounts are returned
+                if (senderDebited) {
+                    accountRepository.credit(senderAccountId,
+                            indexes.stream().mapToLong(i -> transfers.get(i).getSenderAmount().getMinorUnits()).sum());
+                }
+                outcome = Outcome.ACCOUNT_NOT_FOUND;
+            }
+            for (int i : indexes) {
+                outcomes[i] = outcome;
+            }
+        }
+        if (!senderDebited) {
+            debitBatch(senderAccountId, transfers, debited, outcomes);
+        }
+        updateTime.record(System.nanoTime() - updateStart, TimeUnit.NANOSECONDS);
+
+        Account sender = accountRepository.getReferenceById(senderAccountId);
+        LocalDateTime now = LocalDateTime.now();
+        List<JournalEntry> entries = new ArrayList<>();
+        for (int i : debited) {
+            if (outcomes[i] == Outcome.COMPLETED) {
+                BatchTransfer transfer = transfers.get(i);
+                entries.add(JournalEntry.transfer(now, transfer.getIdempotencyKey(), sender, transfer.getSenderAmount(),
+                        accountRepository.getReferenceById(transfer.getRecipientAccountId()), transfer.getRecipientAmount(),
+                        null));
+            }
+        }
+        journalEntryRepository.saveAll(entries);
+        LOGGER.info("Transferred {} of {} batched amounts from account {}", entries.size(), transfers.size(), senderAccountId);
+        return Arrays.asList(outcomes);
+    }
+
+    /**
+     * Debits the sender with the total of the chosen transfers that have not failed so far. The balance was
+     * read before the rows were locked; when it no longer covers the total, the batch is rolled back and tried
+     * again with the new balance.
+     */
+    private void debitBatch(Long senderAccountId, List<BatchTransfer> transfers, List<Integer> debited,
+                            Outcome[] outcomes) {
+        long total = debited.stream().filter(i -> outcomes[i] != Outcome.ACCOUNT_NOT_FOUND)
+                .mapToLong(i -> transfers.get(i).getSenderAmount().getMinorUnits()).sum();
+        if (total > 0 && !accountRepository.debit(senderAccountId, total)) {
+            throw new OptimisticLockingFailureException("The balance of account " + senderAccountId
+                    + " changed while its batch of transfers was made");
+        }
+    }
+
+    private Outcome debit(Long accountId, long amount) {
+        if (accountRepository.debit(accountId, amount)) {
+            return Outcome.COMPLETED;
+        }
+        if (!accountRepository.existsById(accountId)) {
+            return Outcome.ACCOUNT_NOT_FOUND;
+        }
+        LOGGER.warn("Insufficient funds on account {} for {}", accountId, Money.format(amount));
+        return Outcome.INSUFFICIENT_FUNDS;
+    }
+
+    private Outcome recentOutcome(String idempotencyKey) {
+        synchronized (recentOutcomes) {
+            return recentOutcomes.get(idempotencyKey);
+        }
+    }
+
+    /**
+     * Remembers the outcome of a transfer for its key. A transfer that failed on lock contention changed
+     * nothing and is not remembered, so it can be tried again.
+     */
+    private void remember(String idempotencyKey, Outcome outcome) {
+        if (idempotencyKey == null || outcome == Outcome.FAILED) {
+            return;
+        }
+        synchronized (recentOutcomes) {
+            recentOutcomes.put(idempotencyKey, outcome);
+        }
+    }
+
+    private void record(Outcome outcome, long start) {
+        Timer.builder("bank.transfers")
+                .tag("outcome", outcome.name().toLowerCase())
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void recordBatch(List<Outcome> outcomes, long start) {
+        Timer.builder("bank.transfers.batches").register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        for (Outcome outcome : outcomes) {
+            Counter.builder("bank.transfers.batched")
+                    .tag("outcome", outcome.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(5, 20) * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public enum Outcome {
+        COMPLETED,
+        INSUFFICIENT_FUNDS,
+        ACCOUNT_NOT_FOUND,
+        /** The transfer kept losing lock contention or could not be journaled and was given up; nothing was changed. */
+        FAILED
+    }
+
+    /**
+     * One transfer of a batch: the amount debited from the sender of the batch and the amount, already
+     * converted into the currency of the recipient, credited to the recipient account.
+     */
+    public static final class BatchTransfer {
+        private final String idempotencyKey;
+        private final Long recipientAccountId;
+        private final Money senderAmount;
+        private final Money recipientAmount;
+
+        public BatchTransfer(String idempotencyKey, Long recipientAccountId, Money senderAmount, Money recipientAmount) {
+            this.idempotencyKey = idempotencyKey;
+            this.recipientAccountId = recipientAccountId;
+            this.senderAmount = senderAmount;
+            this.recipientAmount = recipientAmount;
+        }
+
+        public String getIdempotencyKey() {
+            return idempotencyKey;
+        }
+
+        public Long getRecipientAccountId() {
+            return recipientAccountId;
+        }
+
+        public Money getSenderAmount() {
+            return senderAmount;
+        }
+
+        public Money getRecipientAmount() {
+            return recipientAmount;
+        }
+    }
+}
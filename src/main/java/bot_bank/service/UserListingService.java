@@ -1,19 +1,16 @@
 package bot_bank.service;
 
 import bot_bank.bot.BotContext;
-import bot_bank.model.User;
+import bot_bank.repo.UserSummary;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Service;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-
-import java.util.List;
 
 
 /**
- * UserListingService provides methods for listing users and sending messages to users via Telegram.
+ * UserListingService provides methods for listing users page by page and sending messages to users via Telegram.
  */
 @Service
 @AllArgsConstructor
@@ -21,21 +18,15 @@ public class UserListingService {
 
     private static final Logger LOGGER = LogManager.getLogger(UserListingService.class);
 
+    private static final KeysetListing<UserSummary> LISTING = new KeysetListing<>("/listusers",
+            "All users list:", "No users found.", UserSummary::getId,
+            user -> user.getTelegramId() + " " + user.getNumber() + " " + user.getEmail());
+
     private final UserService userService;
 
     public void listUsers(BotContext context) {
-        StringBuilder sb = new StringBuilder("All users list:\r\n");
-        List<User> users = userService.findAllUsers();
-
-        users.forEach(user -> sb.append(user.getTelegramId())
-                .append(' ')
-                .append(user.getNumber())
-                .append(' ')
-                .append(user.getEmail())
-                .append("\r\n"));
-
-        LOGGER.info("Listing all users");
-        sendMessage(context, sb.toString());
+        LOGGER.info("Listing users: {}", context.getInput());
+        LISTING.show(context, userService::findUsersAfter, userService::findUsersBefore);
     }
 
     public static void sendMessage(BotContext context, String text) {
@@ -43,10 +34,6 @@ public class UserListingService {
         message.setChatId(Long.toString(context.getUser().getTelegramId()));
         message.setText(text);
 
-        try {
-            context.getBot().execute(message);
-        } catch (TelegramApiException e) {
-            LOGGER.error("Failed to send message to chat ID: {}", context.getUser().getTelegramId(), e);
-        }
+        context.getBot().executeAsync(message);
     }
 }
@@ -3,9 +3,11 @@ package bot_bank.service;
 
 import bot_bank.model.User;
 import bot_bank.repo.UserRepository;
+import bot_bank.repo.UserSummary;
 import lombok.AllArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,7 +17,9 @@ import java.util.List;
 /**
  * UserService provides methods for managing user operations such as finding, adding,
  * updating, and listing users. It interacts with the UserRepository to perform database
- * operations and communicates with users via Telegram messages.
+ * operations and keeps active users in the UserSessionCache, so repeated lookups by
+ * Telegram ID are served from memory. Changes of the conversation state alone are handed to
+ * the UserStateWriter instead of saving the whole user.
  */
 
 @Service
@@ -25,11 +29,26 @@ public class UserService {
     private static final Logger LOGGER = LogManager.getLogger(UserService.class);
 
     private final UserRepository userRepository;
+    private final UserSessionCache userCache;
+    private final UserStateWriter stateWriter;
 
     @Transactional(readOnly = true)
     public User findByTelegramId(Long telegramId) {
+        User cached = userCache.get(telegramId);
+        if (cached != null) {
+            LOGGER.debug("Found cached user by Telegram ID: {}", telegramId);
+            return cached;
+        }
         LOGGER.info("Finding user by Telegram ID: {}", telegramId);
-        return userRepository.findByTelegramId(telegramId);
+        User user = userRepository.findByTelegramId(telegramId);
+        if (user != null) {
+            Integer pendingState = stateWriter.getPendingState(user.getId());
+            if (pendingState != null) {
+                user.setStateId(pendingState);
+            }
+        }
+        userCache.put(user);
+        return user;
     }
 
     @Transactional
@@ -41,13 +60,72 @@ public class UserService {
     @Transactional
     public void addUser(User user) {
         LOGGER.info("Adding new user: {}", user);
-        userRepository.save(user);
+        cache(userRepository.save(user), user);
     }
 
+    /**
+     * Saves the whole user except its ban, which only setBanned writes. The given instance stays the
+     * cached one, so a ban marked on it while it was being changed is kept.
+     */
     @Transactional
     public void updateUser(User user) {
         LOGGER.info("Updating user: {}", user);
-        userRepository.save(user);
+        if (user.getId() != null) {
+            stateWriter.discard(user.getId());
+            userRepository.save(user);
+            userCache.put(user);
+        } else {
+            cache(userRepository.save(user), user);
+        }
+    }
+
+    /**
+     * Records a change of the user's conversation state only. The cached user is updated right away,
+     * while the database row is updated later by the UserStateWriter together with other state changes.
+     * A user that has not been saved yet is saved in full.
+     */
+    public void updateState(User user) {
+        if (user.getId() == null) {
+            updateUser(user);
+            return;
+        }
+        LOGGER.debug("Updating state of user with Telegram ID: {} to {}", user.getTelegramId(), user.getStateId());
+        userCache.put(user);
+        stateWriter.schedule(user.getId(), user.getStateId());
+    }
+
+    /**
+     * Bans or unbans the user with the given Telegram ID. Only the ban column is written, and the cached
+     * user is marked rather than dropped: the lane of that user may be holding the cached instance, and
+     * would otherwise put it back into the cache with the old value when it saves the user.
+     *
+     * @return false if there is no user with the given Telegram ID
+     */
+    @Transactional
+    public boolean setBanned(Long telegramId, boolean banned) {
+        if (userRepository.updateBanned(telegramId, banned) == 0) {
+            return false;
+        }
+        LOGGER.info("Set banned={} for user with Telegram ID: {}", banned, telegramId);
+        User cached = userCache.peek(telegramId);
+        if (cached != null) {
+            cached.setBanned(banned);
+        }
+        return true;
+    }
+
+    public void invalidateCachedUser(Long telegramId) {
+        userCache.invalidate(telegramId);
+    }
+
+    @Transactional(readOnly = true)
+    public List<UserSummary> findUsersAfter(long afterId, int limit) {
+        return userRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, limit));
+    }
+
+    @Transactional(readOnly = true)
+    public List<UserSummary> findUsersBefore(long beforeId, int limit) {
+        return userRepository.findByIdLessThanOrderByIdDesc(beforeId, PageRequest.of(0, limit));
     }
 
     @Transactional(readOnly = true)
@@ -55,4 +133,8 @@ public class UserService {
         LOGGER.info("Finding all users");
         return userRepository.findAll();
     }
+
+    private void cache(User saved, User user) {
+        userCache.put(saved != null ? saved : user);
+    }
 }
@@ -0,0 +1,110 @@
+package bot_bank.service;
+
+import bot_bank.model.User;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * UserSessionCache keeps recently active users in memory, keyed by their Telegram ID, so that
+ * navigating the bot does not reload the user and its cards from the database on every update.
+ * The cache is bounded: the least recently used entry is evicted when the maximum size is reached,
+ * and entries older than the configured time to live are reloaded on the next access.
+ */
+
+@Component
+public class UserSessionCache {
+
+    private static final Logger LOGGER = LogManager.getLogger(UserSessionCache.class);
+
+    private final Map<Long, Entry> entries;
+    private final long ttlMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UserSessionCache(@Value("${user.cache.max-size:10000}") int maxSize,
+                            @Value("${user.cache.ttl-minutes:10}") long ttlMinutes) {
+        this.ttlMillis = ttlMinutes * 60_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public User get(Long telegramId) {
+        synchronized (entries) {
+            Entry entry = entries.get(telegramId);
+            if (entry == null || entry.isExpired(ttlMillis)) {
+                if (entry != null) {
+                    entries.remove(telegramId);
+                }
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.user;
+        }
+    }
+
+    /**
+     * Returns the cached user even if its entry has expired, without counting a hit or a miss, or null
+     * if the user is not cached.
+     */
+    public User peek(Long telegramId) {
+        synchronized (entries) {
+            Entry entry = entries.get(telegramId);
+            return entry != null ? entry.user : null;
+        }
+    }
+
+    public void put(User user) {
+        if (user == null || user.getTelegramId() == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(user.getTelegramId(), new Entry(user));
+        }
+    }
+
+    public void invalidate(Long telegramId) {
+        synchronized (entries) {
+            if (entries.remove(telegramId) != null) {
+                LOGGER.info("Invalidated cached user with Telegram ID: {}", telegramId);
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class Entry {
+        private final User user;
+        private final long loadedAt = System.currentTimeMillis();
+
+        private Entry(User user) {
+            this.user = user;
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - loadedAt >= ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package bot_bank.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UserStateWriter persists conversation state changes of users in the background. Only the
+ * latest state id of every user is kept, so several transitions between two flushes end up as a
+ * single row in one batched UPDATE. Pending changes are flushed on a short interval and on shutdown;
+ * a state change that arrives after shutdown has started is written immediately.
+ */
+
+@Component
+public class UserStateWriter {
+
+    private static final Logger LOGGER = LogManager.getLogger(UserStateWriter.class);
+    private static final String UPDATE_STATE_SQL = "UPDATE user SET state_id = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, Integer> pending = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public UserStateWriter(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void schedule(Long userId, Integer stateId) {
+        pending.put(userId, stateId);
+        if (closed) {
+            flush();
+        }
+    }
+
+    /**
+     * Drops the pending state change of a user, used when the whole user is saved anyway.
+     */
+    public void discard(Long userId) {
+        pending.remove(userId);
+    }
+
+    public Integer getPendingState(Long userId) {
+        return pending.get(userId);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Scheduled(fixedDelayString = "${user.state.flush-interval-ms:500}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : pending.entrySet()) {
+            Long userId = entry.getKey();
+            Integer stateId = entry.getValue();
+            if (pending.remove(userId, stateId)) {
+                batch.add(new Object[]{stateId, userId});
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_STATE_SQL, batch);
+            LOGGER.debug("Flushed {} user state changes", batch.size());
+        } catch (Exception e) {
+            LOGGER.error("Failed to flush {} user state changes, will retry", batch.size(), e);
+            for (Object[] row : batch) {
+                pending.putIfAbsent((Long) row[1], (Integer) row[0]);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        LOGGER.info("Flushing {} pending user state changes before shutdown", pending.size());
+        flush();
+    }
+}
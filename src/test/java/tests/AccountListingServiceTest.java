@@ -2,24 +2,24 @@ package tests;
 
 import bot_bank.bot.BotContext;
 import bot_bank.bot.ChatBot;
-import bot_bank.model.Account;
 import bot_bank.model.User;
+import bot_bank.repo.AccountSummary;
 import bot_bank.service.AccountListingService;
 import bot_bank.service.AccountService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import static org.mockito.Mockito.any;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -50,34 +50,55 @@ class AccountListingServiceTest {
     }
 
     @Test
-    void testListAccounts_WithAccounts() throws TelegramApiException {
-        Account account1 = new Account();
-        account1.setAccountNumber("12345");
-        account1.setCurrentBalance(BigDecimal.valueOf(1000));
-        account1.setCurrency("USD");
+    void testListAccounts_WithAccounts() {
+        when(botContext.getInput()).thenReturn("/listaccounts");
+        List<AccountSummary> accounts = Arrays.asList(
+                accountSummary(1L, "12345", 100000L, "USD"),
+                accountSummary(2L, "67890", 200000L, "EUR"));
+        when(accountService.findAccountsAfter(0L, 21)).thenReturn(accounts);
 
-        Account account2 = new Account();
-        account2.setAccountNumber("67890");
-        account2.setCurrentBalance(BigDecimal.valueOf(2000));
-        account2.setCurrency("EUR");
+        accountListingService.listAccounts(botContext);
+
+        verify(accountService, times(1)).findAccountsAfter(0L, 21);
+        SendMessage message = sentMessage();
+        assertTrue(message.getText().contains("12345 1000.00 USD"));
+        assertTrue(message.getText().contains("67890 2000.00 EUR"));
+    }
 
-        List<Account> accounts = Arrays.asList(account1, account2);
-        when(accountService.findAllAccounts()).thenReturn(accounts);
+    @Test
+    void testListAccounts_NoAccounts() {
+        when(botContext.getInput()).thenReturn("/listaccounts");
+        when(accountService.findAccountsAfter(0L, 21)).thenReturn(Collections.emptyList());
 
         accountListingService.listAccounts(botContext);
 
-        verify(accountService, times(1)).findAllAccounts();
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        assertTrue(sentMessage().getText().contains("No accounts found."));
     }
 
     @Test
-    void testListAccounts_NoAccounts() throws TelegramApiException {
-        List<Account> accounts = Collections.emptyList();
-        when(accountService.findAllAccounts()).thenReturn(accounts);
+    void testListAccounts_NextPage() {
+        when(botContext.getInput()).thenReturn("/listaccounts:next:20");
+        List<AccountSummary> accounts = Collections.singletonList(accountSummary(21L, "12345", 100L, "UAH"));
+        when(accountService.findAccountsAfter(20L, 21)).thenReturn(accounts);
 
         accountListingService.listAccounts(botContext);
 
-        verify(accountService, times(1)).findAllAccounts();
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        verify(accountService, times(1)).findAccountsAfter(20L, 21);
+        assertTrue(sentMessage().getText().contains("12345 1.00 UAH"));
+    }
+
+    private SendMessage sentMessage() {
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot, times(1)).executeAsync(captor.capture());
+        return captor.getValue();
+    }
+
+    private static AccountSummary accountSummary(Long id, String number, long balance, String currency) {
+        AccountSummary summary = mock(AccountSummary.class);
+        when(summary.getId()).thenReturn(id);
+        when(summary.getAccountNumber()).thenReturn(number);
+        when(summary.getCurrentBalance()).thenReturn(balance);
+        when(summary.getCurrency()).thenReturn(currency);
+        return summary;
     }
 }
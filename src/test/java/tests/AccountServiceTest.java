@@ -8,7 +8,6 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.math.BigDecimal;
 import java.util.Collections;
 import java.util.List;
 
@@ -42,7 +41,7 @@ class AccountServiceTest {
     void testSaveAccount() {
         Account account = new Account();
         account.setAccountNumber("123456789");
-        account.setCurrentBalance(BigDecimal.valueOf(1000));
+        account.setCurrentBalance(100000L);
         accountService.saveAccount(account);
         verify(accountRepository, times(1)).save(account);
     }
@@ -0,0 +1,114 @@
+package tests;
+
+import bot_bank.bot.ChatUpdateDispatcher;
+import bot_bank.event.BotEventBus;
+import bot_bank.event.CommandEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BotEventBusTest contains unit tests for the BotEventBus class. It verifies that events reach the
+ * handlers of their type in publishing order, that an event published on its own chat's lane is handled
+ * before the tasks already queued there, that a failing handler does not stop the others, and that handling
+ * is measured.
+ */
+
+class BotEventBusTest {
+
+    private ChatUpdateDispatcher dispatcher;
+    private SimpleMeterRegistry meterRegistry;
+    private BotEventBus eventBus;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new ChatUpdateDispatcher(4, 100);
+        meterRegistry = new SimpleMeterRegistry();
+        eventBus = new BotEventBus(dispatcher, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testEventsOfOneChatAreHandledInOrder() throws InterruptedException {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(20);
+        eventBus.subscribe(CommandEvent.class, event -> {
+            handled.add(event.getCommand());
+            done.countDown();
+        });
+
+        for (int i = 0; i < 20; i++) {
+            eventBus.publish(new CommandEvent(123L, "/command" + i, null));
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++) {
+            assertEquals("/command" + i, handled.get(i));
+        }
+    }
+
+    @Test
+    void testEventPublishedOnItsLaneIsHandledBeforeQueuedTasks() throws InterruptedException {
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch queued = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        eventBus.subscribe(CommandEvent.class, event -> handled.add(event.getCommand()));
+
+        dispatcher.dispatch(123L, () -> {
+            try {
+                queued.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            eventBus.publish(new CommandEvent(123L, "/send", null));
+        });
+        dispatcher.dispatch(123L, () -> {
+            handled.add("update");
+            done.countDown();
+        });
+        queued.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("/send", "update"), handled);
+    }
+
+    @Test
+    void testFailingHandlerDoesNotStopOtherHandlers() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        eventBus.subscribe(CommandEvent.class, event -> {
+            throw new IllegalStateException("boom");
+        });
+        eventBus.subscribe(CommandEvent.class, event -> done.countDown());
+
+        eventBus.publish(new CommandEvent(123L, "/rates", null));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testHandlingIsMeasured() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        eventBus.subscribe(CommandEvent.class, event -> done.countDown());
+
+        eventBus.publish(new CommandEvent(123L, "/rates", null));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+        assertEquals(1, meterRegistry.get("bot.events.handle").tag("event", "CommandEvent").timer().count());
+        assertEquals(0, eventBus.getQueuedEvents());
+    }
+}
@@ -0,0 +1,81 @@
+package tests;
+
+import bot_bank.bot.BotContext;
+import bot_bank.bot.BotState;
+import bot_bank.bot.ChatBot;
+import bot_bank.bot.ChatSession;
+import bot_bank.model.User;
+import bot_bank.service.ValidationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * BotStateTest contains unit tests for the BotState enum. It verifies that the decisions and input
+ * retry counters of a state are kept per chat session instead of being shared between users.
+ */
+
+class BotStateTest {
+
+    @Mock
+    private ValidationService validationService;
+
+    @Mock
+    private ChatBot bot;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(validationService.isValidEmail("wrong")).thenReturn(false);
+        when(validationService.isValidEmail("user@mail.com")).thenReturn(true);
+    }
+
+    @Test
+    void testWrongEmailStaysInState() {
+        BotContext context = contextFor(new ChatSession(1L), 1L, "wrong");
+
+        BotState.ENTER_EMAIL.handleInput(context);
+
+        assertEquals(BotState.ENTER_EMAIL, BotState.ENTER_EMAIL.nextState(context));
+    }
+
+    @Test
+    void testInputProblemsAreCountedPerSession() {
+        ChatSession first = new ChatSession(1L);
+        ChatSession second = new ChatSession(2L);
+
+        for (int i = 0; i < 4; i++) {
+            BotState.ENTER_EMAIL.handleInput(contextFor(first, 1L, "wrong"));
+        }
+        BotContext secondContext = contextFor(second, 2L, "wrong");
+        BotState.ENTER_EMAIL.handleInput(secondContext);
+
+        assertEquals(BotState.START, BotState.ENTER_EMAIL.nextState(contextFor(first, 1L, "wrong")));
+        assertEquals(BotState.ENTER_EMAIL, BotState.ENTER_EMAIL.nextState(secondContext));
+    }
+
+    @Test
+    void testValidEmailMovesToApproved() {
+        BotContext context = contextFor(new ChatSession(1L), 1L, "user@mail.com");
+
+        BotState.ENTER_EMAIL.handleInput(context);
+
+        assertEquals(BotState.APPROVED, BotState.ENTER_EMAIL.nextState(context));
+    }
+
+    private BotContext contextFor(ChatSession session, long chatId, String input) {
+        BotContext context = mock(BotContext.class);
+        User user = new User(chatId, BotState.ENTER_EMAIL.ordinal());
+        when(context.getSession()).thenReturn(session);
+        when(context.getUser()).thenReturn(user);
+        when(context.getInput()).thenReturn(input);
+        when(context.getValidationService()).thenReturn(validationService);
+        when(context.getBot()).thenReturn(bot);
+        return context;
+    }
+}
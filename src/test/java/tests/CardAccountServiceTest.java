@@ -17,7 +17,6 @@ import org.mockito.MockitoAnnotations;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -61,7 +60,7 @@ class CardAccountServiceTest {
 
     @Test
     void testCreateCreditCardAndAccount() throws TelegramApiException {
-        BigDecimal initialBalance = BigDecimal.valueOf(1000);
+        long initialBalance = 100000L;
         String currency = "USD";
         String accountNumber = "123456";
         String cardNumber = "654321";
@@ -84,9 +83,9 @@ class CardAccountServiceTest {
         verify(cardService, times(1)).addCard(cardCaptor.capture());
 
 
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        verify(bot, times(1)).executeAsync(any(SendMessage.class));
 
-        assertEquals(initialBalance, capturedAccount.getCreditBalance());
+        assertEquals(initialBalance, capturedAccount.getCreditBalance().longValue());
         assertEquals(initialBalance, capturedAccount.getCurrentBalance());
         assertEquals(currency, capturedAccount.getCurrency());
     }
@@ -115,9 +114,9 @@ class CardAccountServiceTest {
         verify(cardService, times(1)).addCard(cardCaptor.capture());
 
 
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        verify(bot, times(1)).executeAsync(any(SendMessage.class));
 
-        assertEquals(BigDecimal.ZERO, capturedAccount.getCurrentBalance());
+        assertEquals(0, capturedAccount.getCurrentBalance());
         assertEquals(currency, capturedAccount.getCurrency());
     }
 }
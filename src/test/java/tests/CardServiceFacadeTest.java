@@ -2,25 +2,26 @@ package tests;
 
 import bot_bank.bot.BotContext;
 import bot_bank.bot.ChatBot;
-import bot_bank.model.Card;
 import bot_bank.model.CardType;
 import bot_bank.model.User;
+import bot_bank.repo.CardSummary;
 import bot_bank.service.CardService;
 import bot_bank.service.CardServiceFacade;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import static org.mockito.Mockito.any;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -47,38 +48,46 @@ class CardServiceFacadeTest {
         MockitoAnnotations.openMocks(this);
         when(botContext.getUser()).thenReturn(user);
         when(botContext.getBot()).thenReturn(bot);
+        when(botContext.getInput()).thenReturn("/listcards");
         when(user.getTelegramId()).thenReturn(123456789L);
     }
 
     @Test
-    void testListCards_WithCards() throws TelegramApiException {
-        Card card1 = new Card();
-        card1.setCardNumber("12345");
-        card1.setExpirationDate(LocalDate.of(2024, 12, 1));
-        card1.setCardType(CardType.CREDIT);
-
-        Card card2 = new Card();
-        card2.setCardNumber("67890");
-        card2.setExpirationDate(LocalDate.of(2023, 11, 1));
-        card2.setCardType(CardType.DEBIT);
-
-        List<Card> cards = Arrays.asList(card1, card2);
-        when(cardService.findAllCards()).thenReturn(cards);
+    void testListCards_WithCards() {
+        List<CardSummary> cards = Arrays.asList(
+                cardSummary(1L, "12345", LocalDate.of(2024, 12, 1), CardType.CREDIT),
+                cardSummary(2L, "67890", LocalDate.of(2025, 6, 1), CardType.DEBIT));
+        when(cardService.findCardsAfter(0L, 21)).thenReturn(cards);
 
         cardServiceFacade.listCards(botContext);
 
-        verify(cardService, times(1)).findAllCards();
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        verify(cardService, times(1)).findCardsAfter(0L, 21);
+        SendMessage message = sentMessage();
+        assertTrue(message.getText().contains("12345 2024-12-01 CREDIT"));
+        assertTrue(message.getText().contains("67890 2025-06-01 DEBIT"));
     }
 
     @Test
-    void testListCards_NoCards() throws TelegramApiException {
-        List<Card> cards = Collections.emptyList();
-        when(cardService.findAllCards()).thenReturn(cards);
+    void testListCards_NoCards() {
+        when(cardService.findCardsAfter(0L, 21)).thenReturn(Collections.emptyList());
 
         cardServiceFacade.listCards(botContext);
 
-        verify(cardService, times(1)).findAllCards();
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        assertTrue(sentMessage().getText().contains("No cards found."));
+    }
+
+    private SendMessage sentMessage() {
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot, times(1)).executeAsync(captor.capture());
+        return captor.getValue();
+    }
+
+    private static CardSummary cardSummary(Long id, String number, LocalDate expirationDate, CardType type) {
+        CardSummary summary = mock(CardSummary.class);
+        when(summary.getId()).thenReturn(id);
+        when(summary.getCardNumber()).thenReturn(number);
+        when(summary.getExpirationDate()).thenReturn(expirationDate);
+        when(summary.getCardType()).thenReturn(type);
+        return summary;
     }
 }
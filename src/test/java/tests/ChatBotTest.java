@@ -1,34 +1,54 @@
 package tests;
 
+import bot_bank.bot.BotState;
 import bot_bank.bot.ChatBot;
-import bot_bank.event.BotEvent;
+import bot_bank.bot.ChatSession;
+import bot_bank.bot.ChatSessionRegistry;
+import bot_bank.bot.ChatUpdateDispatcher;
+import bot_bank.bot.OutboundMessageDispatcher;
+import bot_bank.event.BotEventBus;
+import bot_bank.event.CommandEvent;
 import bot_bank.model.User;
 import bot_bank.service.AccountService;
 import bot_bank.service.CardAccountService;
 import bot_bank.service.CardService;
 import bot_bank.service.CurrencyRateService;
+import bot_bank.service.PayoutService;
+import bot_bank.service.StatementService;
 import bot_bank.service.TransactionService;
 import bot_bank.service.UserService;
 import bot_bank.service.ValidationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
-import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.test.util.ReflectionTestUtils;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.util.concurrent.ExecutorService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -36,7 +56,8 @@ import static org.mockito.Mockito.when;
 
 /**
  * ChatBotTest contains unit tests for the ChatBot class. It verifies the correctness
- * of methods related to handling updates received from Telegram
+ * of methods related to handling updates received from Telegram, and that the command of a callback
+ * runs before the chat's next update
  */
 class ChatBotTest {
 
@@ -44,7 +65,7 @@ class ChatBotTest {
     private UserService userService;
 
     @Mock
-    private ApplicationEventPublisher eventPublisher;
+    private BotEventBus eventBus;
 
     @Mock
     private CardService cardService;
@@ -65,7 +86,19 @@ class ChatBotTest {
     private ValidationService validationService;
 
     @Mock
-    private ExecutorService executorService;
+    private PayoutService payoutService;
+
+    @Mock
+    private StatementService statementService;
+
+    @Mock
+    private ChatUpdateDispatcher dispatcher;
+
+    @Mock
+    private ChatSessionRegistry sessions;
+
+    @Mock
+    private OutboundMessageDispatcher outbound;
 
     @InjectMocks
     private ChatBot chatBot;
@@ -73,13 +106,14 @@ class ChatBotTest {
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
-        chatBot = spy(new ChatBot(userService, eventPublisher, cardService, cardAccountService, transactionService, accountService, currencyRateService, validationService));
+        chatBot = spy(new ChatBot(userService, eventBus, cardService, cardAccountService, transactionService, accountService, currencyRateService, validationService, payoutService, statementService, dispatcher, sessions, outbound));
+        when(sessions.get(anyLong())).thenAnswer(invocation -> new ChatSession(invocation.getArgument(0)));
+        when(outbound.send(any(SendMessage.class), any())).thenReturn(CompletableFuture.completedFuture(null));
         doAnswer(invocation -> {
-            Runnable task = invocation.getArgument(0);
+            Runnable task = invocation.getArgument(1);
             task.run();
             return null;
-        }).when(executorService).submit(any(Runnable.class));
-        ReflectionTestUtils.setField(chatBot, "executorService", executorService);
+        }).when(dispatcher).dispatch(anyLong(), any(Runnable.class));
     }
 
     @Test
@@ -102,7 +136,42 @@ class ChatBotTest {
         chatBot.onUpdateReceived(update);
 
         verify(userService, times(1)).findByTelegramId(123L);
-        verify(eventPublisher, times(1)).publishEvent(any(BotEvent.class));
+        verify(eventBus, times(1)).publish(any(CommandEvent.class));
+    }
+
+    @Test
+    void testCallbackCommandRunsBeforeTheNextUpdateOfTheChat() throws InterruptedException {
+        ChatUpdateDispatcher lanes = new ChatUpdateDispatcher(2, 100);
+        BotEventBus bus = new BotEventBus(lanes, new SimpleMeterRegistry());
+        ChatBot bot = new ChatBot(userService, bus, cardService, cardAccountService, transactionService, accountService,
+                currencyRateService, validationService, payoutService, statementService, lanes, sessions, outbound);
+        List<String> handled = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch textQueued = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        User user = new User();
+        user.setTelegramId(123L);
+        user.setStateId(0);
+        when(userService.findByTelegramId(123L)).thenAnswer(invocation -> {
+            textQueued.await(5, TimeUnit.SECONDS);
+            return user;
+        });
+        bus.subscribe(CommandEvent.class, event -> handled.add(event.getCommand()));
+        doAnswer(invocation -> {
+            handled.add("text");
+            done.countDown();
+            return null;
+        }).when(userService).updateState(any(User.class));
+
+        try {
+            bot.onUpdateReceived(callbackUpdate(123L, "/send"));
+            bot.onUpdateReceived(textUpdate(123L, "hello"));
+            textQueued.countDown();
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("/send", "text"), handled);
+        } finally {
+            lanes.shutdown();
+        }
     }
 
     @Test
@@ -124,7 +193,32 @@ class ChatBotTest {
         chatBot.onUpdateReceived(update);
 
         verify(userService, times(1)).findByTelegramId(123L);
-        verify(userService, times(1)).updateUser(any(User.class));
+        verify(userService, times(1)).updateState(any(User.class));
+        verify(userService, never()).updateUser(any(User.class));
+    }
+
+    @Test
+    void testOnUpdateReceived_withProfileInputSavesWholeUser() {
+        Update update = mock(Update.class);
+        Message message = mock(Message.class);
+
+        when(update.hasMessage()).thenReturn(true);
+        when(update.getMessage()).thenReturn(message);
+        when(message.hasText()).thenReturn(true);
+        when(message.getText()).thenReturn("John");
+        when(message.getChatId()).thenReturn(123L);
+        when(message.getMessageId()).thenReturn(1);
+        User user = new User();
+        user.setTelegramId(123L);
+        user.setStateId(BotState.ENTER_FIRST_NAME.ordinal());
+        when(userService.findByTelegramId(123L)).thenReturn(user);
+
+        chatBot.onUpdateReceived(update);
+
+        assertEquals("John", user.getFirstName());
+        assertEquals(BotState.ENTER_LAST_NAME.ordinal(), user.getStateId());
+        verify(userService, times(1)).updateUser(user);
+        verify(userService, never()).updateState(any(User.class));
     }
 
 
@@ -143,4 +237,92 @@ void testSendMessage() throws TelegramApiException {
     verify(chatBot, times(1)).execute(any(SendMessage.class));
 }
 
+    @Test
+    void testExecuteAsyncDoesNotWaitForSend() {
+        SendMessage message = new SendMessage();
+        message.setChatId("123");
+        message.setText("Hello, world!");
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        when(outbound.send(any(SendMessage.class), any())).thenReturn(pending);
+
+        CompletableFuture<Void> result = chatBot.executeAsync(message);
+
+        assertFalse(result.isDone());
+        pending.complete(null);
+        assertTrue(result.isDone());
+    }
+
+    @Test
+    void testReplyBufferMergesPlainTextReplies() {
+        chatBot.withReplyBuffer(() -> {
+            chatBot.executeAsync(textMessage("Password verified."));
+            chatBot.executeAsync(textMessage("Please, enter amount:"));
+        });
+
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(outbound, times(1)).send(captor.capture(), any());
+        assertEquals("Password verified.\n\nPlease, enter amount:", captor.getValue().getText());
+    }
+
+    @Test
+    void testReplyBufferKeepsKeyboardRepliesInOrder() {
+        SendMessage menu = textMessage("Choose an option:");
+        menu.setReplyMarkup(new InlineKeyboardMarkup());
+
+        chatBot.withReplyBuffer(() -> {
+            chatBot.executeAsync(textMessage("Card created."));
+            chatBot.executeAsync(menu);
+            chatBot.executeAsync(textMessage("Done."));
+        });
+
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(outbound, times(3)).send(captor.capture(), any());
+        assertEquals("Card created.", captor.getAllValues().get(0).getText());
+        assertSame(menu, captor.getAllValues().get(1));
+        assertEquals("Done.", captor.getAllValues().get(2).getText());
+    }
+
+    @Test
+    void testReplyBufferSplitsAtMessageSizeLimit() {
+        String longText = "a".repeat(3000);
+
+        chatBot.withReplyBuffer(() -> {
+            chatBot.executeAsync(textMessage(longText));
+            chatBot.executeAsync(textMessage(longText));
+        });
+
+        verify(outbound, times(2)).send(any(SendMessage.class), any());
+    }
+
+    private static Update callbackUpdate(long chatId, String data) {
+        Update update = mock(Update.class);
+        CallbackQuery callbackQuery = mock(CallbackQuery.class);
+        Message message = mock(Message.class);
+        when(update.hasCallbackQuery()).thenReturn(true);
+        when(update.getCallbackQuery()).thenReturn(callbackQuery);
+        when(callbackQuery.getData()).thenReturn(data);
+        when(callbackQuery.getMessage()).thenReturn(message);
+        when(message.getChatId()).thenReturn(chatId);
+        when(message.getMessageId()).thenReturn(1);
+        return update;
+    }
+
+    private static Update textUpdate(long chatId, String text) {
+        Update update = mock(Update.class);
+        Message message = mock(Message.class);
+        when(update.hasMessage()).thenReturn(true);
+        when(update.getMessage()).thenReturn(message);
+        when(message.hasText()).thenReturn(true);
+        when(message.getText()).thenReturn(text);
+        when(message.getChatId()).thenReturn(chatId);
+        when(message.getMessageId()).thenReturn(2);
+        return update;
+    }
+
+    private static SendMessage textMessage(String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId("123");
+        message.setText(text);
+        return message;
+    }
 }
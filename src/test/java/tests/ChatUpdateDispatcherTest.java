@@ -0,0 +1,105 @@
+package tests;
+
+import bot_bank.bot.ChatUpdateDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ChatUpdateDispatcherTest contains unit tests for the ChatUpdateDispatcher class. It verifies that
+ * tasks of one chat run in order and one at a time, while tasks of different chats run in parallel.
+ */
+
+class ChatUpdateDispatcherTest {
+
+    private ChatUpdateDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new ChatUpdateDispatcher(4, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testTasksOfOneChatRunInOrder() throws InterruptedException {
+        List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(50);
+
+        for (int i = 0; i < 50; i++) {
+            int number = i;
+            dispatcher.dispatch(123L, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                processed.add(number);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, processed.get(i));
+        }
+    }
+
+    @Test
+    void testDifferentChatsRunInParallel() throws InterruptedException {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+
+        Runnable task = () -> {
+            bothStarted.countDown();
+            try {
+                bothStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+
+        dispatcher.dispatch(1L, task);
+        dispatcher.dispatch(2L, task);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, bothStarted.getCount());
+    }
+
+    @Test
+    void testFailingTaskDoesNotBlockChat() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.dispatch(123L, () -> {
+            throw new IllegalStateException("boom");
+        });
+        dispatcher.dispatch(123L, done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTaskQueuedByWorkerDoesNotWaitForCapacity() throws InterruptedException {
+        ChatUpdateDispatcher small = new ChatUpdateDispatcher(1, 1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        small.dispatch(123L, () -> small.dispatch(123L, done::countDown));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        small.shutdown();
+    }
+}
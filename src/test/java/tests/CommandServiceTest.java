@@ -8,17 +8,19 @@ import bot_bank.model.CardType;
 import bot_bank.model.TransactionDetail;
 import bot_bank.model.User;
 import bot_bank.service.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import bot_bank.bot.ChatBot;
-import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -58,6 +60,12 @@ class CommandServiceTest {
     @Mock
     private  UserListingService userListingService;
 
+    @Mock
+    private HistoryService historyService;
+
+    @Mock
+    private StatementService statementService;
+
     @Mock
     private BotContext context;
 
@@ -67,13 +75,20 @@ class CommandServiceTest {
     @Mock
     private  ChatBot bot;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private CommandRegistry commandRegistry;
+
     private CommandService commandService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        commandRegistry = new CommandRegistry(meterRegistry);
         commandService = new CommandService(userService, cardService, cardAccountService, rateService,
-                transactionService, accountListingService, messageService, cardServiceFacade, userListingService);
+                transactionService, accountListingService, messageService, cardServiceFacade, userListingService,
+                historyService, statementService, commandRegistry);
         when(context.getUser()).thenReturn(user);
         when(context.getCardAccountService()).thenReturn(cardAccountService);
         when(context.getBot()).thenReturn(bot);
@@ -87,7 +102,8 @@ class CommandServiceTest {
 
         verify(user).setStateId(BotState.ENTER_PASSWORD_FOR_UPDATE.ordinal());
         verify(messageService).sendMessage(123L, "You selected to update.");
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -98,7 +114,8 @@ class CommandServiceTest {
 
         verify(user).setStateId(BotState.ADD_CARD.ordinal());
         verify(messageService).sendMessage(123L, "You selected to add a card.");
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -108,6 +125,16 @@ class CommandServiceTest {
         verify(userListingService).listUsers(context);
     }
 
+    @Test
+    void testHandleCommandListUsersNextPage() {
+        when(user.getTelegramId()).thenReturn(123L);
+
+        commandService.handleCommand("/listusers:next:20", context);
+
+        verify(userListingService).listUsers(context);
+        verify(userService, never()).updateUser(user);
+    }
+
     @Test
     void testHandleCommandBanUser() {
         when(user.getTelegramId()).thenReturn(123L);
@@ -116,7 +143,8 @@ class CommandServiceTest {
 
         verify(user).setStateId(BotState.BAN_USER.ordinal());
         verify(messageService).sendMessage(123L, "You selected to ban user.");
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -127,7 +155,8 @@ class CommandServiceTest {
 
         verify(user).setStateId(BotState.UNBAN_USER.ordinal());
         verify(messageService).sendMessage(123L, "You selected to unban user.");
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -136,7 +165,7 @@ class CommandServiceTest {
 
         commandService.handleCommand("credit", context);
 
-        verify(cardAccountService).createCreditCardAndAccount(user, BigDecimal.valueOf(5000),
+        verify(cardAccountService).createCreditCardAndAccount(user, 500000L,
                 "UAH", context);
 
         verify(user).setStateId(BotState.MENU.ordinal());
@@ -151,7 +180,8 @@ class CommandServiceTest {
 
         verify(messageService).sendMessage(123L, "You selected to add a debit card.");
         verify(user).setStateId(BotState.CHOSE_CURRENCY.ordinal());
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -188,7 +218,7 @@ class CommandServiceTest {
         card.setCvv("123");
         card.setCardType(CardType.DEBIT);
         Account account = new Account();
-        account.setCurrentBalance(new BigDecimal("1000.00"));
+        account.setCurrentBalance(100000L);
         card.setAccount(account);
 
         when(user.getTelegramId()).thenReturn(123L);
@@ -211,6 +241,8 @@ class CommandServiceTest {
         commandService.handleCommand("/rates", context);
 
         verify(messageService).sendMessage(123L, rateService.getFormattedRates());
+        verify(userService, never()).updateUser(user);
+        verify(userService, never()).updateState(user);
     }
 
     @Test
@@ -231,7 +263,8 @@ class CommandServiceTest {
         commandService.handleCommand("/hi", context);
 
         verify(user).setStateId(BotState.ENTER_PHONE.ordinal());
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -256,7 +289,8 @@ class CommandServiceTest {
 
         verify(user).setStateId(BotState.BAN_CARD.ordinal());
         verify(messageService).sendMessage(123L, "You selected to ban card.");
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -267,7 +301,8 @@ class CommandServiceTest {
 
         verify(user).setStateId(BotState.UNBAN_CARD.ordinal());
         verify(messageService).sendMessage(123L, "You selected to unban card.");
-        verify(userService).updateUser(user);
+        verify(userService).updateState(user);
+        verify(userService, never()).updateUser(user);
     }
 
     @Test
@@ -277,5 +312,29 @@ class CommandServiceTest {
         commandService.handleCommand("invalid_option", context);
 
         verify(messageService).sendMessage(123L, "Invalid option.");
+        verify(userService, never()).updateUser(user);
+    }
+
+    @Test
+    void testHandleRegisteredCommand() {
+        when(user.getTelegramId()).thenReturn(123L);
+        commandRegistry.register("/custom", CommandRegistry.Mutation.NONE,
+                ctx -> messageService.sendMessage(123L, "Custom command."));
+
+        commandService.handleCommand("/custom", context);
+
+        verify(messageService).sendMessage(123L, "Custom command.");
+        verify(userService, never()).updateUser(user);
+        verify(userService, never()).updateState(user);
+    }
+
+    @Test
+    void testHandleCommandIsMeasured() {
+        when(user.getTelegramId()).thenReturn(123L);
+
+        commandService.handleCommand("/rates", context);
+        commandService.handleCommand("/rates", context);
+
+        assertEquals(2, meterRegistry.get("bot.commands").tag("command", "/rates").timer().count());
     }
 }
@@ -1,22 +1,28 @@
 package tests;
 
+import bot_bank.ledger.ShardedLedger;
 import bot_bank.model.Account;
 import bot_bank.model.Credit;
+import bot_bank.model.Money;
 import bot_bank.repo.AccountRepository;
 import bot_bank.repo.CreditRepository;
 import bot_bank.service.CreditProcessingService;
+import bot_bank.service.TransferEngine.Outcome;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -29,32 +35,58 @@ class CreditProcessingServiceTest {
     @Mock
     private AccountRepository accountRepository;
 
-    @InjectMocks
+    @Mock
+    private ShardedLedger ledger;
+
     private CreditProcessingService creditProcessingService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        creditProcessingService = new CreditProcessingService(creditRepository, accountRepository, Optional.empty());
     }
 
     @Test
     void testCheckAndApplyCredits_WithAccounts() {
         Account account = new Account();
+        account.setId(5L);
         account.setAccountNumber("1234567890");
-        account.setCurrentBalance(new BigDecimal(100));
-        account.setCreditBalance(new BigDecimal(200));
+        account.setCurrentBalance(10000L);
+        account.setCreditBalance(20000L);
         account.setLastCheckedDate(LocalDateTime.now().minusMonths(2));
         account.setCreatedAt(LocalDateTime.now().minusMonths(3));
 
         List<Account> accounts = Arrays.asList(account);
 
         when(accountRepository.findAllByCurrentBalanceLessThanCreditBalance()).thenReturn(accounts);
+        when(accountRepository.charge(5L, 500L)).thenReturn(true);
 
         creditProcessingService.checkAndApplyCredits();
 
         verify(accountRepository, times(1)).findAllByCurrentBalanceLessThanCreditBalance();
+        verify(accountRepository, times(1)).charge(5L, 500L);
         verify(creditRepository, times(1)).save(any(Credit.class));
-        verify(accountRepository, times(1)).save(any(Account.class));
+        verify(accountRepository, times(1)).updateLastCheckedDate(eq(5L), any(LocalDateTime.class));
+        verify(accountRepository, never()).save(any(Account.class));
+        assertEquals(10000L, account.getCurrentBalance());
+    }
+
+    @Test
+    void testInterestOfADeletedAccountIsNotRecorded() {
+        Account account = new Account();
+        account.setId(5L);
+        account.setAccountNumber("1234567890");
+        account.setCurrentBalance(10000L);
+        account.setCreditBalance(20000L);
+        account.setLastCheckedDate(LocalDateTime.now().minusMonths(2));
+        account.setCreatedAt(LocalDateTime.now().minusMonths(3));
+        when(accountRepository.findAllByCurrentBalanceLessThanCreditBalance()).thenReturn(List.of(account));
+        when(accountRepository.charge(5L, 500L)).thenReturn(false);
+
+        creditProcessingService.checkAndApplyCredits();
+
+        verify(creditRepository, never()).save(any(Credit.class));
+        verify(accountRepository, never()).updateLastCheckedDate(any(), any());
     }
 
     @Test
@@ -69,4 +101,27 @@ class CreditProcessingServiceTest {
         verify(creditRepository, times(0)).save(any(Credit.class));
         verify(accountRepository, times(0)).save(any(Account.class));
     }
+
+    @Test
+    void testInterestIsChargedThroughTheLedger() {
+        Account account = new Account();
+        account.setId(5L);
+        account.setAccountNumber("1234567890");
+        account.setCurrency("UAH");
+        account.setCurrentBalance(10000L);
+        account.setCreditBalance(20000L);
+        account.setLastCheckedDate(LocalDateTime.now().minusMonths(2));
+        account.setCreatedAt(LocalDateTime.now().minusMonths(3));
+        when(accountRepository.findAllByCurrentBalanceLessThanCreditBalance()).thenReturn(List.of(account));
+        when(ledger.charge(5L, Money.of(500, "UAH"), "Credit interest"))
+                .thenReturn(CompletableFuture.completedFuture(Outcome.COMPLETED));
+
+        new CreditProcessingService(creditRepository, accountRepository, Optional.of(ledger)).checkAndApplyCredits();
+
+        verify(ledger, times(1)).charge(5L, Money.of(500, "UAH"), "Credit interest");
+        verify(creditRepository, times(1)).save(any(Credit.class));
+        verify(accountRepository, times(1)).updateLastCheckedDate(eq(5L), any(LocalDateTime.class));
+        verify(accountRepository, never()).save(any(Account.class));
+        assertEquals(10000L, account.getCurrentBalance());
+    }
 }
@@ -11,7 +11,7 @@ import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
@@ -42,36 +42,27 @@ class CurrencyRateServiceTest {
         );
         when(rateRetriever.getRates()).thenReturn(rates);
 
-        Double rate = currencyRateService.getRate("USD", "EUR");
-        assertNotNull(rate);
+        double rate = currencyRateService.getRate("USD", "EUR");
         assertEquals(1.0 / 1.18, rate);
 
         rate = currencyRateService.getRate("EUR", "USD");
-        assertNotNull(rate);
         assertEquals(1.18, rate);
 
         rate = currencyRateService.getRate("USD", "UAH");
-        assertNotNull(rate);
         assertEquals(41.84 * (1.0 / 1.18), rate);
 
         rate = currencyRateService.getRate("UAH", "USD");
-        assertNotNull(rate);
         assertEquals(1.0 / (41.84 * (1.0 / 1.18)), rate);
 
         rate = currencyRateService.getRate("EUR", "UAH");
-        assertNotNull(rate);
         assertEquals(41.84, rate);
 
         rate = currencyRateService.getRate("UAH", "EUR");
-        assertNotNull(rate);
         assertEquals(1.0 / 41.84, rate);
 
         // Test invalid currencies
-        rate = currencyRateService.getRate("USD", "GBP");
-        assertNull(rate);
-
-        rate = currencyRateService.getRate("GBP", "USD");
-        assertNull(rate);
+        assertTrue(Double.isNaN(currencyRateService.getRate("USD", "GBP")));
+        assertTrue(Double.isNaN(currencyRateService.getRate("GBP", "USD")));
     }
 
     @Test
@@ -101,4 +92,31 @@ class CurrencyRateServiceTest {
         assertNotNull(formattedRates);
         assertEquals("Error.", formattedRates);
     }
+
+    @Test
+    void testFormattedRatesAreRenderedOncePerSnapshot() {
+        Map<String, Double> rates = Map.of(
+                "USD", 1.18,
+                "EUR", 1.0,
+                "UAH", 41.84
+        );
+        when(rateRetriever.getRates()).thenReturn(rates);
+
+        String first = currencyRateService.getFormattedRates();
+        assertSame(first, currencyRateService.getFormattedRates());
+
+        when(rateRetriever.getRates()).thenReturn(Map.of("USD", 1.2, "EUR", 1.0, "UAH", 42.0));
+        assertTrue(currencyRateService.getFormattedRates().contains("USD → EUR: 1,20"));
+        assertEquals(1.2, currencyRateService.getRate("EUR", "USD"));
+    }
+
+    @Test
+    void testGetRateWhenCurrencyIsMissingFromRates() {
+        when(rateRetriever.getRates()).thenReturn(Map.of("USD", 1.18, "EUR", 1.0));
+
+        assertEquals(1.0 / 1.18, currencyRateService.getRate("USD", "EUR"));
+        assertTrue(Double.isNaN(currencyRateService.getRate("USD", "UAH")));
+        assertEquals(1.0, currencyRateService.getRate("USD", "USD"));
+        assertTrue(Double.isNaN(currencyRateService.getRate("UAH", "UAH")));
+    }
 }
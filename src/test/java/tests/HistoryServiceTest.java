@@ -0,0 +1,207 @@
+package tests;
+
+import bot_bank.bot.BotContext;
+import bot_bank.bot.ChatBot;
+import bot_bank.model.Account;
+import bot_bank.model.Card;
+import bot_bank.model.User;
+import bot_bank.repo.TransactionRepository;
+import bot_bank.repo.TransactionSummary;
+import bot_bank.service.CardService;
+import bot_bank.service.HistoryService;
+import bot_bank.service.MessageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.PageRequest;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * HistoryServiceTest contains unit tests for the HistoryService class. It verifies that the history of an
+ * account of the user is read a page at a time with the keyset queries, newest first, continuing from the date
+ * of the transaction next to the page, that a user with several cards chooses the card first, and that the
+ * history of an account of another user is not shown.
+ */
+
+class HistoryServiceTest {
+
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    private static final LocalDateTime DATE = LocalDateTime.of(2026, 10, 1, 12, 30);
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private BotContext botContext;
+
+    @Mock
+    private ChatBot bot;
+
+    @Mock
+    private User user;
+
+    @InjectMocks
+    private HistoryService historyService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(botContext.getUser()).thenReturn(user);
+        when(botContext.getBot()).thenReturn(bot);
+        when(user.getId()).thenReturn(1L);
+        when(user.getTelegramId()).thenReturn(123456789L);
+        List<Card> cards = List.of(card("1111", 5L));
+        when(cardService.getCardsByUserId(1L)).thenReturn(cards);
+    }
+
+    @Test
+    void testFirstPageOfTheOnlyCard() {
+        when(botContext.getInput()).thenReturn("/history");
+        List<TransactionSummary> page = Arrays.asList(
+                transaction(25L, -15050L, "A2", null),
+                transaction(21L, 2000L, "A3", null),
+                transaction(17L, -300L, null, "External recipient: 5555"));
+        when(transactionRepository.findHistoryBefore(5L, LATEST, Long.MAX_VALUE, 0, PageRequest.of(0, 21))).thenReturn(page);
+
+        historyService.showHistory(botContext);
+
+        String text = sentMessage().getText();
+        assertTrue(text.contains("History of card 1111:"));
+        assertTrue(text.contains("2026-10-01 12:30 -150.50 UAH to A2"));
+        assertTrue(text.contains("2026-10-01 12:30 +20.00 UAH from A3"));
+        assertTrue(text.contains("-3.00 UAH to External recipient: 5555"));
+    }
+
+    @Test
+    void testNextPageContinuesAfterTheOldestTransactionShown() {
+        when(botContext.getInput()).thenReturn("/history:5:next:41");
+        List<TransactionSummary> page = new ArrayList<>();
+        for (long id = 37; id >= 17; id--) {
+            page.add(transaction(id, 100L, null, null));
+        }
+        when(transactionRepository.findLegDate(10L, 1)).thenReturn(Optional.of(DATE));
+        when(transactionRepository.findHistoryBefore(5L, DATE, 10L, 1, PageRequest.of(0, 21))).thenReturn(page);
+
+        historyService.showHistory(botContext);
+
+        SendMessage message = sentMessage();
+        List<InlineKeyboardButton> buttons = ((InlineKeyboardMarkup) message.getReplyMarkup()).getKeyboard().get(0);
+        assertEquals("/history:5:prev:37", buttons.get(0).getCallbackData());
+        assertEquals("/history:5:next:18", buttons.get(1).getCallbackData());
+    }
+
+    @Test
+    void testPreviousPageReadsNewerTransactions() {
+        when(botContext.getInput()).thenReturn("/history:5:prev:41");
+        List<TransactionSummary> page = Arrays.asList(transaction(45L, 100L, null, null), transaction(49L, 200L, null, null));
+        when(transactionRepository.findLegDate(10L, 1)).thenReturn(Optional.of(DATE));
+        when(transactionRepository.findHistoryAfter(5L, DATE, 10L, 1, PageRequest.of(0, 21))).thenReturn(page);
+
+        historyService.showHistory(botContext);
+
+        String text = sentMessage().getText();
+        assertTrue(text.indexOf("+2.00 UAH") < text.indexOf("+1.00 UAH"));
+    }
+
+    @Test
+    void testNextPageOfAnUnknownTransactionStartsFromTheNewest() {
+        when(botContext.getInput()).thenReturn("/history:5:next:41");
+        List<TransactionSummary> page = List.of(transaction(45L, 100L, null, null));
+        when(transactionRepository.findLegDate(10L, 1)).thenReturn(Optional.empty());
+        when(transactionRepository.findHistoryBefore(5L, LATEST, Long.MAX_VALUE, 0, PageRequest.of(0, 21))).thenReturn(page);
+
+        historyService.showHistory(botContext);
+
+        assertTrue(sentMessage().getText().contains("+1.00 UAH"));
+    }
+
+    @Test
+    void testUserWithSeveralCardsChoosesTheCard() {
+        when(botContext.getInput()).thenReturn("/history");
+        List<Card> cards = List.of(card("1111", 5L), card("2222", 6L));
+        when(cardService.getCardsByUserId(1L)).thenReturn(cards);
+
+        historyService.showHistory(botContext);
+
+        List<List<InlineKeyboardButton>> rows = ((InlineKeyboardMarkup) sentMessage().getReplyMarkup()).getKeyboard();
+        assertEquals("/history:5", rows.get(0).get(0).getCallbackData());
+        assertEquals("/history:6", rows.get(1).get(0).getCallbackData());
+        verify(transactionRepository, never()).findHistoryBefore(anyLong(), any(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void testAccountOfAnotherUserIsNotShown() {
+        when(botContext.getInput()).thenReturn("/history:7");
+
+        historyService.showHistory(botContext);
+
+        verify(messageService).sendMessage(123456789L, "Account not found.");
+        verify(transactionRepository, never()).findHistoryBefore(anyLong(), any(), anyLong(), anyInt(), any());
+    }
+
+    @Test
+    void testEmptyHistory() {
+        when(botContext.getInput()).thenReturn("/history:5");
+        when(transactionRepository.findHistoryBefore(5L, LATEST, Long.MAX_VALUE, 0, PageRequest.of(0, 21)))
+                .thenReturn(Collections.emptyList());
+
+        historyService.showHistory(botContext);
+
+        assertTrue(sentMessage().getText().contains("No transactions yet."));
+    }
+
+    private SendMessage sentMessage() {
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot, times(1)).executeAsync(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Card card(String cardNumber, Long accountId) {
+        Account account = mock(Account.class);
+        when(account.getId()).thenReturn(accountId);
+        Card card = mock(Card.class);
+        when(card.getCardNumber()).thenReturn(cardNumber);
+        when(card.getAccount()).thenReturn(account);
+        return card;
+    }
+
+    private static TransactionSummary transaction(Long id, long amount, String counterparty, String details) {
+        TransactionSummary summary = mock(TransactionSummary.class);
+        when(summary.getId()).thenReturn(id);
+        when(summary.getDate()).thenReturn(DATE);
+        when(summary.getAmount()).thenReturn(amount);
+        when(summary.getCurrency()).thenReturn("UAH");
+        when(summary.getCounterparty()).thenReturn(counterparty);
+        when(summary.getRecipientDetails()).thenReturn(details);
+        return summary;
+    }
+}
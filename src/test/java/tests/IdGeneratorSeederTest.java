@@ -0,0 +1,85 @@
+package tests;
+
+import bot_bank.DemoApplication;
+import bot_bank.config.IdGeneratorSeeder;
+import bot_bank.model.Account;
+import bot_bank.repo.AccountRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * IdGeneratorSeederTest verifies, against an in-memory database, that accounts inserted through the
+ * Hibernate id generator after seeding over existing rows get the ids after those already in use, also
+ * across the blocks of ids, and that a generator already ahead of the ids in use is left where it is.
+ */
+
+@DataJpaTest
+@ContextConfiguration(classes = DemoApplication.class)
+@TestPropertySource(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class IdGeneratorSeederTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // the seeder and the generator run outside of it
+    void testIdsContinueAfterTheIdsInUse() {
+        for (long id = 1; id <= 100; id++) {
+            jdbcTemplate.update("INSERT INTO account (id, account_number, current_balance, currency, created_at)"
+                    + " VALUES (?, ?, 0, 'UAH', CURRENT_TIMESTAMP)", id, "old" + id);
+        }
+
+        new IdGeneratorSeeder(jdbcTemplate).seed();
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            Account account = new Account();
+            account.setAccountNumber("new" + i);
+            account.setCurrency("UAH");
+            ids.add(accountRepository.saveAndFlush(account).getId());
+        }
+        // The new ids follow the ids in use, one block of ids after the other
+        assertTrue(ids.get(0) > 100 && ids.get(0) <= 102, "first new id " + ids.get(0));
+        for (int i = 1; i < ids.size(); i++) {
+            assertEquals(ids.get(0) + i, ids.get(i));
+        }
+        assertEquals(160, accountRepository.count());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // the seeder runs outside of it
+    void testGeneratorAheadOfTheIdsInUseIsLeftAlone() {
+        long max = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM credit", Long.class);
+        List<Long> stored = jdbcTemplate.queryForList("SELECT next_val FROM id_generator WHERE name = 'credit'", Long.class);
+        if (stored.isEmpty()) {
+            jdbcTemplate.update("INSERT INTO id_generator (name, next_val) VALUES ('credit', ?)", max + 1);
+        } else {
+            jdbcTemplate.update("UPDATE id_generator SET next_val = ? WHERE name = 'credit'", max + 1);
+        }
+
+        new IdGeneratorSeeder(jdbcTemplate).seed();
+
+        // One past the highest id is ahead, though by less than a block of ids
+        assertEquals(max + 1, jdbcTemplate.queryForObject(
+                "SELECT next_val FROM id_generator WHERE name = 'credit'", Long.class));
+    }
+}
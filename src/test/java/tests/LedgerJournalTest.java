@@ -0,0 +1,140 @@
+package tests;
+
+import bot_bank.ledger.LedgerEntry;
+import bot_bank.ledger.LedgerJournal;
+import bot_bank.model.Money;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * LedgerJournalTest contains unit tests for the LedgerJournal class. It verifies that appended entries
+ * are numbered and reported in order once durable, that they are read back after a restart, that a torn
+ * record at the end of the journal is cut off, and that projected segments are deleted.
+ */
+
+class LedgerJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEntriesAreNumberedAndReportedInOrder() throws Exception {
+        LedgerJournal journal = journal(1 << 20);
+        journal.recover(0);
+        List<Long> reported = Collections.synchronizedList(new ArrayList<>());
+        journal.start(entry -> reported.add(entry.getSequence()));
+
+        List<CompletableFuture<LedgerEntry>> results = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            results.add(journal.append(entry("key" + i, 100 + i)));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        journal.close();
+
+        assertEquals(50, journal.getLastSequence());
+        assertEquals(50, reported.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i + 1, results.get(i).get().getSequence());
+            assertEquals(i + 1, reported.get(i));
+        }
+    }
+
+    @Test
+    void testEntriesAreRecoveredAfterRestart() throws Exception {
+        LedgerJournal journal = journal(1 << 20);
+        journal.recover(0);
+        journal.start(entry -> { });
+        journal.append(entry("123:1", 150)).get(5, TimeUnit.SECONDS);
+        journal.append(new LedgerEntry(0, 1L, null, 1L, null, Money.of(20, "UAH"), Money.of(20, "UAH"), "UA123")).get(5, TimeUnit.SECONDS);
+        journal.close();
+
+        LedgerJournal restarted = journal(1 << 20);
+        List<LedgerEntry> entries = restarted.recover(0);
+
+        assertEquals(2, entries.size());
+        assertEquals("123:1", entries.get(0).getIdempotencyKey());
+        assertEquals(Money.of(150, "USD"), entries.get(0).getSenderAmount());
+        assertEquals(Money.of(5550, "UAH"), entries.get(0).getRecipientAmount());
+        assertEquals(2L, entries.get(0).getRecipientAccountId());
+        assertNull(entries.get(1).getIdempotencyKey());
+        assertNull(entries.get(1).getRecipientAccountId());
+        assertEquals("UA123", entries.get(1).getRecipientDetails());
+        assertEquals(1, restarted.recover(1).size());
+        assertEquals(2, restarted.getLastSequence());
+    }
+
+    @Test
+    void testTornRecordIsCutOff() throws Exception {
+        LedgerJournal journal = journal(1 << 20);
+        journal.recover(0);
+        journal.start(entry -> { });
+        journal.append(entry("123:1", 150)).get(5, TimeUnit.SECONDS);
+        journal.close();
+        Path segment = segments().get(0);
+        long valid = Files.size(segment);
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            file.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3}));
+        }
+
+        LedgerJournal restarted = journal(1 << 20);
+        List<LedgerEntry> entries = restarted.recover(0);
+        restarted.start(entry -> { });
+        LedgerEntry next = restarted.append(entry("123:2", 10)).get(5, TimeUnit.SECONDS);
+        restarted.close();
+
+        assertEquals(1, entries.size());
+        assertEquals(valid, Files.size(segment));
+        assertEquals(2, next.getSequence());
+        assertEquals(2, journal(1 << 20).recover(0).size());
+    }
+
+    @Test
+    void testProjectedSegmentsAreDeleted() throws Exception {
+        LedgerJournal journal = journal(1);
+        journal.recover(0);
+        journal.start(entry -> { });
+        for (int i = 0; i < 3; i++) {
+            journal.append(entry("key" + i, 10)).get(5, TimeUnit.SECONDS);
+        }
+
+        journal.deleteSegmentsUpTo(2);
+        journal.close();
+
+        assertEquals("journal-00000000000000000003.log", segments().get(0).getFileName().toString());
+        List<LedgerEntry> entries = journal(1).recover(0);
+        assertEquals(1, entries.size());
+        assertEquals(3, entries.get(0).getSequence());
+    }
+
+    private LedgerJournal journal(long segmentBytes) {
+        return new LedgerJournal(directory, segmentBytes, 100, new SimpleMeterRegistry());
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static LedgerEntry entry(String key, long amount) {
+        return new LedgerEntry(0, System.currentTimeMillis(), key, 1L, 2L, Money.of(amount, "USD"),
+                Money.of(amount * 37, "UAH"), null);
+    }
+}
@@ -0,0 +1,125 @@
+package tests;
+
+import bot_bank.DemoApplication;
+import bot_bank.config.LegacyTransactionMigrator;
+import bot_bank.repo.AccountRepository;
+import bot_bank.repo.JournalEntryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * LegacyTransactionMigratorTest verifies, against an in-memory database, that the rows of the old transaction
+ * table are folded into balanced journal entries: a TRANSFER and its DEPOSIT become one entry, also when the
+ * rows of two transfers are interleaved, a transfer into another currency is cleared in both currencies, and
+ * a transfer to an external recipient is cleared in the currency of the sender. Entries saved by an earlier,
+ * interrupted run are not saved again, and the table is renamed once it has been migrated.
+ */
+
+@DataJpaTest
+@ContextConfiguration(classes = DemoApplication.class)
+@TestPropertySource(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class LegacyTransactionMigratorTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JournalEntryRepository journalEntryRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // the migrator commits its own transactions
+    void testTransactionsAreFoldedIntoTheJournal() {
+        account(1001, "UAH");
+        account(1002, "UAH");
+        account(1003, "USD");
+        jdbcTemplate.execute("CREATE TABLE transaction (id BIGINT AUTO_INCREMENT PRIMARY KEY, account_id BIGINT NOT NULL,"
+                + " transaction_type VARCHAR(255) NOT NULL, amount DECIMAL(15, 2) NOT NULL,"
+                + " transaction_date TIMESTAMP NOT NULL, recipient_account BIGINT, recipient_details VARCHAR(255))");
+        // A transfer from 1001 to 1002 whose rows are interleaved with those of a transfer from 1002 to 1001
+        row(1001, "TRANSFER", "-10.00", 1002L, null, "2026-01-01 10:00:00");
+        row(1002, "TRANSFER", "-5.00", 1001L, null, "2026-01-01 10:00:01");
+        row(1001, "DEPOSIT", "5.00", 1002L, null, "2026-01-01 10:00:01");
+        row(1002, "DEPOSIT", "10.00", 1001L, null, "2026-01-01 10:00:00");
+        // A transfer into dollars and a transfer to an external recipient
+        row(1001, "TRANSFER", "-41.00", 1003L, null, "2026-01-02 12:00:00");
+        row(1003, "DEPOSIT", "1.00", 1001L, null, "2026-01-02 12:00:00");
+        row(1001, "TRANSFER", "-7.50", null, "External recipient: 5555666677778888", "2026-01-03 09:00:00");
+        // The first transfer was saved by a run that was interrupted
+        jdbcTemplate.update("INSERT INTO journal_entry (entry_date, idempotency_key) VALUES (CURRENT_TIMESTAMP, ?)",
+                "legacy-transaction:1");
+
+        migrator().migrate();
+
+        assertEquals(List.of("legacy-transaction:1", "legacy-transaction:2", "legacy-transaction:5",
+                "legacy-transaction:7"), jdbcTemplate.queryForList(
+                "SELECT idempotency_key FROM journal_entry ORDER BY idempotency_key", String.class));
+        assertEquals(List.of(Map.of("ACCOUNT_ID", 1002L, "AMOUNT", new BigDecimal("-5.00")),
+                Map.of("ACCOUNT_ID", 1001L, "AMOUNT", new BigDecimal("5.00"))), legs("legacy-transaction:2"));
+        assertEquals(4, legs("legacy-transaction:5").size());
+        assertEquals(2, legs("legacy-transaction:7").size());
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM (SELECT l.entry_id, l.currency"
+                + " FROM journal_leg l GROUP BY l.entry_id, l.currency HAVING SUM(l.amount) <> 0) unbalanced", Long.class));
+        assertEquals("2026-01-03T09:00", jdbcTemplate.queryForObject("SELECT entry_date FROM journal_entry"
+                + " WHERE idempotency_key = 'legacy-transaction:7'", Timestamp.class).toLocalDateTime().toString());
+        assertEquals(7, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transaction_migrated", Long.class));
+
+        // The table has been renamed, so the migration does not run again
+        migrator().migrate();
+        assertEquals(4, journalEntryRepository.count());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM journal_leg");
+        jdbcTemplate.update("DELETE FROM journal_entry");
+        jdbcTemplate.update("DELETE FROM account WHERE id > 1000");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS transaction_migrated");
+        jdbcTemplate.execute("DROP TABLE IF EXISTS transaction");
+    }
+
+    private LegacyTransactionMigrator migrator() {
+        return new LegacyTransactionMigrator(jdbcTemplate, transactionManager, journalEntryRepository, accountRepository);
+    }
+
+    private void account(long id, String currency) {
+        jdbcTemplate.update("INSERT INTO account (id, account_number, current_balance, currency, created_at)"
+                + " VALUES (?, ?, 0, ?, CURRENT_TIMESTAMP)", id, "account" + id, currency);
+    }
+
+    private void row(long accountId, String type, String amount, Long recipientAccountId, String recipientDetails,
+                     String date) {
+        jdbcTemplate.update("INSERT INTO transaction (account_id, transaction_type, amount, transaction_date,"
+                        + " recipient_account, recipient_details) VALUES (?, ?, ?, ?, ?, ?)", accountId, type,
+                new BigDecimal(amount), Timestamp.valueOf(date), recipientAccountId, recipientDetails);
+    }
+
+    private List<Map<String, Object>> legs(String key) {
+        return jdbcTemplate.queryForList("SELECT l.account_id, l.amount FROM journal_leg l"
+                + " JOIN journal_entry e ON e.id = l.entry_id WHERE e.idempotency_key = ? ORDER BY l.leg_index", key);
+    }
+}
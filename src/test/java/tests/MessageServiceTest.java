@@ -9,10 +9,12 @@ import org.mockito.MockitoAnnotations;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.mockito.Mockito.any;
-import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * MessageServiceTest contains unit tests for the MessageService class. It verifies the correctness
@@ -43,7 +45,7 @@ class MessageServiceTest {
 
         messageService.sendMessage(chatId, text);
 
-        verify(botExecutor, times(1)).execute(any(SendMessage.class));
+        verify(botExecutor, times(1)).executeAsync(any(SendMessage.class));
     }
 
     @Test
@@ -54,10 +56,11 @@ class MessageServiceTest {
         message.setChatId(Long.toString(chatId));
         message.setText(text);
 
-        doThrow(TelegramApiException.class).when(botExecutor).execute(any(SendMessage.class));
+        when(botExecutor.executeAsync(any(SendMessage.class)))
+                .thenReturn(CompletableFuture.failedFuture(new TelegramApiException("failed")));
 
         messageService.sendMessage(chatId, text);
 
-        verify(botExecutor, times(1)).execute(any(SendMessage.class));
+        verify(botExecutor, times(1)).executeAsync(any(SendMessage.class));
     }
 }
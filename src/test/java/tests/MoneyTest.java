@@ -0,0 +1,74 @@
+package tests;
+
+import bot_bank.model.Money;
+import bot_bank.model.MinorUnitsConverter;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * MoneyTest contains unit tests for the Money class. It verifies parsing and formatting of amounts,
+ * half-even rounding of conversions and interest, and the mapping of minor units to DECIMAL columns.
+ */
+
+class MoneyTest {
+
+    @Test
+    void testParseMinorUnits() {
+        assertEquals(10050L, Money.parseMinorUnits("100.50"));
+        assertEquals(10000L, Money.parseMinorUnits("100"));
+        assertEquals(5L, Money.parseMinorUnits("0.05"));
+        assertThrows(NumberFormatException.class, () -> Money.parseMinorUnits("100.505"));
+        assertThrows(NumberFormatException.class, () -> Money.parseMinorUnits("abc"));
+    }
+
+    @Test
+    void testFormat() {
+        assertEquals("100.50", Money.format(10050L));
+        assertEquals("0.05", Money.format(5L));
+        assertEquals("-12.30", Money.format(-1230L));
+        assertEquals("-0.07", Money.format(-7L));
+        assertEquals("100.50 UAH", Money.of(10050L, "UAH").toString());
+    }
+
+    @Test
+    void testConvertRoundsHalfEven() {
+        assertEquals(8542L, Money.convert(10050L, 0.85)); // 85.425
+        assertEquals(8544L, Money.convert(10052L, 0.85)); // 85.442
+        assertEquals(-8542L, Money.convert(-10050L, 0.85));
+        assertEquals(418400L, Money.convert(10000L, 41.84));
+    }
+
+    @Test
+    void testConvertLargeAmount() {
+        assertEquals(41_840_000_000_000L, Money.convert(1_000_000_000_000L, 41.84));
+    }
+
+    @Test
+    void testMultiplyRoundsHalfEven() {
+        assertEquals(5L, Money.multiply(100L, 5, 100));
+        assertEquals(2L, Money.multiply(50L, 5, 100)); // 2.5
+        assertEquals(4L, Money.multiply(70L, 5, 100)); // 3.5
+    }
+
+    @Test
+    void testArithmeticChecksCurrency() {
+        Money uah = Money.of(10000L, "UAH");
+
+        assertEquals(Money.of(15000L, "UAH"), uah.plus(Money.of(5000L, "UAH")));
+        assertEquals(Money.of(-10000L, "UAH"), uah.negate());
+        assertThrows(IllegalArgumentException.class, () -> uah.minus(Money.of(1L, "USD")));
+    }
+
+    @Test
+    void testMinorUnitsConverter() {
+        MinorUnitsConverter converter = new MinorUnitsConverter();
+
+        assertEquals(new BigDecimal("100.50"), converter.convertToDatabaseColumn(10050L));
+        assertEquals(10050L, converter.convertToEntityAttribute(new BigDecimal("100.50")));
+        assertEquals(10050L, converter.convertToEntityAttribute(new BigDecimal("100.5")));
+    }
+}
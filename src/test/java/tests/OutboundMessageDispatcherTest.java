@@ -0,0 +1,129 @@
+package tests;
+
+import bot_bank.bot.OutboundMessageDispatcher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * OutboundMessageDispatcherTest contains unit tests for the OutboundMessageDispatcher class. It verifies
+ * that messages of a chat are sent in order, that the global rate is respected, and that failed sends
+ * are retried after the retry_after given by Telegram or given up after the allowed attempts.
+ */
+
+class OutboundMessageDispatcherTest {
+
+    private OutboundMessageDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testMessagesOfOneChatAreSentInOrder() throws Exception {
+        dispatcher = new OutboundMessageDispatcher(1000, 1000, 1000, 100, 3, 4);
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> last = null;
+
+        for (int i = 0; i < 30; i++) {
+            last = dispatcher.send(message("123", "text" + i), message -> sent.add(message.getText()));
+        }
+
+        last.get(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 30; i++) {
+            assertEquals("text" + i, sent.get(i));
+        }
+    }
+
+    @Test
+    void testGlobalRateIsRespected() throws Exception {
+        dispatcher = new OutboundMessageDispatcher(5, 1000, 1000, 100, 3, 4);
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 10; i++) {
+            results.add(dispatcher.send(message(String.valueOf(i), "text"), message -> { }));
+        }
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+    }
+
+    @Test
+    void testTooManyRequestsIsRetriedAfterRetryAfter() throws Exception {
+        dispatcher = new OutboundMessageDispatcher(1000, 1000, 1000, 100, 3, 4);
+        TelegramApiRequestException tooManyRequests = mock(TelegramApiRequestException.class);
+        when(tooManyRequests.getErrorCode()).thenReturn(429);
+        when(tooManyRequests.getParameters()).thenReturn(new ResponseParameters(null, 1));
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.nanoTime();
+
+        dispatcher.send(message("123", "text"), message -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw tooManyRequests;
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, attempts.get());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 900);
+        assertEquals(1, dispatcher.getRetriedMessages());
+    }
+
+    @Test
+    void testNetworkErrorIsRetriedUpToMaxAttempts() {
+        dispatcher = new OutboundMessageDispatcher(1000, 1000, 1000, 100, 2, 4);
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Void> result = dispatcher.send(message("123", "text"), message -> {
+            attempts.incrementAndGet();
+            throw new TelegramApiException("connection reset");
+        });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TelegramApiException);
+        assertEquals(2, attempts.get());
+        assertEquals(1, dispatcher.getFailedMessages());
+    }
+
+    @Test
+    void testClientErrorIsNotRetried() {
+        dispatcher = new OutboundMessageDispatcher(1000, 1000, 1000, 100, 3, 4);
+        TelegramApiRequestException chatNotFound = mock(TelegramApiRequestException.class);
+        when(chatNotFound.getErrorCode()).thenReturn(400);
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<Void> result = dispatcher.send(message("123", "text"), message -> {
+            attempts.incrementAndGet();
+            throw chatNotFound;
+        });
+
+        assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertEquals(1, attempts.get());
+        assertEquals(0, dispatcher.getQueuedMessages());
+    }
+
+    private static SendMessage message(String chatId, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(chatId);
+        message.setText(text);
+        return message;
+    }
+}
@@ -0,0 +1,174 @@
+package tests;
+
+import bot_bank.model.Money;
+import bot_bank.model.User;
+import bot_bank.repo.TransferCard;
+import bot_bank.service.CardService;
+import bot_bank.service.CurrencyRateService;
+import bot_bank.service.PayoutService;
+import bot_bank.service.TransferEngine;
+import bot_bank.service.TransferEngine.BatchTransfer;
+import bot_bank.service.TransferEngine.Outcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * PayoutServiceTest contains unit tests for the PayoutService class. It verifies that the lines of a payout
+ * are validated, converted and grouped by the paying account, that the cards are read once per window and
+ * the transfers made once per window and paying account, and that the report covers every line.
+ */
+
+class PayoutServiceTest {
+
+    private static final Map<String, TransferCard> CARDS = Map.of(
+            "1111", card("1111", 7L, 10L, "UAH", false),
+            "2222", card("2222", 8L, 20L, "UAH", false),
+            "3333", card("3333", 8L, 30L, "USD", false),
+            "4444", card("4444", 8L, 40L, "UAH", true));
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private CurrencyRateService currencyRateService;
+
+    @Mock
+    private TransferEngine transferEngine;
+
+    private SimpleMeterRegistry meterRegistry;
+    private User admin;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        admin = new User(123L, 0, true);
+        admin.setId(7L);
+        when(cardService.findTransferCards(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> numbers = invocation.getArgument(0);
+            return numbers.stream().filter(CARDS::containsKey).map(CARDS::get).collect(Collectors.toList());
+        });
+        when(transferEngine.transferAll(anyLong(), anyList())).thenAnswer(invocation -> {
+            List<BatchTransfer> transfers = invocation.getArgument(1);
+            return Collections.nCopies(transfers.size(), Outcome.COMPLETED);
+        });
+        when(currencyRateService.getRate("UAH", "USD")).thenReturn(0.025);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPayoutIsMadeAsOneBatch() {
+        PayoutService.Report report = service(100).payout(admin, "from 1111\n2222 100\n3333 400.50\n", "123:42");
+
+        assertEquals(2, report.getPaid());
+        assertEquals(0, report.getFailed());
+        verify(cardService, times(1)).findTransferCards(anyCollection());
+        ArgumentCaptor<List<BatchTransfer>> transfers = ArgumentCaptor.forClass(List.class);
+        verify(transferEngine, times(1)).transferAll(eq(10L), transfers.capture());
+        BatchTransfer first = transfers.getValue().get(0);
+        assertEquals("123:42:2", first.getIdempotencyKey());
+        assertEquals(20L, first.getRecipientAccountId());
+        assertEquals(Money.of(10000, "UAH"), first.getRecipientAmount());
+        BatchTransfer second = transfers.getValue().get(1);
+        assertEquals(Money.of(40050, "UAH"), second.getSenderAmount());
+        assertEquals(Money.of(1001, "USD"), second.getRecipientAmount());
+        assertTrue(report.getMessages().get(0).contains("Paid: 2 (500.50 UAH), failed: 0"));
+    }
+
+    @Test
+    void testEveryWindowIsResolvedAndPaidSeparately() {
+        PayoutService.Report report = service(2).payout(admin, "from 1111\n2222 1\n2222 2\n2222 3\n", null);
+
+        assertEquals(3, report.getPaid());
+        verify(cardService, times(2)).findTransferCards(anyCollection());
+        verify(transferEngine, times(2)).transferAll(eq(10L), anyList());
+    }
+
+    @Test
+    void testInvalidLinesAreReportedAndNotPaid() {
+        String text = "2222 100\n"
+                + "from 1111\n"
+                + "2222\n"
+                + "2222 abc\n"
+                + "9999 100\n"
+                + "4444 100\n"
+                + "from 2222\n"
+                + "3333 100\n";
+
+        PayoutService.Report report = service(100).payout(admin, text, null);
+
+        assertEquals(0, report.getPaid());
+        assertEquals(6, report.getFailed());
+        verify(transferEngine, never()).transferAll(anyLong(), anyList());
+        String message = report.getMessages().get(0);
+        assertTrue(message.contains("1: 2222 100 - no \"from <card number>\" line before it"));
+        assertTrue(message.contains("3: 2222 - expected"));
+        assertTrue(message.contains("4: 2222 abc - invalid amount"));
+        assertTrue(message.contains("5: 9999 100.00 - recipient card not found"));
+        assertTrue(message.contains("6: 4444 100.00 - the recipient card is banned"));
+        assertTrue(message.contains("8: 3333 100.00 - the paying card is not one of your cards"));
+        assertEquals(6, meterRegistry.get("bank.payouts.lines").tag("result", "failed").counter().count());
+    }
+
+    @Test
+    void testRefusedTransfersAreReported() {
+        when(transferEngine.transferAll(anyLong(), anyList()))
+                .thenReturn(List.of(Outcome.COMPLETED, Outcome.INSUFFICIENT_FUNDS));
+
+        PayoutService.Report report = service(100).payout(admin, "from 1111\n2222 100\n2222 200\n", null);
+
+        assertEquals(1, report.getPaid());
+        assertEquals(1, report.getFailed());
+        assertTrue(report.getMessages().get(0).contains("3: 2222 200.00 - insufficient funds"));
+    }
+
+    @Test
+    void testLongReportIsSplitIntoMessages() {
+        StringBuilder text = new StringBuilder("from 1111\n");
+        for (int i = 0; i < 500; i++) {
+            text.append("2222 1\n");
+        }
+
+        List<String> messages = service(100).payout(admin, text.toString(), null).getMessages();
+
+        assertTrue(messages.size() > 1);
+        assertTrue(messages.stream().allMatch(message -> message.length() <= 4000));
+        assertTrue(messages.get(messages.size() - 1).contains("Paid: 500"));
+    }
+
+    private PayoutService service(int windowSize) {
+        return new PayoutService(cardService, currencyRateService, transferEngine, meterRegistry, windowSize);
+    }
+
+    private static TransferCard card(String cardNumber, Long userId, Long accountId, String currency, boolean banned) {
+        TransferCard card = mock(TransferCard.class);
+        when(card.getCardNumber()).thenReturn(cardNumber);
+        when(card.getUserId()).thenReturn(userId);
+        when(card.getAccountId()).thenReturn(accountId);
+        when(card.getCurrency()).thenReturn(currency);
+        when(card.isBanned()).thenReturn(banned);
+        return card;
+    }
+}
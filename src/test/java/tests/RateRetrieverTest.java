@@ -0,0 +1,218 @@
+package tests;
+
+import bot_bank.retrievers.FileRateProvider;
+import bot_bank.retrievers.RateProvider;
+import bot_bank.retrievers.RateRetriever;
+import bot_bank.retrievers.RateSnapshotStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RateRetrieverTest contains unit tests for the RateRetriever class. It verifies that the rates are
+ * served from the snapshot, that an expired snapshot is returned while it is refreshed, that
+ * concurrent callers share a single fetch, and that the providers and the saved rates are used in turn.
+ */
+
+class RateRetrieverTest {
+
+    private static final Map<String, Double> RATES = Map.of("EUR", 1.0, "USD", 1.18, "UAH", 41.84);
+
+    @TempDir
+    Path tempDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StubProvider provider;
+    private RateRetriever retriever;
+
+    @BeforeEach
+    void setUp() {
+        provider = new StubProvider("stub");
+        retriever = retriever(600);
+    }
+
+    @AfterEach
+    void tearDown() {
+        retriever.shutdown();
+    }
+
+    private RateRetriever retriever(long ttlSeconds) {
+        return new RateRetriever(List.of(provider), new String[]{"stub"},
+                new RateSnapshotStore(tempDir.resolve("rates.json").toString()), meterRegistry, ttlSeconds);
+    }
+
+    @Test
+    void testRatesAreServedFromSnapshot() {
+        provider.next = RATES;
+
+        assertEquals(RATES, retriever.getRates());
+        assertEquals(RATES, retriever.getRates());
+        assertEquals(1, provider.fetches.get());
+    }
+
+    @Test
+    void testExpiredSnapshotIsReturnedWhileRefreshing() throws Exception {
+        retriever.shutdown();
+        retriever = retriever(0);
+        provider.next = RATES;
+        retriever.getRates();
+        retriever.refresh().get(5, TimeUnit.SECONDS);
+        provider.next = Map.of("EUR", 1.0, "USD", 1.2, "UAH", 42.0);
+        provider.blocker = new CountDownLatch(1);
+
+        assertEquals(RATES, retriever.getRates());
+
+        provider.blocker.countDown();
+        retriever.refresh().get(5, TimeUnit.SECONDS);
+        assertEquals(1.2, retriever.getRates().get("USD"));
+    }
+
+    @Test
+    void testConcurrentCallersShareOneFetch() throws Exception {
+        provider.next = RATES;
+        provider.blocker = new CountDownLatch(1);
+        List<CompletableFuture<Map<String, Double>>> results = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            results.add(CompletableFuture.supplyAsync(retriever::getRates));
+        }
+        Thread.sleep(100);
+        provider.blocker.countDown();
+
+        for (CompletableFuture<Map<String, Double>> result : results) {
+            assertEquals(RATES, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, provider.fetches.get());
+    }
+
+    @Test
+    void testFailedRefreshKeepsPreviousRates() throws Exception {
+        retriever.shutdown();
+        retriever = retriever(0);
+        provider.next = RATES;
+        retriever.getRates();
+        provider.next = null;
+
+        retriever.refresh().get(5, TimeUnit.SECONDS);
+
+        assertEquals(RATES, retriever.getRates());
+        assertTrue(provider.fetches.get() >= 2);
+    }
+
+    @Test
+    void testRatesAreNullWhenFirstFetchFails() {
+
+        assertNull(retriever.getRates());
+    }
+
+    @Test
+    void testProvidersAreAskedInConfiguredOrder() {
+        StubProvider primary = new StubProvider("primary");
+        StubProvider fallback = new StubProvider("fallback");
+        fallback.next = RATES;
+        retriever.shutdown();
+        retriever = new RateRetriever(List.of(fallback, primary), new String[]{"primary", "fallback"},
+                new RateSnapshotStore(tempDir.resolve("rates.json").toString()), meterRegistry, 600);
+
+        assertEquals(RATES, retriever.getRates());
+        assertEquals(1, primary.fetches.get());
+        assertEquals(1, fallback.fetches.get());
+    }
+
+    @Test
+    void testLastKnownRatesAreLoadedOnStartup() throws Exception {
+        RateSnapshotStore store = new RateSnapshotStore(tempDir.resolve("rates.json").toString());
+        provider.next = RATES;
+        retriever.getRates();
+        retriever.shutdown();
+
+        StubProvider offline = new StubProvider("stub");
+        offline.blocker = new CountDownLatch(1);
+        retriever = new RateRetriever(List.of(offline), new String[]{"stub"}, store, meterRegistry, 600);
+
+        // The loaded rates are served at once and refreshed in the background; the fetch is held until the
+        // refresh is joined, so the explicit refresh below waits for it instead of starting another one.
+        assertEquals(RATES, retriever.getRates());
+        CompletableFuture<RateRetriever.Snapshot> refresh = retriever.refresh();
+        offline.blocker.countDown();
+
+        assertEquals(RATES, refresh.get(5, TimeUnit.SECONDS).getRates());
+        assertEquals(1, offline.fetches.get());
+    }
+
+    @Test
+    void testFileProviderReadsRates() throws Exception {
+        Path file = tempDir.resolve("fixed.json");
+        Files.writeString(file, "{\"success\": true, \"rates\": {\"EUR\": 1.0, \"USD\": 1.18, \"UAH\": 41.84}}");
+
+        assertEquals(RATES, new FileRateProvider(file.toString()).fetchRates());
+        assertNull(new FileRateProvider("").fetchRates());
+    }
+
+    @Test
+    void testFetchesAreTimedByOutcome() {
+        StubProvider failing = new StubProvider("failing") {
+            @Override
+            public Map<String, Double> fetchRates() {
+                throw new IllegalStateException("connection timed out");
+            }
+        };
+        provider.next = RATES;
+        retriever.shutdown();
+        retriever = new RateRetriever(List.of(failing, provider), new String[]{"failing", "stub"},
+                new RateSnapshotStore(""), meterRegistry, 600);
+
+        assertEquals(RATES, retriever.getRates());
+        assertEquals(1, meterRegistry.get("rates.provider.fetch").tags("provider", "failing", "outcome", "error")
+                .timer().count());
+        assertEquals(1, meterRegistry.get("rates.provider.fetch").tags("provider", "stub", "outcome", "success")
+                .timer().count());
+    }
+
+    private static class StubProvider implements RateProvider {
+        private final String name;
+        private final AtomicInteger fetches = new AtomicInteger();
+        private volatile Map<String, Double> next;
+        private volatile CountDownLatch blocker;
+
+        StubProvider(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Map<String, Double> fetchRates() {
+            fetches.incrementAndGet();
+            CountDownLatch latch = blocker;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return next;
+        }
+    }
+}
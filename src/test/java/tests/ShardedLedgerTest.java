@@ -0,0 +1,218 @@
+package tests;
+
+import bot_bank.ledger.LedgerEntry;
+import bot_bank.ledger.LedgerJournal;
+import bot_bank.ledger.ShardedLedger;
+import bot_bank.model.Money;
+import bot_bank.service.TransferEngine.Outcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ShardedLedgerTest contains tests of the ShardedLedger and its LedgerProjector against an in-memory
+ * database. It verifies that transfers are projected in batches together with the checkpoint, that the
+ * journal is replayed into the tables on startup, skipping an old entry whose key is already stored, that a
+ * transfer which cannot be journaled returns the money, that an idempotency key moves money only once whether
+ * or not its entry has been projected, and that charges may overdraw an account.
+ */
+
+class ShardedLedgerTest {
+
+    @TempDir
+    Path directory;
+
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+    private ShardedLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate.execute("CREATE TABLE account (id BIGINT PRIMARY KEY, current_balance DECIMAL(19, 2) NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE journal_entry (id BIGINT AUTO_INCREMENT PRIMARY KEY, entry_date TIMESTAMP,"
+                + " idempotency_key VARCHAR(64) UNIQUE, recipient_details VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE journal_leg (entry_id BIGINT, leg_index INT, account_id BIGINT,"
+                + " currency VARCHAR(3), amount DECIMAL(19, 2), entry_date TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE ledger_checkpoint (id INT PRIMARY KEY, last_sequence BIGINT)");
+        jdbcTemplate.update("INSERT INTO account (id, current_balance) VALUES (1, 100.00), (2, 0.00), (3, 0.00)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (ledger != null) {
+            ledger.shutdown();
+        }
+    }
+
+    @Test
+    void testTransfersAreProjectedInBatchesWithTheCheckpoint() throws Exception {
+        ledger = ledger(16);
+        List<CompletableFuture<Outcome>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(ledger.transfer("key" + i, 1L, i % 2 == 0 ? 2L : 3L, uah(10), uah(10), null));
+        }
+        for (CompletableFuture<Outcome> result : results) {
+            assertEquals(Outcome.COMPLETED, result.get(5, TimeUnit.SECONDS));
+        }
+        ledger.shutdown();
+
+        assertEquals(new BigDecimal("90.00"), balance(1));
+        assertEquals(new BigDecimal("5.00"), balance(2));
+        assertEquals(new BigDecimal("5.00"), balance(3));
+        assertEquals(100, count("SELECT COUNT(*) FROM journal_entry"));
+        assertEquals(200, count("SELECT COUNT(*) FROM journal_leg"));
+        assertEquals(100, count("SELECT last_sequence FROM ledger_checkpoint WHERE id = 1"));
+    }
+
+    @Test
+    void testJournalIsReplayedOnStartup() throws Exception {
+        // Entries journaled before a crash that stopped them from being projected
+        LedgerJournal journal = new LedgerJournal(directory, 1 << 20, 16, new SimpleMeterRegistry());
+        journal.recover(0);
+        journal.start(entry -> { });
+        journal.append(new LedgerEntry(0, System.currentTimeMillis(), "key1", 1L, 2L, uah(3000), uah(3000), null))
+                .get(5, TimeUnit.SECONDS);
+        journal.append(new LedgerEntry(0, System.currentTimeMillis(), null, 1L, null, uah(500), uah(500), "UA123"))
+                .get(5, TimeUnit.SECONDS);
+        journal.close();
+
+        ledger = ledger(16);
+
+        assertEquals(new BigDecimal("65.00"), balance(1));
+        assertEquals(new BigDecimal("30.00"), balance(2));
+        assertEquals(2, count("SELECT last_sequence FROM ledger_checkpoint WHERE id = 1"));
+        // The balances loaded after the replay include the replayed entries
+        assertEquals(Outcome.INSUFFICIENT_FUNDS, ledger.transfer(null, 1L, 3L, uah(6600), uah(6600), null)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(Outcome.COMPLETED, ledger.transfer("key1", 1L, 3L, uah(6500), uah(6500), null)
+                .get(5, TimeUnit.SECONDS));
+        ledger.shutdown();
+        assertEquals(new BigDecimal("65.00"), balance(1));
+    }
+
+    @Test
+    void testReplayedEntryWithAStoredKeyIsSkipped() throws Exception {
+        jdbcTemplate.update("INSERT INTO journal_entry (entry_date, idempotency_key) VALUES (CURRENT_TIMESTAMP, 'key1')");
+        LedgerJournal journal = new LedgerJournal(directory, 1 << 20, 16, new SimpleMeterRegistry());
+        journal.recover(0);
+        journal.start(entry -> { });
+        journal.append(new LedgerEntry(0, System.currentTimeMillis(), "key1", 1L, 2L, uah(3000), uah(3000), null))
+                .get(5, TimeUnit.SECONDS);
+        journal.append(new LedgerEntry(0, System.currentTimeMillis(), "key2", 1L, 2L, uah(1000), uah(1000), null))
+                .get(5, TimeUnit.SECONDS);
+        journal.close();
+
+        ledger = ledger(16);
+
+        assertEquals(new BigDecimal("90.00"), balance(1));
+        assertEquals(new BigDecimal("10.00"), balance(2));
+        assertEquals(1, count("SELECT COUNT(*) FROM journal_entry WHERE idempotency_key = 'key1'"));
+    }
+
+    @Test
+    void testTransferThatCannotBeJournaledReturnsTheMoney() throws Exception {
+        ledger = ledger(16);
+        // Details longer than a journal record can hold make the write fail
+        String details = "x".repeat(70000);
+
+        assertEquals(Outcome.FAILED, ledger.transfer("key1", 1L, null, uah(10000), uah(10000), details)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(Outcome.COMPLETED, ledger.transfer("key1", 1L, 2L, uah(10000), uah(10000), null)
+                .get(5, TimeUnit.SECONDS));
+        ledger.shutdown();
+
+        assertEquals(new BigDecimal("0.00"), balance(1));
+        assertEquals(new BigDecimal("100.00"), balance(2));
+    }
+
+    @Test
+    void testKeyOfAnUnprojectedTransferIsRefused() throws Exception {
+        ledger = ledger(16);
+        CompletableFuture<Outcome> first = ledger.transfer("key1", 1L, 2L, uah(6000), uah(6000), null);
+        CompletableFuture<Outcome> second = ledger.transfer("key1", 1L, 2L, uah(6000), uah(6000), null);
+
+        assertEquals(Outcome.COMPLETED, first.get(5, TimeUnit.SECONDS));
+        assertEquals(Outcome.COMPLETED, second.get(5, TimeUnit.SECONDS));
+        assertEquals(Outcome.INSUFFICIENT_FUNDS, ledger.transfer("key2", 1L, 2L, uah(6000), uah(6000), null)
+                .get(5, TimeUnit.SECONDS));
+        ledger.shutdown();
+
+        assertEquals(new BigDecimal("40.00"), balance(1));
+        assertEquals(1, count("SELECT COUNT(*) FROM journal_entry"));
+    }
+
+    @Test
+    void testKeyOfAProjectedTransferIsRefused() throws Exception {
+        jdbcTemplate.update("INSERT INTO journal_entry (entry_date, idempotency_key) VALUES (CURRENT_TIMESTAMP, 'key1')");
+        ledger = ledger(16);
+
+        assertEquals(Outcome.COMPLETED, ledger.transfer("key1", 1L, 2L, uah(6000), uah(6000), null)
+                .get(5, TimeUnit.SECONDS));
+        ledger.shutdown();
+
+        assertEquals(new BigDecimal("100.00"), balance(1));
+        assertEquals(new BigDecimal("0.00"), balance(2));
+    }
+
+    @Test
+    void testRefusedTransferDoesNotTakeTheKey() throws Exception {
+        ledger = ledger(16);
+
+        assertEquals(Outcome.INSUFFICIENT_FUNDS, ledger.transfer("key1", 1L, 2L, uah(20000), uah(20000), null)
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(Outcome.COMPLETED, ledger.transfer("key1", 1L, 2L, uah(2000), uah(2000), null)
+                .get(5, TimeUnit.SECONDS));
+        ledger.shutdown();
+
+        assertEquals(new BigDecimal("80.00"), balance(1));
+    }
+
+    @Test
+    void testChargeMayOverdrawTheAccount() throws Exception {
+        ledger = ledger(16);
+
+        assertEquals(Outcome.COMPLETED, ledger.charge(1L, uah(15000), "Credit interest").get(5, TimeUnit.SECONDS));
+        assertEquals(Outcome.ACCOUNT_NOT_FOUND, ledger.charge(9L, uah(100), "Credit interest").get(5, TimeUnit.SECONDS));
+        ledger.shutdown();
+
+        assertEquals(new BigDecimal("-50.00"), balance(1));
+        assertEquals("Credit interest", jdbcTemplate.queryForObject(
+                "SELECT recipient_details FROM journal_entry", String.class));
+    }
+
+    private ShardedLedger ledger(int batchSize) throws Exception {
+        return new ShardedLedger(jdbcTemplate, transactionManager, new SimpleMeterRegistry(), 2,
+                directory.toString(), 1 << 20, batchSize);
+    }
+
+    private BigDecimal balance(long accountId) {
+        return jdbcTemplate.queryForObject("SELECT current_balance FROM account WHERE id = ?", BigDecimal.class, accountId);
+    }
+
+    private long count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    private static Money uah(long minorUnits) {
+        return Money.of(minorUnits, "UAH");
+    }
+}
@@ -0,0 +1,226 @@
+package tests;
+
+import bot_bank.bot.BotContext;
+import bot_bank.bot.ChatBot;
+import bot_bank.model.Account;
+import bot_bank.model.Card;
+import bot_bank.model.User;
+import bot_bank.repo.AccountRepository;
+import bot_bank.repo.AccountSummary;
+import bot_bank.repo.EntryIdRange;
+import bot_bank.repo.JournalEntryRepository;
+import bot_bank.repo.TransactionRepository;
+import bot_bank.repo.TransactionSummary;
+import bot_bank.service.CardService;
+import bot_bank.service.MessageService;
+import bot_bank.service.StatementService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * StatementServiceTest contains unit tests for the StatementService class. It verifies that the user chooses
+ * the month of the statement, that the transactions of the month are written to a CSV document which is deleted
+ * once it has been sent, and that statements of unknown accounts and empty months are not sent.
+ */
+
+class StatementServiceTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2026, 9, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2026, 10, 1, 0, 0);
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Mock
+    private JournalEntryRepository journalEntryRepository;
+
+    @Mock
+    private MessageService messageService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private BotContext botContext;
+
+    @Mock
+    private ChatBot bot;
+
+    @Mock
+    private User user;
+
+    private StatementService statementService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        statementService = new StatementService(cardService, accountRepository, transactionRepository,
+                journalEntryRepository, messageService, transactionManager, new SimpleMeterRegistry());
+        when(botContext.getUser()).thenReturn(user);
+        when(botContext.getBot()).thenReturn(bot);
+        when(user.getId()).thenReturn(1L);
+        when(user.getTelegramId()).thenReturn(123456789L);
+        List<Card> cards = List.of(card("1111", 5L, "1234567890"));
+        when(cardService.getCardsByUserId(1L)).thenReturn(cards);
+        EntryIdRange entries = mock(EntryIdRange.class);
+        when(entries.getFirstId()).thenReturn(100L);
+        when(entries.getLastId()).thenReturn(200L);
+        when(journalEntryRepository.findIdRange(FROM, TO)).thenReturn(entries);
+    }
+
+    @Test
+    void testUserChoosesTheMonth() {
+        when(botContext.getInput()).thenReturn("/statement");
+
+        statementService.showStatement(botContext);
+
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot).executeAsync(captor.capture());
+        List<List<InlineKeyboardButton>> rows = ((InlineKeyboardMarkup) captor.getValue().getReplyMarkup()).getKeyboard();
+        assertEquals(2, rows.size());
+        assertEquals("/statement:5:" + YearMonth.now(), rows.get(0).get(0).getCallbackData());
+        assertEquals("/statement:5:" + YearMonth.now().minusMonths(5), rows.get(1).get(2).getCallbackData());
+    }
+
+    @Test
+    void testStatementIsStreamedIntoADocument() throws Exception {
+        when(botContext.getInput()).thenReturn("/statement:5:2026-09");
+        TransactionSummary incoming = transaction(LocalDateTime.of(2026, 9, 2, 10, 0), 2000L, "A3", null);
+        TransactionSummary outgoing = transaction(LocalDateTime.of(2026, 9, 5, 18, 30), -15050L, null,
+                "External recipient: \"Shop, Ltd\"");
+        when(transactionRepository.streamStatement(5L, 100L, 200L, FROM, TO)).thenReturn(Stream.of(incoming, outgoing));
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        when(bot.sendDocumentAsync(any())).thenReturn(sent);
+
+        statementService.showStatement(botContext);
+
+        ArgumentCaptor<SendDocument> captor = ArgumentCaptor.forClass(SendDocument.class);
+        verify(bot).sendDocumentAsync(captor.capture());
+        SendDocument document = captor.getValue();
+        assertEquals("123456789", document.getChatId());
+        assertEquals("statement-1234567890-2026-09.csv", document.getDocument().getMediaName());
+        assertTrue(document.getCaption().contains("2 transactions, in 20.00 UAH, out -150.50 UAH"));
+        File file = document.getDocument().getNewMediaFile();
+        assertEquals("date,amount,currency,counterparty,details\r\n"
+                        + "2026-09-02 10:00:00,20.00,UAH,A3,\r\n"
+                        + "2026-09-05 18:30:00,-150.50,UAH,,\"External recipient: \"\"Shop, Ltd\"\"\"\r\n",
+                Files.readString(file.toPath(), StandardCharsets.UTF_8));
+
+        sent.complete(null);
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void testEmptyMonthIsNotSent() {
+        when(botContext.getInput()).thenReturn("/statement:5:2026-09");
+        when(transactionRepository.streamStatement(5L, 100L, 200L, FROM, TO)).thenReturn(Stream.empty());
+
+        statementService.showStatement(botContext);
+
+        verify(messageService).sendMessage(123456789L, "No transactions in 2026-09.");
+        verify(bot, never()).sendDocumentAsync(any());
+    }
+
+    @Test
+    void testMonthWithoutEntriesIsNotRead() {
+        when(botContext.getInput()).thenReturn("/statement:5:2026-09");
+        EntryIdRange none = mock(EntryIdRange.class);
+        when(none.getFirstId()).thenReturn(null);
+        when(none.getLastId()).thenReturn(null);
+        when(journalEntryRepository.findIdRange(FROM, TO)).thenReturn(none);
+
+        statementService.showStatement(botContext);
+
+        verify(messageService).sendMessage(123456789L, "No transactions in 2026-09.");
+        verify(transactionRepository, never()).streamStatement(anyLong(), anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    void testAccountOfAnotherUserIsNotShown() {
+        when(botContext.getInput()).thenReturn("/statement:7:2026-09");
+
+        statementService.showStatement(botContext);
+
+        verify(messageService).sendMessage(123456789L, "Account not found.");
+        verify(transactionRepository, never()).streamStatement(anyLong(), anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    void testAdminReadsTheStatementOfAnyAccount() {
+        when(botContext.getInput()).thenReturn("9876543210 2026-09");
+        AccountSummary account = mock(AccountSummary.class);
+        when(account.getId()).thenReturn(9L);
+        when(account.getAccountNumber()).thenReturn("9876543210");
+        when(accountRepository.findSummaryByAccountNumber("9876543210")).thenReturn(Optional.of(account));
+        when(transactionRepository.streamStatement(9L, 100L, 200L, FROM, TO)).thenReturn(Stream.empty());
+
+        statementService.sendAccountStatement(botContext);
+
+        verify(transactionRepository).streamStatement(9L, 100L, 200L, FROM, TO);
+    }
+
+    @Test
+    void testUnknownAccountNumber() {
+        when(botContext.getInput()).thenReturn("0000000000 2026-09");
+        when(accountRepository.findSummaryByAccountNumber("0000000000")).thenReturn(Optional.empty());
+
+        statementService.sendAccountStatement(botContext);
+
+        verify(messageService).sendMessage(123456789L, "Account not found.");
+    }
+
+    private static Card card(String cardNumber, Long accountId, String accountNumber) {
+        Account account = mock(Account.class);
+        when(account.getId()).thenReturn(accountId);
+        when(account.getAccountNumber()).thenReturn(accountNumber);
+        Card card = mock(Card.class);
+        when(card.getCardNumber()).thenReturn(cardNumber);
+        when(card.getAccount()).thenReturn(account);
+        return card;
+    }
+
+    private static TransactionSummary transaction(LocalDateTime date, long amount, String counterparty, String details) {
+        TransactionSummary summary = mock(TransactionSummary.class);
+        when(summary.getDate()).thenReturn(date);
+        when(summary.getAmount()).thenReturn(amount);
+        when(summary.getCurrency()).thenReturn("UAH");
+        when(summary.getCounterparty()).thenReturn(counterparty);
+        when(summary.getRecipientDetails()).thenReturn(details);
+        return summary;
+    }
+}
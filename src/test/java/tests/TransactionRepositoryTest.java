@@ -0,0 +1,103 @@
+package tests;
+
+import bot_bank.DemoApplication;
+import bot_bank.config.JournalLegDateBackfill;
+import bot_bank.repo.TransactionRepository;
+import bot_bank.repo.TransactionSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * TransactionRepositoryTest verifies, against an in-memory database, that the history of an account is paged
+ * in the order of the transaction dates, also where the journal entries were not inserted in that order, and
+ * that the legs written before they carried the date of their entry get it from the JournalLegDateBackfill.
+ */
+
+@DataJpaTest
+@ContextConfiguration(classes = DemoApplication.class)
+@TestPropertySource(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class TransactionRepositoryTest {
+
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Test
+    void testHistoryIsPagedByDate() {
+        account(2001, "A1");
+        account(2002, "A2");
+        // Entry 3 was inserted last but is the oldest, as a migrated transaction is
+        transfer(1, "2026-10-02 10:00:00");
+        transfer(2, "2026-10-03 10:00:00");
+        transfer(3, "2026-09-30 10:00:00");
+        transfer(4, "2026-10-02 10:00:00");
+
+        List<TransactionSummary> first = transactionRepository.findHistoryBefore(2001L, LATEST, Long.MAX_VALUE, 0,
+                PageRequest.of(0, 2));
+        assertEquals(List.of(8L, 16L), ids(first));
+        assertEquals("A2", first.get(0).getCounterparty());
+        assertEquals(LocalDateTime.of(2026, 10, 3, 10, 0), first.get(0).getDate());
+
+        LocalDateTime date = transactionRepository.findLegDate(4L, 0).orElseThrow();
+        List<TransactionSummary> second = transactionRepository.findHistoryBefore(2001L, date, 4L, 0,
+                PageRequest.of(0, 2));
+        assertEquals(List.of(4L, 12L), ids(second));
+
+        List<TransactionSummary> newer = transactionRepository.findHistoryAfter(2001L,
+                transactionRepository.findLegDate(3L, 0).orElseThrow(), 3L, 0, PageRequest.of(0, 2));
+        assertEquals(List.of(4L, 16L), ids(newer));
+    }
+
+    @Test
+    void testLegsWithoutADateGetTheDateOfTheirEntry() {
+        account(2001, "A1");
+        account(2002, "A2");
+        transfer(1, "2026-10-02 10:00:00");
+        jdbcTemplate.update("UPDATE journal_leg SET entry_date = NULL");
+
+        new JournalLegDateBackfill(jdbcTemplate).backfill();
+
+        assertEquals(List.of(LocalDateTime.of(2026, 10, 2, 10, 0)), transactionRepository.findHistoryBefore(2001L,
+                LATEST, Long.MAX_VALUE, 0, PageRequest.of(0, 20)).stream().map(TransactionSummary::getDate)
+                .collect(Collectors.toList()));
+    }
+
+    private void account(long id, String accountNumber) {
+        jdbcTemplate.update("INSERT INTO account (id, account_number, current_balance, currency, created_at)"
+                + " VALUES (?, ?, 0, 'UAH', CURRENT_TIMESTAMP)", id, accountNumber);
+    }
+
+    /**
+     * Inserts an entry with the given id moving 1.00 from account 2001 to account 2002.
+     */
+    private void transfer(long entryId, String date) {
+        Timestamp timestamp = Timestamp.valueOf(date);
+        jdbcTemplate.update("INSERT INTO journal_entry (id, entry_date) VALUES (?, ?)", entryId, timestamp);
+        jdbcTemplate.update("INSERT INTO journal_leg (entry_id, leg_index, account_id, currency, amount, entry_date)"
+                + " VALUES (?, 0, 2001, 'UAH', -1.00, ?), (?, 1, 2002, 'UAH', 1.00, ?)", entryId, timestamp, entryId, timestamp);
+    }
+
+    private static List<Long> ids(List<TransactionSummary> transactions) {
+        return transactions.stream().map(TransactionSummary::getId).collect(Collectors.toList());
+    }
+}
@@ -2,16 +2,14 @@ package tests;
 
 import bot_bank.bot.BotContext;
 import bot_bank.bot.ChatBot;
-import bot_bank.model.Account;
-import bot_bank.model.Card;
-import bot_bank.model.Transaction;
+import bot_bank.model.Money;
 import bot_bank.model.TransactionDetail;
 import bot_bank.model.User;
-import bot_bank.repo.TransactionRepository;
-import bot_bank.service.AccountService;
+import bot_bank.repo.TransferCard;
 import bot_bank.service.CardService;
 import bot_bank.service.CurrencyRateService;
 import bot_bank.service.TransactionService;
+import bot_bank.service.TransferEngine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -20,9 +18,8 @@ import org.mockito.MockitoAnnotations;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.Optional;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -31,26 +28,26 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
  * TransactionServiceTest contains unit tests for the TransactionService class. It verifies the correctness
- * of methods related to handling transactions, such as saving transactions, parsing amounts, validating sender
- * details, converting currencies, processing transactions, and sending messages via the Telegram bot context.
+ * of methods related to handling transactions, such as parsing amounts, resolving both cards of a transfer with
+ * one query, validating sender details, converting currencies, processing transactions, and sending messages
+ * via the Telegram bot context.
  */
 
 class TransactionServiceTest {
 
-    @Mock
-    private TransactionRepository transactionRepository;
-
     @Mock
     private CurrencyRateService currencyRateService;
 
     @Mock
-    private AccountService accountService;
+    private TransferEngine transferEngine;
 
     @Mock
     private CardService cardService;
@@ -76,128 +73,177 @@ class TransactionServiceTest {
         when(context.getUser()).thenReturn(user);
         when(user.getTransactionDetail()).thenReturn(transactionDetail);
         when(context.getBot()).thenReturn(bot);
-    }
-
-    @Test
-    void testSaveTransaction() {
-        Transaction transaction = new Transaction();
-
-        transactionService.saveTransaction(transaction);
-
-        verify(transactionRepository, times(1)).save(transaction);
+        when(context.getMessageId()).thenReturn(null);
     }
 
     @Test
     void testParseAmount() {
         String amountStr = "100.50";
-        when(transactionDetail.getAmount()).thenReturn(new BigDecimal(amountStr));
 
-        BigDecimal result = transactionService.parseAmount(amountStr, context);
+        Long result = transactionService.parseAmount(amountStr, context);
 
         assertNotNull(result);
-        assertEquals(new BigDecimal("100.50"), result);
+        assertEquals(10050L, result);
+        verify(transactionDetail).setAmount(10050L);
     }
 
     @Test
     void testParseInvalidAmount() {
         String amountStr = "invalid";
 
-        BigDecimal result = transactionService.parseAmount(amountStr, context);
+        Long result = transactionService.parseAmount(amountStr, context);
 
         assertNull(result);
     }
 
     @Test
     void testValidateSenderDetails() {
-        BigDecimal senderAmount = new BigDecimal("100.50");
-        Card card = new Card();
-        card.setCvv("123");
-        card.setExpirationDate(LocalDate.now().plusYears(1));
-        Account senderAccount = new Account();
-        senderAccount.setCurrentBalance(new BigDecimal("200.00"));
-        card.setAccount(senderAccount);
-
-        when(cardService.findByCardNumber(anyString())).thenReturn(Optional.of(card));
-        when(transactionDetail.getSenderCardNumber()).thenReturn("1111222233334444");
+        TransferCard card = card("1111222233334444", 1L, "UAH", 20000L);
         when(transactionDetail.getSenderCvv()).thenReturn("123");
         when(transactionDetail.getSenderExpDate()).thenReturn(LocalDate.now().plusYears(1).toString());
 
-        boolean result = transactionService.validateSenderDetails(context, senderAmount);
+        boolean result = transactionService.validateSenderDetails(context, card, 10050L);
 
         assertTrue(result);
     }
 
     @Test
     void testValidateInvalidSenderDetails() {
-        BigDecimal senderAmount = new BigDecimal("100.50");
-
-        when(cardService.findByCardNumber(anyString())).thenReturn(Optional.empty());
-        when(transactionDetail.getSenderCardNumber()).thenReturn("1111222233334444");
         when(transactionDetail.getSenderCvv()).thenReturn("123");
         when(transactionDetail.getSenderExpDate()).thenReturn(LocalDate.now().plusYears(1).toString());
 
-        boolean result = transactionService.validateSenderDetails(context, senderAmount);
+        boolean result = transactionService.validateSenderDetails(context, null, 10050L);
 
         assertFalse(result);
     }
 
     @Test
-    void testGetRecipientAccount() {
-        Card card = new Card();
-        card.setAccount(new Account());
+    void testValidateSenderDetailsWithInsufficientFunds() {
+        TransferCard card = card("1111222233334444", 1L, "UAH", 5000L);
+        when(transactionDetail.getSenderCvv()).thenReturn("123");
+        when(transactionDetail.getSenderExpDate()).thenReturn(LocalDate.now().plusYears(1).toString());
 
-        when(cardService.findByCardNumber(anyString())).thenReturn(Optional.of(card));
+        assertFalse(transactionService.validateSenderDetails(context, card, 10050L));
+        verify(bot, times(1)).executeAsync(any(SendMessage.class));
+    }
+
+    @Test
+    void testTransferResolvesBothCardsWithOneQuery() {
+        TransferCard senderCard = card("1111222233334444", 1L, "USD", 20000L);
+        TransferCard recipientCard = card("5555666677778888", 2L, "EUR", 0L);
+        when(transactionDetail.getSenderCardNumber()).thenReturn("1111222233334444");
         when(transactionDetail.getRecipientCardNumber()).thenReturn("5555666677778888");
+        when(transactionDetail.getSenderCvv()).thenReturn("123");
+        when(transactionDetail.getSenderExpDate()).thenReturn(LocalDate.now().plusYears(1).toString());
+        when(cardService.findTransferCards("1111222233334444", "5555666677778888"))
+                .thenReturn(List.of(recipientCard, senderCard));
+        when(currencyRateService.getRate("USD", "EUR")).thenReturn(0.85);
+        when(transferEngine.transfer(null, 1L, 2L, Money.of(10050L, "USD"), Money.of(8542L, "EUR"), null))
+                .thenReturn(TransferEngine.Outcome.COMPLETED);
 
-        Account result = transactionService.getRecipientAccount(context);
+        assertTrue(transactionService.transfer(context, 10050L));
+        verify(cardService, times(1)).findTransferCards(anyString(), anyString());
+        verify(cardService, never()).findByCardNumber(anyString());
+    }
 
-        assertNotNull(result);
+    @Test
+    void testTransferToUnknownCardGoesToExternalRecipient() {
+        TransferCard senderCard = card("1111222233334444", 1L, "UAH", 20000L);
+        when(transactionDetail.getSenderCardNumber()).thenReturn("1111222233334444");
+        when(transactionDetail.getRecipientCardNumber()).thenReturn("5555666677778888");
+        when(transactionDetail.getSenderCvv()).thenReturn("123");
+        when(transactionDetail.getSenderExpDate()).thenReturn(LocalDate.now().plusYears(1).toString());
+        when(cardService.findTransferCards("1111222233334444", "5555666677778888")).thenReturn(List.of(senderCard));
+        when(transferEngine.transfer(null, 1L, null, Money.of(10050L, "UAH"), Money.of(10050L, "UAH"),
+                "External recipient: 5555666677778888")).thenReturn(TransferEngine.Outcome.COMPLETED);
+
+        assertTrue(transactionService.transfer(context, 10050L));
     }
 
     @Test
     void testConvertCurrencyIfNeeded() {
-        Account senderAccount = new Account();
-        senderAccount.setCurrency("USD");
-        Account recipientAccount = new Account();
-        recipientAccount.setCurrency("EUR");
-        BigDecimal senderAmount = new BigDecimal("100.50");
+        TransferCard senderCard = card("1111222233334444", 1L, "USD", 0L);
+        TransferCard recipientCard = card("5555666677778888", 2L, "EUR", 0L);
+        long senderAmount = 10050L;
 
         when(currencyRateService.getRate("USD", "EUR")).thenReturn(0.85);
 
-        BigDecimal result = transactionService.convertCurrencyIfNeeded(senderAccount, recipientAccount, senderAmount, context);
+        Long result = transactionService.convertCurrencyIfNeeded(senderCard, recipientCard, senderAmount, context);
 
         assertNotNull(result);
-        assertEquals(new BigDecimal("85.4250"), result);
+        assertEquals(8542L, result); // 85.425 rounded half-even
+    }
+
+    @Test
+    void testConvertCurrencyIfNeededWithoutRate() {
+        TransferCard senderCard = card("1111222233334444", 1L, "USD", 0L);
+        TransferCard recipientCard = card("5555666677778888", 2L, "EUR", 0L);
+
+        when(currencyRateService.getRate("USD", "EUR")).thenReturn(Double.NaN);
+
+        assertNull(transactionService.convertCurrencyIfNeeded(senderCard, recipientCard, 10050L, context));
+        verify(bot, times(1)).executeAsync(any(SendMessage.class));
     }
 
     @Test
     void testConvertCurrencyIfNeededWithNoConversion() {
-        Account senderAccount = new Account();
-        senderAccount.setCurrency("USD");
-        Account recipientAccount = new Account();
-        recipientAccount.setCurrency("USD");
-        BigDecimal senderAmount = new BigDecimal("100.50");
+        TransferCard senderCard = card("1111222233334444", 1L, "USD", 0L);
+        TransferCard recipientCard = card("5555666677778888", 2L, "USD", 0L);
+        long senderAmount = 10050L;
 
-        BigDecimal result = transactionService.convertCurrencyIfNeeded(senderAccount, recipientAccount, senderAmount, context);
+        Long result = transactionService.convertCurrencyIfNeeded(senderCard, recipientCard, senderAmount, context);
 
         assertNotNull(result);
-        assertEquals(senderAmount, result);
+        assertEquals(senderAmount, result.longValue());
     }
 
     @Test
     void testProcessTransaction() {
-        Account senderAccount = new Account();
-        senderAccount.setCurrentBalance(new BigDecimal("500.00"));
-        Account recipientAccount = new Account();
-        recipientAccount.setCurrentBalance(new BigDecimal("200.00"));
-        BigDecimal senderAmount = new BigDecimal("100.50");
-        BigDecimal recipientAmount = new BigDecimal("85.4250");
+        TransferCard senderCard = card("1111222233334444", 1L, "USD", 0L);
+        TransferCard recipientCard = card("5555666677778888", 2L, "UAH", 0L);
+        when(transferEngine.transfer(null, 1L, 2L, Money.of(10050L, "USD"), Money.of(8542L, "UAH"), null))
+                .thenReturn(TransferEngine.Outcome.COMPLETED);
+
+        boolean result = transactionService.processTransaction(senderCard, recipientCard, 10050L, 8542L, context);
+
+        assertTrue(result);
+        verify(transferEngine, times(1)).transfer(null, 1L, 2L, Money.of(10050L, "USD"), Money.of(8542L, "UAH"), null);
+        verify(bot, times(0)).executeAsync(any(SendMessage.class));
+    }
+
+    @Test
+    void testProcessTransactionToExternalRecipient() {
+        TransferCard senderCard = card("1111222233334444", 1L, "UAH", 0L);
+        when(transactionDetail.getRecipientCardNumber()).thenReturn("5555666677778888");
+        when(transferEngine.transfer(null, 1L, null, Money.of(10050L, "UAH"), Money.of(10050L, "UAH"), "External recipient: 5555666677778888"))
+                .thenReturn(TransferEngine.Outcome.COMPLETED);
+
+        assertTrue(transactionService.processTransaction(senderCard, null, 10050L, 10050L, context));
+    }
+
+    @Test
+    void testProcessTransactionIsKeyedByMessage() {
+        TransferCard senderCard = card("1111222233334444", 1L, "UAH", 0L);
+        TransferCard recipientCard = card("5555666677778888", 2L, "UAH", 0L);
+        when(user.getTelegramId()).thenReturn(123L);
+        when(context.getMessageId()).thenReturn(42);
+        when(transferEngine.transfer("123:42", 1L, 2L, Money.of(10050L, "UAH"), Money.of(10050L, "UAH"), null))
+                .thenReturn(TransferEngine.Outcome.COMPLETED);
+
+        assertTrue(transactionService.processTransaction(senderCard, recipientCard, 10050L, 10050L, context));
+    }
+
+    @Test
+    void testProcessTransactionWithInsufficientFunds() {
+        TransferCard senderCard = card("1111222233334444", 1L, "UAH", 0L);
+        TransferCard recipientCard = card("5555666677778888", 2L, "UAH", 0L);
+        when(transferEngine.transfer(null, 1L, 2L, Money.of(10050L, "UAH"), Money.of(10050L, "UAH"), null))
+                .thenReturn(TransferEngine.Outcome.INSUFFICIENT_FUNDS);
 
-        transactionService.processTransaction(senderAccount, recipientAccount, senderAmount, recipientAmount, context);
+        boolean result = transactionService.processTransaction(senderCard, recipientCard, 10050L, 10050L, context);
 
-        verify(accountService, times(1)).saveAccount(senderAccount);
-        verify(accountService, times(1)).saveAccount(recipientAccount);
-        verify(transactionRepository, times(2)).save(any(Transaction.class));
+        assertFalse(result);
+        verify(bot, times(1)).executeAsync(any(SendMessage.class));
     }
 
     @Test
@@ -210,6 +256,17 @@ class TransactionServiceTest {
 
         TransactionService.sendMessage(context, text);
 
-        verify(context.getBot(), times(1)).execute(any(SendMessage.class));
+        verify(context.getBot(), times(1)).executeAsync(any(SendMessage.class));
+    }
+
+    private static TransferCard card(String cardNumber, Long accountId, String currency, long currentBalance) {
+        TransferCard card = mock(TransferCard.class);
+        when(card.getCardNumber()).thenReturn(cardNumber);
+        when(card.getCvv()).thenReturn("123");
+        when(card.getExpirationDate()).thenReturn(LocalDate.now().plusYears(1));
+        when(card.getAccountId()).thenReturn(accountId);
+        when(card.getCurrency()).thenReturn(currency);
+        when(card.getCurrentBalance()).thenReturn(currentBalance);
+        return card;
     }
 }
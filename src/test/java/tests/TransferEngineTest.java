@@ -0,0 +1,349 @@
+package tests;
+
+import bot_bank.model.Account;
+import bot_bank.model.JournalEntry;
+import bot_bank.model.JournalLeg;
+import bot_bank.model.Money;
+import bot_bank.repo.AccountRepository;
+import bot_bank.repo.JournalEntryRepository;
+import bot_bank.service.TransferEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * TransferEngineTest contains unit tests for the TransferEngine class. It verifies that the balances are
+ * changed with the conditional updates in the order of the account ids, that a refused debit rolls the
+ * transfer back, that one balanced journal entry is written, that lock contention is retried and counted, and that
+ * a transfer with a known idempotency key is not made twice. Batches of transfers are checked to debit the
+ * sender once and credit every recipient once in the order of the account ids, to pay the transfers the
+ * balance covers, and to refund transfers to missing recipients.
+ */
+
+class TransferEngineTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private JournalEntryRepository journalEntryRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransferEngine transferEngine;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        transferEngine = new TransferEngine(accountRepository, journalEntryRepository, transactionManager, meterRegistry,
+                Optional.empty(), 3, 100);
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        when(accountRepository.debit(anyLong(), anyLong())).thenReturn(true);
+        when(accountRepository.credit(anyLong(), anyLong())).thenReturn(true);
+        when(accountRepository.existsById(anyLong())).thenReturn(true);
+        when(accountRepository.findCurrentBalanceById(anyLong())).thenReturn(Optional.of(1_000_000L));
+        when(accountRepository.getReferenceById(anyLong())).thenAnswer(invocation -> account(invocation.getArgument(0)));
+    }
+
+    @Test
+    void testTransferUpdatesAccountsInIdOrder() {
+        TransferEngine.Outcome outcome = transferEngine.transfer(null, 2L, 1L, usd(10050), uah(854200), null);
+
+        assertEquals(TransferEngine.Outcome.COMPLETED, outcome);
+        InOrder order = inOrder(accountRepository);
+        order.verify(accountRepository).credit(1L, 854200L);
+        order.verify(accountRepository).debit(2L, 10050L);
+
+        ArgumentCaptor<JournalEntry> entry = ArgumentCaptor.forClass(JournalEntry.class);
+        verify(journalEntryRepository, times(1)).save(entry.capture());
+        List<JournalLeg> legs = entry.getValue().getLegs();
+        assertEquals(4, legs.size());
+        assertEquals(2L, legs.get(0).getAccount().getId());
+        assertEquals(-10050L, legs.get(0).getAmount());
+        assertNull(legs.get(1).getAccount());
+        assertNull(legs.get(2).getAccount());
+        assertEquals(1L, legs.get(3).getAccount().getId());
+        assertEquals(854200L, legs.get(3).getAmount());
+        assertTrue(entry.getValue().isBalanced());
+        assertEquals(1, meterRegistry.get("bank.transfers").tag("outcome", "completed").timer().count());
+    }
+
+    @Test
+    void testSenderIsDebitedFirstWhenItHasTheLowerId() {
+        transferEngine.transfer(null, 1L, 2L, uah(10050), uah(10050), null);
+
+        InOrder order = inOrder(accountRepository);
+        order.verify(accountRepository).debit(1L, 10050L);
+        order.verify(accountRepository).credit(2L, 10050L);
+        ArgumentCaptor<JournalEntry> entry = ArgumentCaptor.forClass(JournalEntry.class);
+        verify(journalEntryRepository).save(entry.capture());
+        assertEquals(2, entry.getValue().getLegs().size());
+        assertTrue(entry.getValue().isBalanced());
+    }
+
+    @Test
+    void testRefusedDebitRollsBack() {
+        when(accountRepository.debit(2L, 10050L)).thenReturn(false);
+
+        TransferEngine.Outcome outcome = transferEngine.transfer(null, 2L, 1L, uah(10050), uah(10050), null);
+
+        assertEquals(TransferEngine.Outcome.INSUFFICIENT_FUNDS, outcome);
+        verify(transactionStatus).setRollbackOnly();
+        verify(journalEntryRepository, never()).save(any(JournalEntry.class));
+    }
+
+    @Test
+    void testMissingAccount() {
+        when(accountRepository.debit(3L, 100L)).thenReturn(false);
+        when(accountRepository.existsById(3L)).thenReturn(false);
+
+        assertEquals(TransferEngine.Outcome.ACCOUNT_NOT_FOUND, transferEngine.transfer(null, 3L, 4L, uah(100), uah(100), null));
+        verify(accountRepository, never()).credit(4L, 100L);
+    }
+
+    @Test
+    void testTransferToExternalRecipient() {
+        TransferEngine.Outcome outcome = transferEngine.transfer(null, 2L, null, uah(10050), uah(10050), "External recipient: 5555");
+
+        assertEquals(TransferEngine.Outcome.COMPLETED, outcome);
+        verify(accountRepository, never()).credit(anyLong(), anyLong());
+        ArgumentCaptor<JournalEntry> entry = ArgumentCaptor.forClass(JournalEntry.class);
+        verify(journalEntryRepository).save(entry.capture());
+        assertEquals("External recipient: 5555", entry.getValue().getRecipientDetails());
+        assertEquals(2, entry.getValue().getLegs().size());
+        assertNull(entry.getValue().getLegs().get(1).getAccount());
+        assertTrue(entry.getValue().isBalanced());
+    }
+
+    @Test
+    void testLockContentionIsRetried() {
+        when(accountRepository.credit(1L, 10050L))
+                .thenThrow(new CannotAcquireLockException("Deadlock found"))
+                .thenReturn(true);
+
+        TransferEngine.Outcome outcome = transferEngine.transfer(null, 2L, 1L, uah(10050), uah(10050), null);
+
+        assertEquals(TransferEngine.Outcome.COMPLETED, outcome);
+        assertEquals(1, meterRegistry.get("bank.transfers.retries").counter().count());
+    }
+
+    @Test
+    void testTransferFailsAfterMaxAttempts() {
+        when(accountRepository.credit(1L, 10050L)).thenThrow(new CannotAcquireLockException("Lock wait timeout"));
+
+        TransferEngine.Outcome outcome = transferEngine.transfer(null, 2L, 1L, uah(10050), uah(10050), null);
+
+        assertEquals(TransferEngine.Outcome.FAILED, outcome);
+        verify(accountRepository, times(3)).credit(1L, 10050L);
+        assertEquals(2, meterRegistry.get("bank.transfers.retries").counter().count());
+    }
+
+    @Test
+    void testDuplicateTransferReturnsFirstOutcome() {
+        TransferEngine.Outcome first = transferEngine.transfer("123:42", 2L, 1L, uah(10050), uah(10050), null);
+        TransferEngine.Outcome second = transferEngine.transfer("123:42", 2L, 1L, uah(10050), uah(10050), null);
+
+        assertEquals(TransferEngine.Outcome.COMPLETED, first);
+        assertEquals(TransferEngine.Outcome.COMPLETED, second);
+        verify(accountRepository, times(1)).debit(2L, 10050L);
+        assertEquals(1, meterRegistry.get("bank.transfers.duplicates").counter().count());
+
+        ArgumentCaptor<JournalEntry> entry = ArgumentCaptor.forClass(JournalEntry.class);
+        verify(journalEntryRepository, times(1)).save(entry.capture());
+        assertEquals("123:42", entry.getValue().getIdempotencyKey());
+    }
+
+    @Test
+    void testDuplicateCaughtByUniqueConstraint() {
+        when(journalEntryRepository.save(any(JournalEntry.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry '123:42'"));
+        when(journalEntryRepository.existsByIdempotencyKey("123:42")).thenReturn(true);
+
+        TransferEngine.Outcome outcome = transferEngine.transfer("123:42", 2L, 1L, uah(10050), uah(10050), null);
+
+        assertEquals(TransferEngine.Outcome.COMPLETED, outcome);
+        verify(transactionManager).rollback(transactionStatus);
+        assertEquals(1, meterRegistry.get("bank.transfers.duplicates").counter().count());
+    }
+
+    @Test
+    void testFailedTransferCanBeTriedAgain() {
+        when(accountRepository.credit(1L, 10050L)).thenThrow(new CannotAcquireLockException("Lock wait timeout"));
+        assertEquals(TransferEngine.Outcome.FAILED, transferEngine.transfer("123:42", 2L, 1L, uah(10050), uah(10050), null));
+
+        doReturn(true).when(accountRepository).credit(1L, 10050L);
+        assertEquals(TransferEngine.Outcome.COMPLETED, transferEngine.transfer("123:42", 2L, 1L, uah(10050), uah(10050), null));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchDebitsSenderOnceAndCreditsEveryRecipientOnce() {
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer("1:7:2", 3L, uah(1000), uah(1000)),
+                new TransferEngine.BatchTransfer("1:7:3", 1L, uah(2000), uah(2000)),
+                new TransferEngine.BatchTransfer("1:7:4", 3L, uah(500), uah(500))));
+
+        assertEquals(List.of(TransferEngine.Outcome.COMPLETED, TransferEngine.Outcome.COMPLETED,
+                TransferEngine.Outcome.COMPLETED), outcomes);
+        InOrder order = inOrder(accountRepository);
+        order.verify(accountRepository).credit(1L, 2000L);
+        order.verify(accountRepository).credit(3L, 1500L);
+        order.verify(accountRepository).debit(5L, 3500L);
+        verify(accountRepository, times(1)).debit(anyLong(), anyLong());
+
+        ArgumentCaptor<List<JournalEntry>> entries = ArgumentCaptor.forClass(List.class);
+        verify(journalEntryRepository).saveAll(entries.capture());
+        assertEquals(3, entries.getValue().size());
+        assertEquals("1:7:2", entries.getValue().get(0).getIdempotencyKey());
+        assertTrue(entries.getValue().stream().allMatch(JournalEntry::isBalanced));
+        assertEquals(3, meterRegistry.get("bank.transfers.batched").tag("outcome", "completed").counter().count());
+    }
+
+    @Test
+    void testBatchLocksTheRowsInIdOrder() {
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer(null, 7L, uah(1000), uah(1000)),
+                new TransferEngine.BatchTransfer(null, 1L, uah(2000), uah(2000)),
+                new TransferEngine.BatchTransfer(null, 9L, uah(500), uah(500))));
+
+        assertEquals(Collections.nCopies(3, TransferEngine.Outcome.COMPLETED), outcomes);
+        InOrder order = inOrder(accountRepository);
+        order.verify(accountRepository).credit(1L, 2000L);
+        order.verify(accountRepository).debit(5L, 3500L);
+        order.verify(accountRepository).credit(7L, 1000L);
+        order.verify(accountRepository).credit(9L, 500L);
+    }
+
+    @Test
+    void testBatchPaysTheTransfersTheBalanceCovers() {
+        when(accountRepository.findCurrentBalanceById(5L)).thenReturn(Optional.of(1500L));
+
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer(null, 3L, uah(1000), uah(1000)),
+                new TransferEngine.BatchTransfer(null, 1L, uah(2000), uah(2000)),
+                new TransferEngine.BatchTransfer(null, 7L, uah(500), uah(500))));
+
+        assertEquals(List.of(TransferEngine.Outcome.COMPLETED, TransferEngine.Outcome.INSUFFICIENT_FUNDS,
+                TransferEngine.Outcome.COMPLETED), outcomes);
+        verify(accountRepository).debit(5L, 1500L);
+        verify(accountRepository, times(1)).debit(anyLong(), anyLong());
+        verify(accountRepository, never()).credit(1L, 2000L);
+    }
+
+    @Test
+    void testBatchIsRetriedWhenTheBalanceChangedBeforeTheDebit() {
+        when(accountRepository.debit(5L, 2000L)).thenReturn(false, true);
+
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer(null, 1L, uah(2000), uah(2000))));
+
+        assertEquals(List.of(TransferEngine.Outcome.COMPLETED), outcomes);
+        verify(accountRepository, times(2)).debit(5L, 2000L);
+        verify(transactionManager, times(1)).rollback(transactionStatus);
+        assertEquals(1, meterRegistry.get("bank.transfers.retries").counter().count());
+    }
+
+    @Test
+    void testBatchFromMissingSender() {
+        when(accountRepository.findCurrentBalanceById(5L)).thenReturn(Optional.empty());
+
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer(null, 1L, uah(2000), uah(2000))));
+
+        assertEquals(List.of(TransferEngine.Outcome.ACCOUNT_NOT_FOUND), outcomes);
+        verify(accountRepository, never()).credit(anyLong(), anyLong());
+        verify(accountRepository, never()).debit(anyLong(), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchRefundsTransfersToMissingRecipient() {
+        when(accountRepository.credit(3L, 1000L)).thenReturn(false);
+        when(accountRepository.credit(7L, 500L)).thenReturn(false);
+
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer(null, 3L, uah(1000), uah(1000)),
+                new TransferEngine.BatchTransfer(null, 1L, uah(2000), uah(2000)),
+                new TransferEngine.BatchTransfer(null, 7L, uah(500), uah(500))));
+
+        assertEquals(List.of(TransferEngine.Outcome.ACCOUNT_NOT_FOUND, TransferEngine.Outcome.COMPLETED,
+                TransferEngine.Outcome.ACCOUNT_NOT_FOUND), outcomes);
+        // The missing recipient below the sender is left out of the debit, the one above it is refunded
+        verify(accountRepository).debit(5L, 2500L);
+        verify(accountRepository).credit(5L, 500L);
+        ArgumentCaptor<List<JournalEntry>> entries = ArgumentCaptor.forClass(List.class);
+        verify(journalEntryRepository).saveAll(entries.capture());
+        assertEquals(1, entries.getValue().size());
+    }
+
+    @Test
+    void testBatchSkipsJournaledKeys() {
+        when(journalEntryRepository.findExistingIdempotencyKeys(any())).thenReturn(List.of("1:7:2"));
+
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer("1:7:2", 3L, uah(1000), uah(1000)),
+                new TransferEngine.BatchTransfer("1:7:3", 1L, uah(2000), uah(2000))));
+
+        assertEquals(List.of(TransferEngine.Outcome.COMPLETED, TransferEngine.Outcome.COMPLETED), outcomes);
+        verify(accountRepository).debit(5L, 2000L);
+        verify(accountRepository, never()).credit(3L, 1000L);
+        assertEquals(1, meterRegistry.get("bank.transfers.duplicates").counter().count());
+    }
+
+    @Test
+    void testBatchFailsAfterMaxAttempts() {
+        when(accountRepository.credit(1L, 2000L)).thenThrow(new CannotAcquireLockException("Lock wait timeout"));
+
+        List<TransferEngine.Outcome> outcomes = transferEngine.transferAll(5L, List.of(
+                new TransferEngine.BatchTransfer(null, 1L, uah(2000), uah(2000))));
+
+        assertEquals(List.of(TransferEngine.Outcome.FAILED), outcomes);
+        verify(accountRepository, times(3)).credit(1L, 2000L);
+        assertEquals(2, meterRegistry.get("bank.transfers.retries").counter().count());
+    }
+
+    private static Money uah(long minorUnits) {
+        return Money.of(minorUnits, "UAH");
+    }
+
+    private static Money usd(long minorUnits) {
+        return Money.of(minorUnits, "USD");
+    }
+
+    private static Account account(Long id) {
+        Account account = mock(Account.class);
+        when(account.getId()).thenReturn(id);
+        return account;
+    }
+}
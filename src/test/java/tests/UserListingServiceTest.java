@@ -3,21 +3,28 @@ package tests;
 import bot_bank.bot.BotContext;
 import bot_bank.bot.ChatBot;
 import bot_bank.model.User;
+import bot_bank.repo.UserSummary;
 import bot_bank.service.UserListingService;
 import bot_bank.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-import static org.mockito.Mockito.any;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -44,38 +51,83 @@ class UserListingServiceTest {
         MockitoAnnotations.openMocks(this);
         when(botContext.getUser()).thenReturn(user);
         when(botContext.getBot()).thenReturn(bot);
+        when(botContext.getInput()).thenReturn("/listusers");
         when(user.getTelegramId()).thenReturn(123456789L);
     }
 
     @Test
-    void testListUsers_WithUsers() throws TelegramApiException {
-        User user1 = new User();
-        user1.setTelegramId(12345L);
-        user1.setNumber("111-111-1111");
-        user1.setEmail("user1@example.com");
+    void testListUsers_WithUsers() {
+        List<UserSummary> users = Arrays.asList(
+                userSummary(1L, 12345L, "111-111-1111", "user1@example.com"),
+                userSummary(2L, 67890L, "222-222-2222", "user2@example.com"));
+        when(userService.findUsersAfter(0L, 21)).thenReturn(users);
 
-        User user2 = new User();
-        user2.setTelegramId(67890L);
-        user2.setNumber("222-222-2222");
-        user2.setEmail("user2@example.com");
+        userListingService.listUsers(botContext);
+
+        SendMessage message = sentMessage();
+        assertTrue(message.getText().contains("12345 111-111-1111 user1@example.com"));
+        assertTrue(message.getText().contains("67890 222-222-2222 user2@example.com"));
+        assertNull(message.getReplyMarkup());
+    }
+
+    @Test
+    void testListUsers_NoUsers() {
+        when(userService.findUsersAfter(0L, 21)).thenReturn(Collections.emptyList());
+
+        userListingService.listUsers(botContext);
 
-        List<User> users = Arrays.asList(user1, user2);
-        when(userService.findAllUsers()).thenReturn(users);
+        assertTrue(sentMessage().getText().contains("No users found."));
+    }
+
+    @Test
+    void testListUsers_FullPageHasNextButton() {
+        List<UserSummary> users = new ArrayList<>();
+        for (long id = 1; id <= 21; id++) {
+            users.add(userSummary(id, 1000L + id, "number", "email"));
+        }
+        when(userService.findUsersAfter(0L, 21)).thenReturn(users);
 
         userListingService.listUsers(botContext);
 
-        verify(userService, times(1)).findAllUsers();
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        SendMessage message = sentMessage();
+        assertTrue(message.getText().contains("1020 number email"));
+        assertTrue(!message.getText().contains("1021 number email"));
+        List<InlineKeyboardButton> buttons = ((InlineKeyboardMarkup) message.getReplyMarkup()).getKeyboard().get(0);
+        assertEquals(1, buttons.size());
+        assertEquals("/listusers:next:20", buttons.get(0).getCallbackData());
     }
 
     @Test
-    void testListUsers_NoUsers() throws TelegramApiException {
-        List<User> users = Collections.emptyList();
-        when(userService.findAllUsers()).thenReturn(users);
+    void testListUsers_PreviousPage() {
+        when(botContext.getInput()).thenReturn("/listusers:prev:41");
+        List<UserSummary> users = new ArrayList<>();
+        for (long id = 40; id >= 20; id--) {
+            users.add(userSummary(id, 1000L + id, "number", "email"));
+        }
+        when(userService.findUsersBefore(41L, 21)).thenReturn(users);
 
         userListingService.listUsers(botContext);
 
-        verify(userService, times(1)).findAllUsers();
-        verify(bot, times(1)).execute(any(SendMessage.class));
+        verify(userService, times(1)).findUsersBefore(41L, 21);
+        SendMessage message = sentMessage();
+        assertTrue(message.getText().indexOf("1021 number email") < message.getText().indexOf("1040 number email"));
+        List<InlineKeyboardButton> buttons = ((InlineKeyboardMarkup) message.getReplyMarkup()).getKeyboard().get(0);
+        assertEquals("/listusers:prev:21", buttons.get(0).getCallbackData());
+        assertEquals("/listusers:next:40", buttons.get(1).getCallbackData());
+    }
+
+    private SendMessage sentMessage() {
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot, times(1)).executeAsync(captor.capture());
+        return captor.getValue();
+    }
+
+    private static UserSummary userSummary(Long id, Long telegramId, String number, String email) {
+        UserSummary summary = mock(UserSummary.class);
+        when(summary.getId()).thenReturn(id);
+        when(summary.getTelegramId()).thenReturn(telegramId);
+        when(summary.getNumber()).thenReturn(number);
+        when(summary.getEmail()).thenReturn(email);
+        return summary;
     }
 }
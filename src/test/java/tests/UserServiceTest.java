@@ -5,6 +5,8 @@ import bot_bank.bot.ChatBot;
 import bot_bank.model.User;
 import bot_bank.repo.UserRepository;
 import bot_bank.service.UserService;
+import bot_bank.service.UserSessionCache;
+import bot_bank.service.UserStateWriter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -15,8 +17,13 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -32,6 +39,12 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserSessionCache userCache;
+
+    @Mock
+    private UserStateWriter stateWriter;
+
     @Mock
     private BotContext context;
 
@@ -59,6 +72,119 @@ class UserServiceTest {
         verify(userRepository, times(1)).findByTelegramId(telegramId);
     }
 
+    @Test
+    void testFindByTelegramIdUsesCache() {
+        Long telegramId = 123456789L;
+        User user = new User();
+        when(userCache.get(telegramId)).thenReturn(user);
+
+        User foundUser = userService.findByTelegramId(telegramId);
+
+        assertSame(user, foundUser);
+        verify(userRepository, never()).findByTelegramId(telegramId);
+    }
+
+    @Test
+    void testFindByTelegramIdCachesLoadedUser() {
+        Long telegramId = 123456789L;
+        User user = new User();
+        when(userRepository.findByTelegramId(telegramId)).thenReturn(user);
+
+        userService.findByTelegramId(telegramId);
+
+        verify(userCache, times(1)).put(user);
+    }
+
+    @Test
+    void testFindByTelegramIdAppliesPendingState() {
+        Long telegramId = 123456789L;
+        User user = new User();
+        user.setId(1L);
+        user.setStateId(0);
+        when(userRepository.findByTelegramId(telegramId)).thenReturn(user);
+        when(stateWriter.getPendingState(1L)).thenReturn(5);
+
+        User foundUser = userService.findByTelegramId(telegramId);
+
+        assertEquals(5, foundUser.getStateId());
+    }
+
+    @Test
+    void testUpdateStateIsWrittenBehind() {
+        User user = new User();
+        user.setId(1L);
+        user.setStateId(3);
+
+        userService.updateState(user);
+
+        verify(stateWriter, times(1)).schedule(1L, 3);
+        verify(userCache, times(1)).put(user);
+        verify(userRepository, never()).save(user);
+    }
+
+    @Test
+    void testUpdateStateOfNewUserSavesUser() {
+        User user = new User();
+        user.setStateId(0);
+
+        userService.updateState(user);
+
+        verify(userRepository, times(1)).save(user);
+        verify(stateWriter, never()).schedule(any(), any());
+    }
+
+    @Test
+    void testUpdateUserDiscardsPendingState() {
+        User user = new User();
+        user.setId(1L);
+
+        userService.updateUser(user);
+
+        verify(stateWriter, times(1)).discard(1L);
+        verify(userRepository, times(1)).save(user);
+    }
+
+    @Test
+    void testSetBannedWritesOnlyTheBanAndMarksTheCachedUser() {
+        Long telegramId = 123456789L;
+        User cached = new User();
+        when(userRepository.updateBanned(telegramId, true)).thenReturn(1);
+        when(userCache.peek(telegramId)).thenReturn(cached);
+
+        boolean result = userService.setBanned(telegramId, true);
+
+        assertTrue(result);
+        assertTrue(cached.isBanned());
+        verify(userRepository, never()).save(any(User.class));
+        verify(userCache, never()).invalidate(telegramId);
+    }
+
+    @Test
+    void testSetBannedUserNotFound() {
+        Long telegramId = 123456789L;
+
+        boolean result = userService.setBanned(telegramId, true);
+
+        assertFalse(result);
+        verify(userCache, never()).peek(telegramId);
+    }
+
+    @Test
+    void testUpdateUserKeepsTheBanMarkedWhileItRan() {
+        User user = new User();
+        user.setId(1L);
+        user.setTelegramId(123456789L);
+        when(userRepository.save(user)).thenAnswer(invocation -> {
+            user.setBanned(true);
+            return new User();
+        });
+
+        userService.updateUser(user);
+
+        verify(userCache, times(1)).put(user);
+        assertTrue(user.isBanned());
+    }
+
     @Test
     void testFindByNumber() {
         String number = "123-456-7890";
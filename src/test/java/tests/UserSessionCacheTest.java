@@ -0,0 +1,71 @@
+package tests;
+
+import bot_bank.model.User;
+import bot_bank.service.UserSessionCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * UserSessionCacheTest contains unit tests for the UserSessionCache class. It verifies lookups,
+ * peeking at expired entries, invalidation and eviction of the least recently used users.
+ */
+
+class UserSessionCacheTest {
+
+    @Test
+    void testPutAndGet() {
+        UserSessionCache cache = new UserSessionCache(10, 10);
+        User user = new User(1L, 0);
+
+        cache.put(user);
+
+        assertSame(user, cache.get(1L));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void testInvalidate() {
+        UserSessionCache cache = new UserSessionCache(10, 10);
+        cache.put(new User(1L, 0));
+
+        cache.invalidate(1L);
+
+        assertNull(cache.get(1L));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        UserSessionCache cache = new UserSessionCache(2, 10);
+        cache.put(new User(1L, 0));
+        cache.put(new User(2L, 0));
+        cache.get(1L);
+
+        cache.put(new User(3L, 0));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(2L));
+        assertEquals(1L, cache.get(1L).getTelegramId());
+    }
+
+    @Test
+    void testExpiredEntryIsReloaded() {
+        UserSessionCache cache = new UserSessionCache(10, 0);
+        cache.put(new User(1L, 0));
+
+        assertNull(cache.get(1L));
+    }
+
+    @Test
+    void testPeekReturnsExpiredEntryWithoutCounting() {
+        UserSessionCache cache = new UserSessionCache(10, 0);
+        User user = new User(1L, 0);
+        cache.put(user);
+
+        assertSame(user, cache.peek(1L));
+        assertEquals(0, cache.getHits() + cache.getMisses());
+    }
+}
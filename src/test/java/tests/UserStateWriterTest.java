@@ -0,0 +1,94 @@
+package tests;
+
+import bot_bank.service.UserStateWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * UserStateWriterTest contains unit tests for the UserStateWriter class. It verifies that state
+ * changes are coalesced per user, flushed in one batch and kept for a retry when the flush fails.
+ */
+
+class UserStateWriterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private UserStateWriter stateWriter;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        stateWriter = new UserStateWriter(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFlushWritesLatestStatePerUser() {
+        stateWriter.schedule(1L, 2);
+        stateWriter.schedule(1L, 3);
+        stateWriter.schedule(2L, 4);
+
+        stateWriter.flush();
+
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), captor.capture());
+        List<Object[]> batch = captor.getValue();
+        assertEquals(2, batch.size());
+        assertArrayEquals(new Object[]{3, 1L}, batch.stream().filter(row -> row[1].equals(1L)).findFirst().orElseThrow());
+        assertEquals(0, stateWriter.getPendingCount());
+    }
+
+    @Test
+    void testFlushWithoutChangesDoesNothing() {
+        stateWriter.flush();
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void testDiscardDropsPendingState() {
+        stateWriter.schedule(1L, 2);
+
+        stateWriter.discard(1L);
+
+        assertNull(stateWriter.getPendingState(1L));
+    }
+
+    @Test
+    void testFailedFlushKeepsChanges() {
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+        stateWriter.schedule(1L, 2);
+
+        stateWriter.flush();
+
+        assertEquals(2, stateWriter.getPendingState(1L));
+    }
+
+    @Test
+    void testStateScheduledAfterShutdownIsWrittenImmediately() {
+        stateWriter.shutdown();
+
+        stateWriter.schedule(1L, 2);
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+        assertEquals(0, stateWriter.getPendingCount());
+    }
+}